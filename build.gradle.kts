@@ -3,6 +3,7 @@ plugins {
     application
     id("org.openjfx.javafxplugin") version "0.1.0"
     id("com.github.johnrengelman.shadow") version "8.1.1"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.scrobbledash"
@@ -18,6 +19,7 @@ java {
     }
 }
 
+// ./gradlew run --args="--headless --port 8090" runs the sync daemon + JSON endpoints, no window
 application {
     mainClass.set("app.MainLauncher")
 }
@@ -29,6 +31,58 @@ javafx {
 
 dependencies {
     implementation("com.google.code.gson:gson:2.11.0")
+
+    testImplementation(platform("org.junit:junit-bom:5.11.3"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+// Tests (src/test/java): ./gradlew test
+// The benchmarks use its fixtures too (app.bench.SamplePayloads, the old DTO path): includeTests below
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Offline stand-in for the Last.fm API: ./gradlew fakeLastFm --args="--latency 40-250 --error-rate 0.02"
+// then set api_base=http://127.0.0.1:8089/2.0/ in lastfm.properties
+tasks.register<JavaExec>("fakeLastFm") {
+    group = "application"
+    description = "Runs a local fake Last.fm API (app.lastfm.fake.FakeLastFmServer)"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("app.lastfm.fake.FakeLastFmServer")
+}
+
+// Flight recording with the app's phase events: ./gradlew run -Pjfr
+// then ./gradlew jfrSummary -Pjfr.file=build/scrobbledash.jfr
+tasks.named<JavaExec>("run") {
+    if (project.hasProperty("jfr")) {
+        val settings = file("src/main/resources/jfr/scrobbledash.jfc")
+        val recording = layout.buildDirectory.file("scrobbledash.jfr").get().asFile
+        jvmArgs(
+            "-XX:StartFlightRecording:settings=$settings,filename=$recording,maxage=6h,dumponexit=true",
+            "-Djavafx.enableJFR=true"
+        )
+    }
+}
+
+tasks.register<JavaExec>("jfrSummary") {
+    group = "application"
+    description = "Summarizes a ScrobbleDash flight recording by phase (app.jfr.JfrSummary)"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("app.jfr.JfrSummary")
+    args(project.findProperty("jfr.file")?.toString() ?: layout.buildDirectory.file("scrobbledash.jfr").get().asFile.path)
+}
+
+// Microbenchmarks (src/jmh/java): ./gradlew jmh
+// Allocation rates come from the gc profiler; results land in build/results/jmh/results.json
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+    includeTests = true
 }
 
 fun shadowJar(function: Any) {}
@@ -0,0 +1,79 @@
+package app.charts;
+
+import app.bench.SamplePayloads;
+import app.models.RecentTrackRow;
+import app.store.ScrobbleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Local top-N over a store of {@code scrobbles} rows: the first query for a window (a range
+ * scan of the store) and a repeat query with nothing new (just the top-N selection).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalChartsBenchmark {
+
+    @Param({"10000", "200000"})
+    public int scrobbles;
+
+    @Param({"ARTISTS", "TRACKS"})
+    public LocalCharts.Kind kind;
+
+    private Path dir;
+    private ScrobbleStore store;
+    private LocalCharts warm;
+    private TimeWindow window;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        dir = Files.createTempDirectory("charts-bench");
+        store = ScrobbleStore.open(dir);
+        List<RecentTrackRow> rows = SamplePayloads.rows(scrobbles);
+        store.appendAll(rows);
+
+        // half of the history
+        Instant oldest = rows.getLast().getPlayedAt();
+        Instant newest = rows.getFirst().getPlayedAt();
+        window = TimeWindow.between(oldest.plusSeconds((newest.getEpochSecond() - oldest.getEpochSecond()) / 2),
+                newest.plusSeconds(1));
+        warm = new LocalCharts(store);
+        warm.top(kind, window, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public List<ChartEntry> firstQuery() {
+        return new LocalCharts(store).top(kind, window, 50);
+    }
+
+    @Benchmark
+    public List<ChartEntry> repeatQuery() {
+        return warm.top(kind, window, 50);
+    }
+}
@@ -0,0 +1,157 @@
+package app.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What the poll timers of many users cost: one schedule + cancel (a user's next poll) with
+ * {@code pending} other timeouts waiting, on the TimingWheel MultiUserScheduler uses
+ * (100 ms tick, 1024 slots) and on a ScheduledThreadPoolExecutor, whose delay queue is a
+ * heap.
+ *
+ * main() runs {@code users} self-rescheduling polls on a fast wheel (1 ms tick, intervals
+ * of 20-200 ms, so a few seconds cover many turns) and prints how late they fired, the
+ * threads the wheel added and the heap per pending timeout.
+ *
+ *   ./gradlew jmh -Pjmh.includes=TimingWheel
+ *   java -cp ... app.concurrent.TimingWheelBenchmark [users] [seconds]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimingWheelBenchmark {
+
+    private static final Runnable NOOP = () -> { };
+
+    @Param({"1000", "10000", "100000"})
+    public int pending;
+
+    @Param({"wheel", "stpe"})
+    public String timer;
+
+    private ExecutorService callbacks;
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor stpe;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        Random random = new Random(42);
+        if (timer.equals("wheel")) {
+            callbacks = Executors.newFixedThreadPool(2);
+            wheel = new TimingWheel(100, 1024, callbacks, "bench-wheel");
+            for (int i = 0; i < pending; i++) wheel.schedule(NOOP, 30_000 + random.nextInt(570_000), TimeUnit.MILLISECONDS);
+        } else {
+            stpe = new ScheduledThreadPoolExecutor(1);
+            stpe.setRemoveOnCancelPolicy(true);
+            for (int i = 0; i < pending; i++) stpe.schedule(NOOP, 30_000 + random.nextInt(570_000), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        if (wheel != null) {
+            wheel.close();
+            callbacks.shutdownNow();
+        }
+        if (stpe != null) stpe.shutdownNow();
+    }
+
+    @Benchmark
+    public Object scheduleAndCancel() {
+        if (wheel != null) {
+            TimingWheel.Timeout t = wheel.schedule(NOOP, 60_000, TimeUnit.MILLISECONDS);
+            t.cancel();
+            return t;
+        }
+        ScheduledFuture<?> f = stpe.schedule(NOOP, 60_000, TimeUnit.MILLISECONDS);
+        f.cancel(false);
+        return f;
+    }
+
+    // -----------------------------
+    // Many users, without JMH
+    // -----------------------------
+
+    public static void main(String[] args) throws InterruptedException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        long[] late = new long[users * seconds * 60];
+        AtomicInteger fired = new AtomicInteger();
+        var threads = ManagementFactory.getThreadMXBean();
+        int threadsBefore = threads.getThreadCount();
+        long heapBefore = usedAfterGc();
+
+        ExecutorService callbacks = Executors.newFixedThreadPool(2);
+        TimingWheel wheel = new TimingWheel(1, 1024, callbacks, "bench-wheel");
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        Random random = new Random(42);
+        for (int i = 0; i < users; i++) {
+            new Poll(wheel, late, fired, until).next(random.nextInt(200));
+        }
+
+        TimeUnit.SECONDS.sleep(1);
+        long heapPending = usedAfterGc();
+        int threadsRunning = threads.getThreadCount();
+        TimeUnit.SECONDS.sleep(seconds);
+
+        wheel.close();
+        callbacks.shutdownNow();
+
+        int n = Math.min(fired.get(), late.length);
+        long[] sorted = Arrays.copyOf(late, n);
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%,d users, %,d polls in %ds (%,.0f/s)%n", users, fired.get(), seconds,
+                fired.get() / (double) seconds);
+        System.out.printf(Locale.ROOT, "late by: p50 %.2f ms, p99 %.2f ms, max %.2f ms (tick 1 ms)%n",
+                sorted[n / 2] / 1e6, sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6);
+        System.out.printf(Locale.ROOT, "threads: +%d while running (wheel + 2 callback threads); heap: %.0f bytes per pending poll%n",
+                threadsRunning - threadsBefore, (heapPending - heapBefore) / (double) users);
+    }
+
+    /** One user's polls: each run records how late it was and schedules the next. */
+    private record Poll(TimingWheel wheel, long[] late, AtomicInteger fired, long untilNanos) {
+        void next(long delayMillis) {
+            long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            wheel.schedule(() -> {
+                int n = fired.getAndIncrement();
+                if (n < late.length) late[n] = System.nanoTime() - due;
+                if (System.nanoTime() < untilNanos) next(20 + ThreadLocalRandom.current().nextInt(180));
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static long usedAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds: until it stops shrinking
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+}
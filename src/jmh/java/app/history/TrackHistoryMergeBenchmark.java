@@ -0,0 +1,70 @@
+package app.history;
+
+import app.bench.SamplePayloads;
+import app.models.RecentTrackRow;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A refresh's merge: dedup a batch against the history, put the new rows on top of the
+ * table's list, drop the evicted tail. Each batch overlaps the previous one by half, the
+ * way consecutive polls overlap, so half of every batch is duplicates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackHistoryMergeBenchmark {
+
+    private static final int POOL = 200_000;
+
+    @Param({"100", "10000"})
+    public int capacity;
+
+    @Param({"1", "50", "200"})
+    public int batch;
+
+    private List<RecentTrackRow> pool;   // newest first
+    private TrackHistory history;
+    private ObservableList<RecentTrackRow> items;
+    private int end;                     // pool index just past the next batch (batches walk towards 0)
+
+    @Setup(Level.Trial)
+    public void createPool() {
+        pool = SamplePayloads.rows(POOL);
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        history = new TrackHistory(capacity);
+        items = FXCollections.observableArrayList();
+        // history starts full of the oldest rows; batches come in newer than that
+        end = POOL - capacity;
+        for (int i = end; i < POOL; i++) history.addOldest(pool.get(i));
+        items.setAll(history.snapshot());
+    }
+
+    @Benchmark
+    public int merge() {
+        if (end - batch < 0) fill();
+        List<RecentTrackRow> incoming = pool.subList(end - batch, end);
+        end -= Math.max(1, batch / 2);
+
+        List<RecentTrackRow> added = history.mergeNewest(incoming);
+        items.addAll(0, added);
+        int shown = history.size();
+        if (items.size() > shown) items.remove(shown, items.size());
+        return added.size();
+    }
+}
@@ -0,0 +1,41 @@
+package app.lastfm;
+
+import app.bench.SamplePayloads;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/** Picking the best URL out of one "image" array (four sizes, smallest first). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BestImageUrlBenchmark {
+
+    /** true: the largest size is blank, as it often is for artist images */
+    @Param({"false", "true"})
+    public boolean lastBlank;
+
+    private String images;
+
+    @Setup
+    public void setUp() {
+        images = new String(SamplePayloads.imageArray(lastBlank), StandardCharsets.UTF_8);
+    }
+
+    // StringReader, so the number isn't mostly an InputStreamReader buffer
+    @Benchmark
+    public String pick() throws IOException {
+        return LastFmStreamParser.readBestImageUrl(new JsonReader(new StringReader(images)));
+    }
+}
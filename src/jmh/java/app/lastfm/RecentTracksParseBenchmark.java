@@ -0,0 +1,132 @@
+package app.lastfm;
+
+import app.bench.SamplePayloads;
+import app.metrics.Metrics;
+import app.models.RecentTrackRow;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON body to RecentTrackRows, as getRecentTracks does it (minus the network):
+ * once collecting into a list, once streaming rows into a sink, and once the way it was
+ * done before the streaming parser ({@link DtoRecentTracks}: body as one String, Gson DTO
+ * tree, then rows).
+ *
+ * Setup checks that the streaming parser gives the same rows and paging numbers as the
+ * DTO path, and fails the run if it doesn't. Allocation per page is gc.alloc.rate.norm
+ * from the gc profiler; main() prints it without JMH.
+ *
+ *   ./gradlew jmh -Pjmh.includes=RecentTracksParse
+ *   java -cp ... app.lastfm.RecentTracksParseBenchmark [tracks]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RecentTracksParseBenchmark {
+
+    @Param({"1", "50", "200", "1000"})
+    public int tracks;
+
+    private byte[] body;
+    private final Gson gson = new Gson();
+
+    @Setup
+    public void setUp() throws IOException {
+        body = SamplePayloads.recentTracks(tracks);
+        checkSameAsDto(body, gson);
+    }
+
+    @Benchmark
+    public List<RecentTrackRow> collect() throws IOException {
+        List<RecentTrackRow> rows = new ArrayList<>(tracks + 1);
+        LastFmStreamParser.readRecentTracks(reader(body), 1, tracks, rows::add);
+        return rows;
+    }
+
+    @Benchmark
+    public LastFmStreamParser.PageInfo stream(Blackhole bh) throws IOException {
+        return LastFmStreamParser.readRecentTracks(reader(body), 1, tracks, bh::consume);
+    }
+
+    @Benchmark
+    public LastFmClient.PagedResult<RecentTrackRow> gsonDto() {
+        return DtoRecentTracks.parse(gson, body, 1, tracks);
+    }
+
+    static JsonReader reader(byte[] bytes) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+
+    // -----------------------------
+    // Equivalence
+    // -----------------------------
+
+    static void checkSameAsDto(byte[] body, Gson gson) throws IOException {
+        LastFmClient.PagedResult<RecentTrackRow> expected = DtoRecentTracks.parse(gson, body, 1, 50);
+        List<RecentTrackRow> rows = new ArrayList<>();
+        LastFmStreamParser.PageInfo info = LastFmStreamParser.readRecentTracks(reader(body), 1, 50, rows::add);
+
+        if (info.page != expected.page || info.totalPages != expected.totalPages
+                || info.perPage != expected.perPage || info.total != expected.total) {
+            throw new IllegalStateException("paging differs from the DTO path");
+        }
+        if (rows.size() != expected.items.size()) {
+            throw new IllegalStateException(rows.size() + " rows, DTO path has " + expected.items.size());
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            RecentTrackRow a = rows.get(i);
+            RecentTrackRow b = expected.items.get(i);
+            boolean same = a.getTrack().equals(b.getTrack()) && a.getArtist().equals(b.getArtist())
+                    && a.getAlbum().equals(b.getAlbum()) && a.getImageUrl().equals(b.getImageUrl())
+                    && a.isNowPlaying() == b.isNowPlaying()
+                    && a.getPlayedAtEpochSecond() == b.getPlayedAtEpochSecond();
+            if (!same) throw new IllegalStateException("row " + i + " differs from the DTO path");
+        }
+    }
+
+    // -----------------------------
+    // Allocation per page, without JMH
+    // -----------------------------
+
+    public static void main(String[] args) throws IOException {
+        int tracks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        byte[] body = SamplePayloads.recentTracks(tracks);
+        Gson gson = new Gson();
+        checkSameAsDto(body, gson);
+
+        int rounds = 2_000;
+        long[] bytes = new long[2];
+        for (int pass = 0; pass < 2; pass++) {   // the first pass is warm-up
+            long before = Metrics.threadAllocatedBytes();
+            for (int i = 0; i < rounds; i++) {
+                List<RecentTrackRow> rows = new ArrayList<>(tracks + 1);
+                LastFmStreamParser.readRecentTracks(reader(body), 1, tracks, rows::add);
+            }
+            long mid = Metrics.threadAllocatedBytes();
+            for (int i = 0; i < rounds; i++) DtoRecentTracks.parse(gson, body, 1, tracks);
+            long after = Metrics.threadAllocatedBytes();
+            bytes[0] = (mid - before) / rounds;
+            bytes[1] = (after - mid) / rounds;
+        }
+        System.out.printf(Locale.ROOT, "%d tracks (%,d byte body), rows equal; allocated per page: stream %,d B, gson DTO %,d B (%.1fx)%n",
+                tracks, body.length, bytes[0], bytes[1], (double) bytes[1] / Math.max(1, bytes[0]));
+    }
+}
@@ -0,0 +1,37 @@
+package app.lastfm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/** buildRecentTracksUri, with and without the from/to window. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UriBuildBenchmark {
+
+    private LastFmClient client;
+    private int page;
+
+    @Setup
+    public void setUp() {
+        client = new LastFmClient("0123456789abcdef0123456789abcdef", "bench user");
+    }
+
+    @Benchmark
+    public URI plain() {
+        return client.buildRecentTracksUri(50, (page++ & 63) + 1, 0, 0);
+    }
+
+    @Benchmark
+    public URI window() {
+        return client.buildRecentTracksUri(200, (page++ & 63) + 1, 1_699_000_000L, 1_700_000_000L);
+    }
+}
@@ -0,0 +1,222 @@
+package app.models;
+
+import app.store.ScrobbleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Heap kept by {@code rows} scrobbles in the old row layout ({@link LegacyRow}: four Strings
+ * of its own per row, a "when" String and an Instant) and in the two ways rows are made now:
+ *
+ *   parsed  rows as the parser builds them, one frozen {@link StringPool} per 200-row page
+ *   stored  rows materialized from a {@link ScrobbleStore}, ids into its dictionary
+ *
+ * Names repeat the way a listening history does (613 artists, 1999 albums, 7919 titles;
+ * albums played through {@value #ALBUM_RUN} tracks at a time, the cover and artist going with
+ * the album) and every parsed row gets fresh String copies, as JsonReader produces them.
+ * For "stored" the store is filled after the baseline is taken, so its dictionary and block
+ * index count toward the retained heap (the records themselves are in the mapped file).
+ *
+ * The time is building the rows; the retained heap per row, measured after a full GC, is
+ * printed after each iteration with the strings each dictionary holds.
+ *
+ *   ./gradlew jmh -Pjmh.includes=RowFootprint
+ *   java -cp ... app.models.RowFootprintBenchmark [rows]   (just the footprint, all layouts)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class RowFootprintBenchmark {
+
+    private static final int PAGE_ROWS = 200;
+    /** Tracks in a row from one album, as albums get played through. */
+    private static final int ALBUM_RUN = 12;
+
+    @Param({"legacy", "parsed", "stored"})
+    public String layout;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private int round;
+    private char[][] tracks;
+    private char[][] artists;
+    private char[][] albums;
+    private char[][] images;
+    private long baseline;
+    private Object[] held;
+
+    private Path dir;
+    private ScrobbleStore store;
+
+    @Setup(Level.Iteration)
+    public void vocabulary() throws IOException {
+        String tag = " #" + round++;
+        tracks = names("Track ", 7919, " (Remastered)" + tag);
+        artists = names("Artist ", 613, tag);
+        albums = names("Album ", 1999, tag);
+        images = new char[albums.length][];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = String.format(Locale.ROOT, "https://lastfm.freetls.fastly.net/i/u/300x300/%032x.jpg",
+                    (long) i * 0x9E3779B97F4A7C15L + round).toCharArray();
+        }
+        held = null;
+        baseline = usedAfterGc();
+
+        if (layout.equals("stored")) {
+            dir = Files.createTempDirectory("footprint-bench");
+            store = ScrobbleStore.open(dir);
+            // oldest first: every append is newer than the store, so no duplicate lookups
+            StringPool pool = new StringPool();
+            for (int i = rows - 1; i >= 0; i--) {
+                if (i % PAGE_ROWS == 0) pool = new StringPool();
+                store.append(parsedRow(pool, i));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object[] build() {
+        Object[] out = new Object[rows];
+        switch (layout) {
+            case "legacy" -> {
+                for (int i = 0; i < rows; i++) {
+                    int album = album(i);
+                    out[i] = new LegacyRow(fresh(tracks[i % tracks.length]), fresh(artists[album % artists.length]),
+                            fresh(albums[album]), "—", false, Instant.ofEpochSecond(uts(i)), fresh(images[album]));
+                }
+            }
+            case "parsed" -> {
+                StringPool pool = null;
+                for (int i = 0; i < rows; i++) {
+                    if (i % PAGE_ROWS == 0) {
+                        if (pool != null) pool.freeze();
+                        pool = new StringPool();
+                    }
+                    out[i] = parsedRow(pool, i);
+                }
+                if (pool != null) pool.freeze();
+            }
+            case "stored" -> {
+                // newest first, as the history table asks for them
+                long n = store.size();
+                for (int i = 0; i < rows; i++) out[i] = store.get(n - 1 - i);
+            }
+            default -> throw new IllegalArgumentException(layout);
+        }
+        held = out;
+        return out;
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() throws IOException {
+        long retained = usedAfterGc() - baseline;
+        System.out.printf(Locale.ROOT, "%n%s: %,d rows retain %,d KiB, %.1f bytes/row (%s)%n",
+                layout, held.length, retained / 1024, (double) retained / held.length, dictionaries());
+        held = null;
+        if (store != null) {
+            store.close();
+            store = null;
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+
+    /** What holds the strings of the rows kept. */
+    private String dictionaries() {
+        switch (layout) {
+            case "parsed" -> {
+                Set<StringPool> pools = Collections.newSetFromMap(new IdentityHashMap<>());
+                long strings = 0;
+                for (Object o : held) {
+                    if (pools.add((StringPool) ((RecentTrackRow) o).strings())) {
+                        strings += ((StringPool) ((RecentTrackRow) o).strings()).size();
+                    }
+                }
+                return String.format(Locale.ROOT, "%,d page pools, %,d strings", pools.size(), strings);
+            }
+            case "stored" -> {
+                return String.format(Locale.ROOT, "store dictionary: %,d strings", store.strings().size());
+            }
+            default -> {
+                return "4 Strings per row";
+            }
+        }
+    }
+
+    private RecentTrackRow parsedRow(StringPool pool, int i) {
+        // fresh copies, like JsonReader.nextString()
+        int album = album(i);
+        return new RecentTrackRow(pool, fresh(tracks[i % tracks.length]), fresh(artists[album % artists.length]),
+                fresh(albums[album]), false, uts(i), fresh(images[album]));
+    }
+
+    private int album(int i) {
+        return (i / ALBUM_RUN) % albums.length;
+    }
+
+    private static long uts(int i) {
+        return 1_700_000_000L - 60L * i;
+    }
+
+    private static char[][] names(String prefix, int count, String suffix) {
+        char[][] out = new char[count][];
+        for (int i = 0; i < count; i++) out[i] = (prefix + i + suffix).toCharArray();
+        return out;
+    }
+
+    private static String fresh(char[] chars) {
+        return new String(chars, 0, chars.length);
+    }
+
+    private static long usedAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds: until it stops shrinking
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        for (String layout : new String[]{"legacy", "parsed", "stored"}) {
+            RowFootprintBenchmark b = new RowFootprintBenchmark();
+            b.layout = layout;
+            b.rows = rows;
+            b.vocabulary();
+            b.build();
+            b.report();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package app.search;
+
+import app.bench.SamplePayloads;
+import app.charts.TimeWindow;
+import app.store.ScrobbleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One type-ahead query (first 500 hits) over an indexed store of {@code scrobbles} rows:
+ * a broad prefix ("a"), a common word ("artist"), one artist ("artist 61" also matches 610-619),
+ * a rare substring ("7918") and two words that are only rare together. "all" is the whole
+ * history, "month" its newest 30 days.
+ *
+ * Setup checks the hits against a scan of every record (the matching rules applied to each
+ * record's names directly) and fails the run if they differ. main() does the same for every
+ * query and range and prints the median time per query, without JMH.
+ *
+ *   ./gradlew jmh -Pjmh.includes=ScrobbleSearch
+ *   java -cp ... app.search.ScrobbleSearchBenchmark [scrobbles]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScrobbleSearchBenchmark {
+
+    @Param({"1000000"})
+    public int scrobbles;
+
+    @Param({"a", "artist", "artist 61", "7918", "album 1998 artist 6"})
+    public String query;
+
+    @Param({"all", "month"})
+    public String range;
+
+    private Path dir;
+    private ScrobbleStore store;
+    private ScrobbleSearch search;
+    private TimeWindow window;
+
+    @Setup(Level.Trial)
+    public void createIndex() throws IOException {
+        dir = Files.createTempDirectory("search-bench");
+        store = ScrobbleStore.open(dir);
+        store.appendAll(SamplePayloads.rows(scrobbles));
+        search = new ScrobbleSearch(store);
+        search.catchUp();
+
+        window = window(range);
+        checkAgainstScan(store, search, query, window, 500);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public ScrobbleSearch.Hits search() {
+        return search.search(query, window, 500);
+    }
+
+    static TimeWindow window(String range) {
+        Instant newest = Instant.ofEpochSecond(SamplePayloads.NEWEST_UTS + 1);
+        return range.equals("all") ? TimeWindow.allTime() : TimeWindow.between(newest.minusSeconds(30L * 86400), newest);
+    }
+
+    // -----------------------------
+    // Equivalence
+    // -----------------------------
+
+    /** The same query answered by looking at every record; throws if the index disagrees. */
+    static void checkAgainstScan(ScrobbleStore store, ScrobbleSearch search, String query, TimeWindow window, int limit) {
+        String[] words = TermIndex.words(TermIndex.fold(query));
+        long from = window.fromUts(Instant.now().getEpochSecond());
+        long to = window.toUts();
+
+        Map<Integer, String> folded = new HashMap<>();
+        List<long[]> matches = new ArrayList<>();
+        store.scanAppended(0, (idx, ts, track, artist, album, image) -> {
+            if (ts < from || ts >= to) return true;
+            for (String w : words) {
+                if (!matches(folded, store, track, w) && !matches(folded, store, artist, w) && !matches(folded, store, album, w)) {
+                    return true;
+                }
+            }
+            matches.add(new long[]{ts, idx});
+            return true;
+        });
+        // newest first; the same second in append order, later first
+        matches.sort((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+
+        ScrobbleSearch.Hits hits = search.search(query, window, limit);
+        int expected = Math.min(limit, matches.size());
+        boolean same = hits.records().length == expected && hits.more() == (matches.size() > limit);
+        for (int i = 0; same && i < expected; i++) same = hits.records()[i] == matches.get(i)[1];
+        if (!same) {
+            throw new IllegalStateException("\"" + query + "\": index gave " + hits.records().length
+                    + (hits.more() ? "+" : "") + " hits, a scan " + matches.size());
+        }
+    }
+
+    /** A word of one or two characters starts a word of the name; a longer one is anywhere in it. */
+    private static boolean matches(Map<Integer, String> folded, ScrobbleStore store, int id, String word) {
+        String name = folded.computeIfAbsent(id, k -> TermIndex.fold(store.strings().get(k)));
+        if (word.length() > 2) return name.contains(word);
+        for (String w : TermIndex.words(name)) {
+            if (w.startsWith(word)) return true;
+        }
+        return false;
+    }
+
+    // -----------------------------
+    // Every query, without JMH
+    // -----------------------------
+
+    public static void main(String[] args) throws IOException {
+        int scrobbles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ScrobbleSearchBenchmark b = new ScrobbleSearchBenchmark();
+        b.scrobbles = scrobbles;
+        b.query = "a";
+        b.range = "all";
+        b.createIndex();
+        try {
+            for (String range : new String[]{"all", "month"}) {
+                TimeWindow window = window(range);
+                for (String query : new String[]{"a", "artist", "artist 61", "7918", "album 1998 artist 6"}) {
+                    checkAgainstScan(b.store, b.search, query, window, 500);
+                    long[] nanos = new long[2_000];
+                    for (int pass = 0; pass < 2; pass++) {   // the first pass is warm-up
+                        for (int i = 0; i < nanos.length; i++) {
+                            long t = System.nanoTime();
+                            b.search.search(query, window, 500);
+                            nanos[i] = System.nanoTime() - t;
+                        }
+                    }
+                    Arrays.sort(nanos);
+                    System.out.printf(Locale.ROOT, "%-5s %-22s same as scan; median %,7.1f us, p99 %,7.1f us%n",
+                            range, "\"" + query + "\"", nanos[nanos.length / 2] / 1e3, nanos[nanos.length * 99 / 100] / 1e3);
+                }
+            }
+        } finally {
+            b.deleteStore();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package app.ui;
+
+import app.bench.SamplePayloads;
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+import app.store.ScrobbleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The history table's items over a store of {@code scrobbles} rows, driven the way a table
+ * drives them (the visible rows, read again on every pulse) with prefetch and FX callbacks
+ * run inline:
+ *
+ *   jump       scroll to a row far from the last one: a page miss, plus its prefetches
+ *   newOnTop   a new scrobble synced in, then the visible rows read again
+ *
+ * main() scrolls the whole history top to bottom and prints the retained heap (after a
+ * full GC) next to what the keys take, at several points of the way.
+ *
+ *   ./gradlew jmh -Pjmh.includes=LazyHistoryList
+ *   java -cp ... app.ui.LazyHistoryListBenchmark [scrobbles]
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LazyHistoryListBenchmark {
+
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({"100000", "1000000"})
+    public int scrobbles;
+
+    private Path dir;
+    private ScrobbleStore store;
+    private LazyHistoryList list;
+    private final StringPool pool = new StringPool();
+    private long nextUts = SamplePayloads.NEWEST_UTS;
+    private int at;
+
+    @Setup(Level.Trial)
+    public void createStore() throws IOException {
+        dir = Files.createTempDirectory("history-bench");
+        store = ScrobbleStore.open(dir);
+        store.appendAll(SamplePayloads.rows(scrobbles));
+        list = new LazyHistoryList(store, Runnable::run, Runnable::run);
+        list.load().join();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    @Benchmark
+    public void jump(Blackhole bh) {
+        // far enough that none of the 32 cached pages covers it
+        at = (at + 64 * 128 + 7) % Math.max(1, list.size() - VISIBLE_ROWS);
+        readVisible(list, at, bh);
+    }
+
+    @Benchmark
+    public void newOnTop(Blackhole bh) throws IOException {
+        store.append(new RecentTrackRow(pool, "New", "Artist", "Album", false, ++nextUts, ""));
+        list.sync();
+        readVisible(list, 0, bh);
+    }
+
+    private static void readVisible(LazyHistoryList list, int from, Blackhole bh) {
+        int to = Math.min(list.size(), from + VISIBLE_ROWS);
+        for (int i = from; i < to; i++) bh.consume(list.get(i));
+    }
+
+    // -----------------------------
+    // Heap while scrolling, without JMH
+    // -----------------------------
+
+    public static void main(String[] args) throws IOException {
+        int scrobbles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("history-bench");
+        try (ScrobbleStore store = ScrobbleStore.open(dir)) {
+            store.appendAll(SamplePayloads.rows(scrobbles));
+            long base = usedAfterGc();
+
+            LazyHistoryList list = new LazyHistoryList(store, Runnable::run, Runnable::run);
+            list.load().join();
+            long keys = usedAfterGc() - base;
+            System.out.printf(Locale.ROOT, "%,d scrobbles; after load: %,d KiB (%.1f bytes per scrobble)%n",
+                    scrobbles, keys / 1024, (double) keys / scrobbles);
+
+            long[] sink = new long[1];
+            int step = Math.max(1, list.size() / 4);
+            for (int from = 0, mark = step; from < list.size(); from += VISIBLE_ROWS) {
+                int to = Math.min(list.size(), from + VISIBLE_ROWS);
+                for (int i = from; i < to; i++) sink[0] += list.get(i).getPlayedAtEpochSecond();
+                if (to >= mark || to == list.size()) {
+                    long used = usedAfterGc() - base;
+                    System.out.printf(Locale.ROOT, "scrolled to row %,9d: %,d KiB retained, %,d KiB above the keys%n",
+                            to, used / 1024, (used - keys) / 1024);
+                    mark += step;
+                }
+            }
+            if (sink[0] == 42) System.out.println();   // keep the reads
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+
+    private static long usedAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds: until it stops shrinking
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+}
@@ -0,0 +1,40 @@
+package app.ui;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/** Formatting the When column for a screenful of rows spread over seconds to weeks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelativeTimeBenchmark {
+
+    private static final long NOW = 1_700_000_000L;
+    private static final int ROWS = 100;
+
+    private Instant[] playedAt;
+
+    @Setup
+    public void setUp() {
+        playedAt = new Instant[ROWS];
+        long ago = 7;
+        for (int i = 0; i < ROWS; i++) {
+            playedAt[i] = Instant.ofEpochSecond(NOW - ago);
+            ago = Math.min(ago * 5 / 4 + 13, 60L * 86_400);
+        }
+    }
+
+    @Benchmark
+    public void screenful(Blackhole bh) {
+        for (Instant t : playedAt) bh.consume(RelativeTime.format(t, NOW));
+    }
+}
@@ -1,4 +1,5 @@
 
+import app.DashboardController;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -6,10 +7,13 @@ import javafx.stage.Stage;
 import java.net.URL;
 public class Main extends Application {
 
+    private DashboardController controller;
+
     @Override
     public void start(Stage stage) throws Exception {
         FXMLLoader loader = new FXMLLoader(Main.class.getResource("/fxml/Dashboard.fxml"));
         Scene scene = new Scene(loader.load(), 900, 560);
+        controller = loader.getController();
 
         URL css = Main.class.getResource("/css/lastfm-theme.css");
         if (css == null) {
@@ -23,4 +27,9 @@ public class Main extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) controller.shutdown();
+    }
+
 }
@@ -1,39 +1,99 @@
 package app;
 
+import app.charts.ChartEntry;
+import app.charts.LocalCharts;
+import app.charts.TimeWindow;
+import app.concurrent.Background;
+import app.concurrent.Futures;
+import app.concurrent.TaskScope;
+import app.history.TrackHistory;
+import app.jfr.HistoryMergeEvent;
+import app.lastfm.ArtistIconResolver;
 import app.lastfm.LastFmClient;
+import app.lastfm.RequestGovernor;
+import app.metrics.Histogram;
+import app.metrics.Metrics;
+import app.metrics.MetricsJmx;
+import app.metrics.MetricsReporter;
 import app.models.RecentTrackRow;
+import app.models.StringPool;
 import app.models.TopArtistRow;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import app.search.ScrobbleSearch;
+import app.store.DashboardSnapshot;
+import app.store.ScrobbleStore;
+import app.sync.AdaptivePoller;
+import app.sync.DeltaSync;
+import app.ui.ImageCache;
+import app.ui.LazyHistoryList;
+import app.ui.PatchedList;
+import app.ui.RelativeTime;
+import app.ui.RelativeTimeClock;
+import app.ui.TableUpdater;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.transformation.SortedList;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.util.Duration;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class DashboardController {
 
     private static final String NO_IMAGE_HASH = "2a96cbd8b46e442fc41c2b86b821562f";
 
-    // ✅ Auto refresh defaults (always on)
+    // ✅ Auto refresh defaults (always on): probe interval while playing; idle polls back off from there
     private static final int AUTO_REFRESH_DEFAULT_SECONDS = 20;
 
+    // Decoded cover art shared by all cells and the now-playing bar
+    private static final long IMAGE_CACHE_BYTES = 32L * 1024 * 1024;
+    private final ImageCache imageCache = new ImageCache(IMAGE_CACHE_BYTES);
+    // Covers are decoded once at the now-playing bar's size; table cells scale them down, so
+    // the playing track's cover is one image in both places
+    private static final double COVER_SIZE = 48;
+
     // Artist icon cache + thread pool
-    private final Map<String, String> artistImageCache = new ConcurrentHashMap<>();
-    private final ExecutorService artistImagePool = Executors.newFixedThreadPool(4);
-    private final Deque<RecentTrackRow> trackHistory = new LinkedList<>();
-    private static final int MAX_HISTORY = 100;
+    private static final int ARTIST_ICON_ENTRIES = 2000;
+    // How long a refresh holds its table update for icon lookups
+    private static final long ICON_WAIT_MS = 1500;
+    private ArtistIconResolver artistIcons;
+
+    // All background work (fetches, parsing, icon lookups) runs on virtual threads
+    private final Background background = new Background();
+    private static final int DEFAULT_HISTORY_SIZE = 100;
+    private TrackHistory trackHistory;
+
+    // Table rows are patched with a keyed diff computed off the FX thread, not replaced
+    private final PatchedList<RecentTrackRow> trackItems = new PatchedList<>();
+    private final PatchedList<TopArtistRow> artistItems = new PatchedList<>();
+    private final TableUpdater<RecentTrackRow> tracksUpdater =
+            new TableUpdater<>("tracks", trackItems, row -> row, (a, b) -> true, background);
+    private final TableUpdater<TopArtistRow> artistsUpdater =
+            new TableUpdater<>("artists", artistItems, TopArtistRow::getArtist,
+                    (a, b) -> a.getPlaycount() == b.getPlaycount() && Objects.equals(a.getImageUrl(), b.getImageUrl()),
+                    background);
+    // What the tables show: the patched rows in the user's column sort (none = patched order).
+    // Sorting a view leaves the diff's list alone, so the next patch can't undo the sort.
+    private final SortedList<RecentTrackRow> sortedTracks = new SortedList<>(trackItems);
+    private final SortedList<TopArtistRow> sortedArtists = new SortedList<>(artistItems);
+
+    // Timings, allocation and cache counts; see jconsole (app.scrobbledash:type=Metrics) or the log
+    private static final java.time.Duration METRICS_LOG_EVERY = java.time.Duration.ofMinutes(1);
+    private final Metrics metrics = Metrics.global();
+    private MetricsReporter metricsReporter;
     // Tabs
     @FXML private TabPane tabs;
 
@@ -44,6 +104,9 @@ public class DashboardController {
     @FXML private TableColumn<RecentTrackRow, String> artistCol;
     @FXML private TableColumn<RecentTrackRow, String> albumCol;
     @FXML private TableColumn<RecentTrackRow, String> whenCol;
+    @FXML private TextField searchField;
+    @FXML private ComboBox<String> searchRange;
+    @FXML private Label searchCount;
 
     // Top artists
     @FXML private TableView<TopArtistRow> artistsTable;
@@ -69,18 +132,58 @@ public class DashboardController {
     @FXML private Label nowPlayingStatus;
 
     private LastFmClient client;
+    private DeltaSync deltaSync;
+    // scrobbles taken in by the rounds of a gap too long for one round (0 = not catching up)
+    private long catchingUp;
+
+    // Local scrobble log (history survives restarts); null if it couldn't be opened
+    private ScrobbleStore store;
+    // Top artists from the store when it reaches back far enough; the API otherwise
+    private static final TimeWindow TOP_ARTISTS_WINDOW = TimeWindow.rolling(java.time.Duration.ofDays(7));
+    private static final int TOP_ARTISTS_LIMIT = 50;
+    private LocalCharts charts;
+
+    // With a store, the table shows all of it, materializing only rows near the viewport;
+    // older history is fetched into the store as the table scrolls near its end
+    private static final int OLDER_PAGE_ROWS = 200;
+    private LazyHistoryList historyList;
+    private boolean historyReady;   // indexed; the table's items unless a search is showing
+    private boolean loadingOlder;
+    private boolean historyComplete;
+
+    // Type-ahead search over the whole store; while the box has text the table shows the hits
+    private static final int SEARCH_LIMIT = 500;
+    private static final Map<String, TimeWindow> SEARCH_RANGES = new LinkedHashMap<>();
+    static {
+        SEARCH_RANGES.put("All time", TimeWindow.allTime());
+        SEARCH_RANGES.put("Last 7 days", TimeWindow.rolling(java.time.Duration.ofDays(7)));
+        SEARCH_RANGES.put("Last 30 days", TimeWindow.rolling(java.time.Duration.ofDays(30)));
+        SEARCH_RANGES.put("Last 12 months", TimeWindow.rolling(java.time.Duration.ofDays(365)));
+    }
+    private ScrobbleSearch search;
+    private final PatchedList<RecentTrackRow> searchItems = new PatchedList<>();
+
+    // Last run's dashboard, shown on the first frame; saved after refreshes (at most this often) and on exit
+    private static final java.time.Duration SNAPSHOT_EVERY = java.time.Duration.ofMinutes(2);
+    private long snapshotSavedAt;
+    // The first sync waits this long for the connection warm-up, so it doesn't open a second one
+    private static final long WARM_UP_WAIT_MS = 2000;
 
-    // Recent tracks paging
+    // Recent tracks paging (no store: the table holds what was fetched)
     private int recentPage = 1;
-    private int recentTotalPages = 1;
+    private int recentTotalPages = Integer.MAX_VALUE; // unknown until "Load More" fetched a page
     private final int recentLimit = 50;
 
     // Busy flags
     private volatile boolean busyRecent = false;
     private volatile boolean busyArtists = false;
 
-    private Timeline autoRefreshTimeline;
-    private Timeline relativeTimeTick;
+    // Auto refresh: a limit=1 probe on a timer that follows playback; full syncs only when it sees a change
+    private final PauseTransition pollTimer = new PauseTransition();
+    private final AdaptivePoller poller = new AdaptivePoller(
+            TimeUnit.SECONDS.toMillis(AUTO_REFRESH_DEFAULT_SECONDS), AdaptivePoller.DEFAULT_IDLE_MAX_MILLIS);
+    // Drives the When column; cells repaint only when their own label changes
+    private final RelativeTimeClock relativeTime = new RelativeTimeClock();
 
     @FXML
     private void initialize() {
@@ -91,7 +194,15 @@ public class DashboardController {
         artistCol.setCellValueFactory(new PropertyValueFactory<>("artist"));
         albumCol.setCellValueFactory(new PropertyValueFactory<>("album"));
         whenCol.setCellValueFactory(new PropertyValueFactory<>("when"));
-        tracksTable.setItems(FXCollections.observableArrayList());
+        sortedTracks.comparatorProperty().bind(tracksTable.comparatorProperty());
+        tracksTable.setItems(sortedTracks);
+
+        // Search box: enabled once the store is indexed
+        searchRange.setItems(FXCollections.observableArrayList(SEARCH_RANGES.keySet()));
+        searchRange.getSelectionModel().selectFirst();
+        searchField.setDisable(true);
+        searchField.textProperty().addListener((obs, o, n) -> applySearch());
+        searchRange.valueProperty().addListener((obs, o, n) -> applySearch());
 
         // Recent track album art cell
         artCol.setCellFactory(col -> new TableCell<>() {
@@ -106,29 +217,49 @@ public class DashboardController {
             protected void updateItem(String url, boolean empty) {
                 super.updateItem(url, empty);
                 if (empty || url == null || url.isBlank()) {
+                    imageCache.bind(iv, null, COVER_SIZE, COVER_SIZE);
                     setGraphic(null);
                     return;
                 }
-                iv.setImage(new Image(url, true));
+                imageCache.bind(iv, url, COVER_SIZE, COVER_SIZE);
                 setGraphic(iv);
             }
         });
 
         // Recent relative time
         whenCol.setCellFactory(col -> new TableCell<>() {
+            private RelativeTimeClock.Watch watch;
+
             @Override
             protected void updateItem(String ignored, boolean empty) {
                 super.updateItem(ignored, empty);
                 if (empty || getTableRow() == null) {
+                    if (watch != null) {
+                        textProperty().unbind();
+                        watch.release();
+                        watch = null;
+                    }
                     setText(null);
                     return;
                 }
                 RecentTrackRow row = getTableRow().getItem();
+                Instant playedAt = row == null || row.isNowPlaying() ? null : row.getPlayedAt();
+                if (watch != null && watch.getPlayedAt().equals(playedAt)) return;
+
+                if (watch != null) {
+                    textProperty().unbind();
+                    watch.release();
+                    watch = null;
+                }
                 if (row == null) {
                     setText(null);
-                    return;
+                } else if (playedAt == null) {
+                    setText(row.isNowPlaying() ? "Now Playing" : RelativeTime.format(null));
+                } else {
+                    // the clock re-renders this cell when, and only when, its label changes
+                    watch = relativeTime.watch(playedAt);
+                    textProperty().bind(watch.textProperty());
                 }
-                setText(row.isNowPlaying() ? "Now Playing" : formatRelative(row.getPlayedAt()));
             }
         });
 
@@ -136,7 +267,8 @@ public class DashboardController {
         artistArtCol.setCellValueFactory(new PropertyValueFactory<>("imageUrl"));
         topArtistCol.setCellValueFactory(new PropertyValueFactory<>("artist"));
         playcountCol.setCellValueFactory(new PropertyValueFactory<>("playcount"));
-        artistsTable.setItems(FXCollections.observableArrayList());
+        sortedArtists.comparatorProperty().bind(artistsTable.comparatorProperty());
+        artistsTable.setItems(sortedArtists);
 
         // ✅ Top artist art cell: CACHE FIRST finalUrl
         artistArtCol.setCellFactory(col -> new TableCell<>() {
@@ -153,38 +285,25 @@ public class DashboardController {
                 super.updateItem(url, empty);
 
                 if (empty || getTableRow() == null || getTableRow().getItem() == null) {
+                    imageCache.bind(iv, null, 32, 32);
                     setGraphic(null);
                     return;
                 }
 
-                TopArtistRow row = getTableRow().getItem();
-                String artistName = row.getArtist();
-
-                // CACHE FIRST
-                String cached = (artistName == null) ? "" : artistImageCache.getOrDefault(artistName, "");
-                String finalUrl = cached;
-
-                // If cache missing, use the row url (from getTopArtists)
-                if (finalUrl.isBlank() && url != null && !url.isBlank()) {
-                    finalUrl = url;
-                }
-
-                // Ignore placeholder
-                if (finalUrl.contains(NO_IMAGE_HASH)) {
-                    finalUrl = "";
-                }
-
+                String finalUrl = iconUrl(getTableRow().getItem());
                 if (finalUrl.isBlank()) {
+                    imageCache.bind(iv, null, 32, 32);
                     setGraphic(null);
                     return;
                 }
 
-                iv.setImage(new Image(finalUrl, true));
+                imageCache.bind(iv, finalUrl, 32, 32);
                 setGraphic(iv);
             }
         });
 
         // ---- Auto refresh UI (optional to keep) ----
+        pollTimer.setOnFinished(e -> poll());
         if (autoRefreshSeconds != null) {
             autoRefreshSeconds.setItems(FXCollections.observableArrayList(15, 20, 30, 60, 120));
             autoRefreshSeconds.getSelectionModel().select(Integer.valueOf(AUTO_REFRESH_DEFAULT_SECONDS));
@@ -203,19 +322,12 @@ public class DashboardController {
                 configureAutoRefresh();
                 statusLabel.setText("Auto-Refresh Enabled.");
             }else {
-                if(autoRefreshTimeline != null){
-                    autoRefreshTimeline.stop(); // Stops the timer
-                }
+                pollTimer.stop(); // Stops the timer
                 statusLabel.setText("Auto-Refresh Disabled.");
             }
             });
         }
 
-        // Refresh relative time every 20s
-        relativeTimeTick = new Timeline(new KeyFrame(Duration.seconds(20), e -> tracksTable.refresh()));
-        relativeTimeTick.setCycleCount(Timeline.INDEFINITE);
-        relativeTimeTick.play();
-
         // Now Playing bar hidden initially
         if (nowPlayingBar != null) {
             nowPlayingBar.setVisible(false);
@@ -224,14 +336,34 @@ public class DashboardController {
 
         loadMoreButton.setDisable(true);
 
+        trackHistory = new TrackHistory(readHistorySize());
+        openStore();
+        startMetrics();
+
         // Load API config
         try {
-            client = LastFmClient.fromClasspathProperties();
+            client = LastFmClient.fromClasspathProperties(background);
+            metrics.gauge("lastfm.cache.hits", client.getCache()::getHits);
+            metrics.gauge("lastfm.cache.misses", client.getCache()::getMisses);
+            metrics.gauge("lastfm.cache.revalidated", client.getCache()::getRevalidated);
+            deltaSync = new DeltaSync(client, recentLimit);
+            artistIcons = new ArtistIconResolver(client.withPriority(RequestGovernor.Priority.PREFETCH), background,
+                    dataDir().resolve("artist-icons.properties"), ARTIST_ICON_ENTRIES);
+
+            // Only ask for scrobbles newer than what the store already has
+            if (store != null) deltaSync.advanceHighWaterMark(store.newestPlayedAt());
             statusLabel.setText("Loaded configuration. Auto-refresh is ON.");
 
-            // ✅ Always start auto-refresh + do first load automatically
+            // Last run's dashboard on the first frame, while the connection is set up
+            showSnapshot();
+            CompletableFuture<Void> warmUp = client.warmUpAsync(java.time.Duration.ofMillis(WARM_UP_WAIT_MS));
+
+            // ✅ Always start auto-refresh + do first load automatically, on the warmed-up connection
             configureAutoRefresh();
-            Platform.runLater(this::refreshAll);
+            warmUp.completeOnTimeout(null, WARM_UP_WAIT_MS, TimeUnit.MILLISECONDS)
+                    .thenRun(() -> Platform.runLater(() -> {
+                        if (!background.isShutdown()) refreshAll(null);
+                    }));
 
         } catch (Exception e) {
             statusLabel.setText("Config error: " + e.getMessage());
@@ -240,38 +372,282 @@ public class DashboardController {
         }
     }
 
+    private void startMetrics() {
+        metrics.gauge("images.hits", imageCache::getHits);
+        metrics.gauge("images.misses", imageCache::getMisses);
+        metrics.gauge("images.bytes", imageCache::getBytes);
+        metrics.gauge("history.size", () -> trackHistory.size());
+        MetricsJmx.register(metrics);
+        metricsReporter = new MetricsReporter(metrics, METRICS_LOG_EVERY);
+    }
+
+    private void openStore() {
+        try {
+            store = ScrobbleStore.open(dataDir().resolve("store"));
+            charts = new LocalCharts(store);
+
+            // Dedup for refreshes starts from what we had last time
+            List<RecentTrackRow> saved = store.range(0, Long.MAX_VALUE, trackHistory.capacity());
+            for (RecentTrackRow r : saved) trackHistory.addOldest(r);
+
+            // The table shows the whole store (indexed off the FX thread); it can't be sorted
+            historyList = new LazyHistoryList(store, background);
+            historyList.setOnNearEnd(this::loadOlder);
+            tracksTable.getSortOrder().clear();
+            for (TableColumn<RecentTrackRow, ?> col : tracksTable.getColumns()) col.setSortable(false);
+            // until then the table shows the snapshot, if there is one
+            historyList.load().thenRun(() -> {
+                historyReady = true;
+                if (!searching()) tracksTable.setItems(historyList);
+            });
+            loadMoreButton.setDisable(false);
+
+            search = new ScrobbleSearch(store);
+            CompletableFuture.runAsync(search::catchUp, background)
+                    .thenRunAsync(() -> searchField.setDisable(false), Platform::runLater);
+        } catch (Exception e) {
+            store = null;
+            searchField.setPromptText("Search needs the local scrobble store");
+            System.err.println("Scrobble store unavailable: " + e.getMessage());
+        }
+    }
+
+    /** Where local state (store, caches) lives: ~/.scrobbledash */
+    private static Path dataDir() {
+        return Path.of(System.getProperty("user.home"), ".scrobbledash");
+    }
+
+    // -----------------------------
+    // SNAPSHOT (first frame)
+    // -----------------------------
+
+    /** Fills the tables with what they showed when the app last ran for this user, if anything. */
+    private void showSnapshot() {
+        DashboardSnapshot snap;
+        try {
+            snap = DashboardSnapshot.read(dataDir().resolve("dashboard.snapshot"));
+        } catch (IOException e) {
+            System.err.println("Dashboard snapshot unreadable: " + e.getMessage());
+            return;
+        }
+        if (snap == null || !snap.username.equals(client.getUsername())) return;
+
+        if (store == null) {
+            // Nothing restored from a store: the snapshot is the history the first sync merges onto
+            for (RecentTrackRow r : snap.recent) trackHistory.addOldest(r);
+            deltaSync.advanceHighWaterMark(DeltaSync.newestPlayedAt(snap.recent));
+        }
+        trackItems.addAll(snap.recent);
+        artistItems.addAll(snap.topArtists);
+        snapshotSavedAt = System.currentTimeMillis();
+        statusLabel.setText("Showing the dashboard from " + RelativeTime.format(Instant.ofEpochMilli(snap.savedAtMillis))
+                + "; syncing…");
+    }
+
+    /** The scrobbles and top artists on screen; the now-playing row is left out, it will be stale. */
+    private DashboardSnapshot currentSnapshot() {
+        List<RecentTrackRow> recent = new ArrayList<>(trackHistory.size());
+        for (int i = 0; i < trackHistory.size(); i++) recent.add(trackHistory.get(i));
+        List<TopArtistRow> artists = new ArrayList<>(artistItems.size());
+        StringPool pool = new StringPool();
+        for (TopArtistRow a : artistItems) artists.add(new TopArtistRow(pool, a.getArtist(), a.getPlaycount(), iconUrl(a)));
+        return new DashboardSnapshot(client.getUsername(), System.currentTimeMillis(), recent, artists);
+    }
+
+    /** Collects the snapshot on the FX thread; writes it here (on exit) or in the background. */
+    private void saveSnapshot(boolean now) {
+        if (client == null || (trackHistory.size() == 0 && artistItems.isEmpty())) return;
+        DashboardSnapshot snap = currentSnapshot();
+        snapshotSavedAt = snap.savedAtMillis;
+        Runnable write = () -> {
+            try {
+                snap.write(dataDir().resolve("dashboard.snapshot"));
+            } catch (IOException e) {
+                System.err.println("Dashboard snapshot write failed: " + e.getMessage());
+            }
+        };
+        if (now) write.run();
+        else background.execute(write);
+    }
+
+    /** history_size in lastfm.properties; how many scrobbles the Recent Tracks table keeps. */
+    private static int readHistorySize() {
+        Properties props = new Properties();
+        try (InputStream in = DashboardController.class.getResourceAsStream("/lastfm.properties")) {
+            if (in != null) props.load(in);
+        } catch (IOException ignored) { }
+        try {
+            int v = Integer.parseInt(props.getProperty("history_size", "").trim());
+            return v > 0 ? v : DEFAULT_HISTORY_SIZE;
+        } catch (NumberFormatException e) {
+            return DEFAULT_HISTORY_SIZE;
+        }
+    }
+
     @FXML
     private void onRefresh() {
-        refreshAll();
+        refreshAll(null);
     }
 
     @FXML
     private void onLoadMore() {
-        loadMoreRecent();
+        if (historyList != null) loadOlder();
+        else loadMoreRecent();
     }
 
-    private void refreshAll() {
+    /**
+     * One refresh cycle: the recent-tracks sync, the top-artists request and (as soon as
+     * that list is in) the icon lookups all run at once; the tables are updated together,
+     * on one FX pulse, when the slowest of them is done.
+     *
+     * @param probe a limit=1 probe the poller already sent, or null to start with one
+     */
+    private void refreshAll(LastFmClient.PagedResult<RecentTrackRow> probe) {
         if (client == null || busyRecent || busyArtists) return;
 
-        // Remove tracksTable.getItems().clear();  <-- REMOVE OR COMMENT THIS OUT
+        // Breaker open: Last.fm is failing, don't poll until the cool-down is over
+        RequestGovernor governor = client.getGovernor();
+        if (governor.isOpen()) {
+            statusLabel.setText("Last.fm unavailable; retrying in " + (governor.getRetryInMillis() / 1000 + 1) + "s.");
+            schedulePoll(governor.getRetryInMillis() + 1000);
+            return;
+        }
 
-        recentPage = 1;
-        recentTotalPages = 1;
+        busyRecent = true;
+        busyArtists = true;
+        progress.setVisible(true);
+        long started = System.nanoTime();
+        long allocatedBefore = Metrics.totalAllocatedBytes();
+
+        // every future of this cycle; shutdown cancels what is still pending, requests included
+        TaskScope cycle = background.openScope();
+        CompletableFuture<DeltaSync.Result> sync = cycle.track(probe == null ? deltaSync.syncAsync() : deltaSync.syncAfter(probe));
+        CompletableFuture<DeltaSync.Result> recent = cycle.track(sync.thenApplyAsync(res -> {
+            try {
+                if (store != null) store.appendAll(res.newScrobbles);
+            } catch (IOException e) {
+                System.err.println("Scrobble store append failed: " + e.getMessage());
+            }
+            // index them here rather than on the next keystroke
+            if (search != null) search.catchUp();
+            return res;
+        }, background));
+        CompletableFuture<List<TopArtistRow>> artists = cycle.track(charts != null && charts.covers(TOP_ARTISTS_WINDOW)
+                ? recent.handleAsync((res, err) -> localTopArtists(), background)
+                : client.getTopArtistsAsync("7day", TOP_ARTISTS_LIMIT, 1).thenApply(r -> r.items));
+        CompletableFuture<Void> icons = cycle.track(artists.thenCompose(this::resolveIcons));
+
+        CompletableFuture.allOf(recent, icons)
+                .whenComplete((v, err) -> Platform.runLater(() -> applyRefresh(cycle, recent, artists, started, allocatedBefore)));
+    }
 
-        loadMoreButton.setDisable(true);
-        loadRecentPage(recentPage, true); // This will now "diff" the data instead of replacing
-        loadTopArtists();
+    private void applyRefresh(TaskScope cycle, CompletableFuture<DeltaSync.Result> recent,
+                              CompletableFuture<List<TopArtistRow>> artists, long started, long allocatedBefore) {
+        cycle.close();
+        if (background.isShutdown()) return;
+        long applyStart = System.nanoTime();
+        long fxAllocatedBefore = Metrics.threadAllocatedBytes();
+
+        if (recent.state() == Future.State.SUCCESS) {
+            DeltaSync.Result res = recent.resultNow();
+            applyRecent(res);
+            observePlayback(res.nowPlaying, !res.newScrobbles.isEmpty(), step -> schedulePoll(step.delayMillis()));
+        } else {
+            showFailure("Recent tracks", Futures.unwrap(recent.exceptionNow()));
+            schedulePoll(poller.afterFailure());
+        }
+        if (artists.state() == Future.State.SUCCESS) {
+            // same artists keep their row (and selection); moved or changed ones are patched
+            artistsUpdater.submit("replace", artists.resultNow());
+        } else if (recent.state() == Future.State.SUCCESS) {
+            showFailure("Top artists", Futures.unwrap(artists.exceptionNow()));
+        }
+        if (recent.state() == Future.State.SUCCESS
+                && System.currentTimeMillis() - snapshotSavedAt >= SNAPSHOT_EVERY.toMillis()) {
+            saveSnapshot(false);
+        }
+
+        progress.setVisible(loadingOlder);
+        refreshButton.setDisable(false);
+        updateLoadMore();
+        busyRecent = false;
+        busyArtists = false;
+
+        // fx.apply* is this FX-thread stretch only; refresh* is the whole cycle, all threads
+        metrics.timer("fx.apply").recordSince(applyStart);
+        Metrics.recordAllocation(metrics.histogram("fx.apply.alloc", Histogram.Unit.BYTES),
+                fxAllocatedBefore, Metrics.threadAllocatedBytes());
+        metrics.timer("refresh").recordSince(started);
+        Metrics.recordAllocation(metrics.histogram("refresh.alloc", Histogram.Unit.BYTES),
+                allocatedBefore, Metrics.totalAllocatedBytes());
+
+        if (recent.state() == Future.State.SUCCESS) continueCatchUp(recent.resultNow());
+    }
+
+    /**
+     * A gap too long for one round (offline for a while, a client that scrobbles late) comes
+     * in oldest pages first; the next round starts right away rather than at the next poll,
+     * so the newest scrobbles aren't missing from the table for several poll intervals.
+     * It is an ordinary refresh, behind the same busy flags, and DeltaSync runs rounds one
+     * after another: a poll whose probe was out meanwhile can't fetch this gap a second time.
+     */
+    private void continueCatchUp(DeltaSync.Result res) {
+        if (!res.hasMore) {
+            if (catchingUp > 0) statusLabel.setText(String.format("Caught up: %,d missed scrobbles synced.", catchingUp));
+            catchingUp = 0;
+            return;
+        }
+        metrics.counter("history.partial_syncs").increment();
+        catchingUp += res.newScrobbles.size();
+        statusLabel.setText(String.format("Catching up on missed scrobbles (%,d so far)…", catchingUp));
+        refreshAll(null);
+    }
+
+    /** Counted from the store after this refresh's scrobbles were appended; icons are resolved like the API's. */
+    private List<TopArtistRow> localTopArtists() {
+        List<ChartEntry> top = charts.top(LocalCharts.Kind.ARTISTS, TOP_ARTISTS_WINDOW, TOP_ARTISTS_LIMIT);
+        List<TopArtistRow> rows = new ArrayList<>(top.size());
+        StringPool pool = new StringPool();
+        for (ChartEntry e : top) rows.add(new TopArtistRow(pool, e.artist(), e.plays(), e.imageUrl()));
+        return rows;
     }
 
     private void loadMoreRecent() {
         if (client == null || busyRecent || recentPage >= recentTotalPages) return;
-        loadRecentPage(recentPage + 1, false);
+        loadRecentPage(recentPage + 1);
+    }
+
+    // -----------------------------
+    // RECENT TRACKS (DELTA SYNC)
+    // -----------------------------
+    private void applyRecent(DeltaSync.Result res) {
+        // The probe says what is playing now; it's shown as row 0
+        trackHistory.setNowPlaying(res.nowPlaying);
+
+        // O(1) dedup per row
+        HistoryMergeEvent merge = new HistoryMergeEvent();
+        merge.begin();
+        List<RecentTrackRow> added = trackHistory.mergeNewest(res.newScrobbles);
+        commitMerge(merge, "newest", res.newScrobbles.size(), added.size());
+        metrics.counter("history.merged").add(added.size());
+
+        if (historyList != null) {
+            // the new scrobbles are in the store by now
+            historyList.setNowPlaying(res.nowPlaying);
+            historyList.sync();
+            if (searching() && !res.newScrobbles.isEmpty()) applySearch();
+        } else {
+            // Sliding window: the diff comes out as new rows in at the top, evicted ones out at the bottom
+            tracksUpdater.submit("merge", trackHistory.snapshot());
+        }
+
+        updateNowPlayingBar();
     }
 
     // -----------------------------
-    // RECENT TRACKS (PAGINATION)
+    // RECENT TRACKS (PAGINATION, "Load More")
     // -----------------------------
-    private void loadRecentPage(int page, boolean replace) {
+    private void loadRecentPage(int page) {
         if (client == null || busyRecent) return;
 
         busyRecent = true;
@@ -280,171 +656,288 @@ public class DashboardController {
         Task<LastFmClient.PagedResult<RecentTrackRow>> task = new Task<>() {
             @Override
             protected LastFmClient.PagedResult<RecentTrackRow> call() throws Exception {
-                return client.getRecentTracks(recentLimit, page);
+                var res = client.getRecentTracks(recentLimit, page);
+                if (store != null) store.appendAll(res.items);
+                return res;
             }
         };
 
         task.setOnSucceeded(e -> {
+            long applyStart = System.nanoTime();
             var res = task.getValue();
             recentPage = res.page;
             recentTotalPages = Math.max(1, res.totalPages);
 
-            if (replace) {
-                // --- 1. PERFORMANCE ANALYSIS START ---
-                long startTime = System.nanoTime();
-                long startMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-
-                // --- 2. DATA PROCESSING (The "Sliding Window" Logic) ---
-                List<RecentTrackRow> incoming = res.items;
-                List<RecentTrackRow> toAdd = new ArrayList<>();
-
-                for (RecentTrackRow track : incoming) {
-                    // Deduplication check
-                    boolean exists = trackHistory.stream()
-                            .anyMatch(existing -> isSameScrobble(track, existing));
-
-                    if (exists) break; // Found data already in history, stop scanning
-                    toAdd.add(track);
-                }
-
-                // Add the newest items to the top (LIFO)
-                Collections.reverse(toAdd);
-                for (RecentTrackRow newRow : toAdd) {
-                    // Clean up old "Now Playing" placeholders if they match the new scrobble
-                    trackHistory.removeIf(r -> r.getTrack().equals(newRow.getTrack()) && r.isNowPlaying());
-                    tracksTable.getItems().removeIf(r -> r.getTrack().equals(newRow.getTrack()) && r.isNowPlaying());
-
-                    trackHistory.addFirst(newRow);
-                    tracksTable.getItems().add(0, newRow);
-                }
-
-                // Enforce K=100 (FIFO removal)
-                while (trackHistory.size() > MAX_HISTORY) {
-                    trackHistory.removeLast();
-                    tracksTable.getItems().remove(tracksTable.getItems().size() - 1);
-                }
-
-                // --- 3. PERFORMANCE ANALYSIS END ---
-                long endTime = System.nanoTime();
-                long endMem = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-
-                // Console Output for the Data
-                System.out.println("--- ScrobbleDash Performance Stats ---");
-                System.out.println("Processing Time: " + (endTime - startTime) / 1_000_000.0 + " ms");
-                System.out.println("Memory Footprint: " + (endMem / (1024.0 * 1024.0)) + " MB");
-                System.out.println("Current History Size: " + trackHistory.size());
-                System.out.println("----------------------------------------");
+            // Older page: goes below what we already show (until the history is full)
+            HistoryMergeEvent merge = new HistoryMergeEvent();
+            merge.begin();
+            List<RecentTrackRow> older = new ArrayList<>(res.items.size());
+            for (RecentTrackRow row : res.items) {
+                if (trackHistory.addOldest(row)) older.add(row);
             }
+            commitMerge(merge, "oldest", res.items.size(), older.size());
 
-            // Update UI components
-            updateNowPlayingBar();
-            tracksTable.refresh();
+            if (!older.isEmpty()) tracksUpdater.submit("page", trackHistory.snapshot());
+            metrics.timer("fx.apply.page").recordSince(applyStart);
 
             progress.setVisible(false);
             refreshButton.setDisable(false);
-            loadMoreButton.setDisable(recentPage >= recentTotalPages);
+            updateLoadMore();
+            busyRecent = false;
+        });
+
+        task.setOnFailed(e -> {
+            progress.setVisible(false);
             busyRecent = false;
+            showFailure("Recent tracks", task.getException());
         });
 
-        new Thread(task).start();
+        background.execute(task);
     }
 
-    private void loadTopArtists() {
-        if (client == null || busyArtists) return;
+    // -----------------------------
+    // OLDER HISTORY (into the store, for the lazy table)
+    // -----------------------------
 
-        busyArtists = true;
+    /** The next page of scrobbles older than anything in the store; the table asks as it nears its end. */
+    private void loadOlder() {
+        if (client == null || historyList == null || loadingOlder || historyComplete) return;
+
+        loadingOlder = true;
         progress.setVisible(true);
+        updateLoadMore();
 
-        Task<List<TopArtistRow>> task = new Task<>() {
-            @Override
-            protected List<TopArtistRow> call() throws Exception {
-                return client.getTopArtists("7day", 50, 1).items;
-            }
-        };
+        long oldest = store.oldestPlayedAt();
+        long before = oldest == Long.MAX_VALUE ? 0 : oldest;
+        client.withPriority(RequestGovernor.Priority.PREFETCH)
+                .getRecentTracksAsync(OLDER_PAGE_ROWS, 1, 0, before)
+                .thenApplyAsync(res -> {
+                    try {
+                        store.appendAll(res.items);
+                    } catch (IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                    search.catchUp();
+                    // nothing before the oldest scrobble: the whole history is here
+                    return res.items.stream().noneMatch(r -> r.hasPlayedAt() && (before == 0 || r.getPlayedAtEpochSecond() < before));
+                }, background)
+                .whenComplete((complete, err) -> Platform.runLater(() -> {
+                    if (background.isShutdown()) return;
+                    loadingOlder = false;
+                    progress.setVisible(busyRecent);
+                    if (err != null) {
+                        showFailure("Older tracks", Futures.unwrap(err));
+                    } else {
+                        historyComplete = complete;
+                        historyList.sync();
+                        if (searching()) applySearch();
+                    }
+                    updateLoadMore();
+                }));
+    }
 
-        task.setOnSucceeded(e -> {
-            List<TopArtistRow> rows = task.getValue();
-            artistsTable.getItems().setAll(rows);
+    private void updateLoadMore() {
+        if (historyList != null) loadMoreButton.setDisable(loadingOlder || historyComplete);
+        else loadMoreButton.setDisable(recentPage >= recentTotalPages);
+    }
 
-            // Fetch icons in background
-            for (TopArtistRow r : rows) {
-                String artistName = r.getArtist();
-                if (artistName == null || artistName.isBlank()) continue;
+    // -----------------------------
+    // SEARCH
+    // -----------------------------
+
+    private boolean searching() {
+        return search != null && !searchField.getText().isBlank();
+    }
 
-                String baseUrl = r.getImageUrl();
-                boolean hasRealUrl = baseUrl != null && !baseUrl.isBlank() && !baseUrl.contains(NO_IMAGE_HASH);
-                if (hasRealUrl) continue;
+    /** Shows the hits for what's in the box (indexed, so fast enough per keystroke), or the history when it's empty. */
+    private void applySearch() {
+        if (search == null) return;
+        if (!searching()) {
+            tracksTable.setItems(historyReady ? historyList : sortedTracks);
+            searchCount.setText("");
+            return;
+        }
+        TimeWindow range = SEARCH_RANGES.getOrDefault(searchRange.getValue(), TimeWindow.allTime());
+        ScrobbleSearch.Hits hits = search.search(searchField.getText(), range, SEARCH_LIMIT);
+
+        List<RecentTrackRow> rows = new ArrayList<>(hits.records().length);
+        for (int record : hits.records()) rows.add(store.get(record));
+        searchItems.setAll(rows);
+        if (tracksTable.getItems() != searchItems) tracksTable.setItems(searchItems);
+        searchCount.setText(hits.more() ? SEARCH_LIMIT + "+ matches" : rows.size() == 1 ? "1 match" : rows.size() + " matches");
+    }
 
-                if (artistImageCache.containsKey(artistName)) continue;
+    // JFR: fields are only filled in when a recording wants the event
+    private void commitMerge(HistoryMergeEvent event, String kind, int offered, int added) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.kind = kind;
+        event.offered = offered;
+        event.added = added;
+        event.size = trackHistory.size();
+        event.commit();
+    }
 
-                artistImagePool.submit(() -> {
-                    try {
-                        String iconUrl = client.getBestArtistIconUrl(artistName);
-                        if (iconUrl == null) iconUrl = "";
+    private void showFailure(String what, Throwable error) {
+        String msg = error == null ? "unknown error" : error.getMessage();
+        statusLabel.setText(what + " failed: " + msg);
+    }
 
-                        if (iconUrl.isBlank() || iconUrl.contains(NO_IMAGE_HASH)) return;
+    /** The icon a top-artist row shows: the resolved one first, then the row's own; "" for none. */
+    private String iconUrl(TopArtistRow row) {
+        String artistName = row.getArtist();
+        String url = (artistName == null || artistIcons == null) ? "" : artistIcons.cached(artistName);
+        if (url.isBlank()) url = row.getImageUrl();
+        // Ignore placeholder
+        return url == null || url.contains(NO_IMAGE_HASH) ? "" : url;
+    }
 
-                        artistImageCache.put(artistName, iconUrl);
-                        Platform.runLater(() -> artistsTable.refresh());
-                    } catch (Exception ignored) { }
+    /**
+     * Looks up icons the rows don't bring along, all at once. Completes when they are in,
+     * or after {@value #ICON_WAIT_MS} ms; slower ones repaint the table when they land.
+     */
+    private CompletableFuture<Void> resolveIcons(List<TopArtistRow> rows) {
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (TopArtistRow r : rows) {
+            String artistName = r.getArtist();
+            if (artistName == null || artistName.isBlank()) continue;
+
+            String baseUrl = r.getImageUrl();
+            boolean hasRealUrl = baseUrl != null && !baseUrl.isBlank() && !baseUrl.contains(NO_IMAGE_HASH);
+            if (hasRealUrl) continue;
+
+            // Known hits and known misses both skip the network
+            if (artistIcons.isKnown(artistName)) continue;
+            lookups.add(artistIcons.resolve(artistName));
+        }
+        if (lookups.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new))
+                .completeOnTimeout(null, ICON_WAIT_MS, TimeUnit.MILLISECONDS)
+                .thenRun(() -> {
+                    for (CompletableFuture<String> f : lookups) {
+                        if (f.isDone()) continue;
+                        f.thenAccept(url -> {
+                            if (!url.isBlank()) Platform.runLater(() -> artistsTable.refresh());
+                        });
+                    }
                 });
-            }
-
-            progress.setVisible(false);
-            busyArtists = false;
-        });
+    }
 
-        task.setOnFailed(e -> {
-            progress.setVisible(false);
-            busyArtists = false;
-        });
+    // -----------------------------
+    // SHUTDOWN
+    // -----------------------------
 
-        new Thread(task, "lastfm-topartists").start();
+    /** Called when the window closes: stop timers, cancel background work, flush local state. */
+    public void shutdown() {
+        pollTimer.stop();
+        relativeTime.stop();
+        if (metricsReporter != null) metricsReporter.close();
+        MetricsJmx.unregister();
+
+        background.shutdown(3, TimeUnit.SECONDS);
+
+        saveSnapshot(true);
+        if (artistIcons != null) artistIcons.save();
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Scrobble store close failed: " + e.getMessage());
+            }
+        }
     }
 
     // -----------------------------
     // ✅ ALWAYS-ON AUTO REFRESH
     // -----------------------------
     private void configureAutoRefresh() {
-        // Stop any existing timer first
-        if (autoRefreshTimeline != null) {
-            autoRefreshTimeline.stop();
+        int secs = AUTO_REFRESH_DEFAULT_SECONDS;
+        if (autoRefreshSeconds != null) {
+            Integer v = autoRefreshSeconds.getValue();
+            if (v != null && v >= 5) secs = v;
         }
+        poller.setBaseMillis(TimeUnit.SECONDS.toMillis(secs));
+        schedulePoll(poller.getBaseMillis());
+    }
 
+    /** (Re)arms the poll timer, unless auto refresh is off. */
+    private void schedulePoll(long delayMillis) {
+        pollTimer.stop();
         // CHECK: If the user unchecked the box, don't start a new timer
-        if (autoRefreshCheck != null && !autoRefreshCheck.isSelected()) {
+        if (client == null || (autoRefreshCheck != null && !autoRefreshCheck.isSelected())) return;
+        pollTimer.setDuration(Duration.millis(delayMillis));
+        pollTimer.playFromStart();
+    }
+
+    /** Timer tick: a probe, or a full sync if the playing track should have been scrobbled by now. */
+    private void poll() {
+        if (client == null) return;
+        if (busyRecent || busyArtists) {
+            // a refresh in progress reschedules when it's done; "Load More" doesn't, so try again later
+            schedulePoll(poller.getBaseMillis());
             return;
         }
-
-        int secs = AUTO_REFRESH_DEFAULT_SECONDS;
-        if (autoRefreshSeconds != null) {
-            Integer v = autoRefreshSeconds.getValue();
-            if (v != null && v >= 5) secs = v;
+        RequestGovernor governor = client.getGovernor();
+        if (governor.isOpen()) {
+            schedulePoll(governor.getRetryInMillis() + 1000);
+            return;
+        }
+        if (poller.claimPredictedSync(System.currentTimeMillis())) {
+            metrics.counter("poll.full_syncs").increment();
+            refreshAll(null);
+            return;
         }
 
-        autoRefreshTimeline = new Timeline(
-                new KeyFrame(Duration.seconds(secs), e -> {
-                    if (!busyRecent && !busyArtists) refreshAll();
-                })
-        );
-        autoRefreshTimeline.setCycleCount(Timeline.INDEFINITE);
-        autoRefreshTimeline.play();
+        metrics.counter("poll.probes").increment();
+        deltaSync.probeAsync().whenComplete((probe, err) -> Platform.runLater(() -> {
+            if (background.isShutdown()) return;
+            if (err != null) {
+                showFailure("Recent tracks", Futures.unwrap(err));
+                schedulePoll(poller.afterFailure());
+                return;
+            }
+            RecentTrackRow playing = DeltaSync.nowPlayingOf(probe.items);
+            boolean newer = DeltaSync.newestPlayedAt(probe.items) > deltaSync.getHighWaterMark();
+            observePlayback(playing, newer, step -> {
+                if (step.fullSync() && !busyRecent && !busyArtists) {
+                    metrics.counter("poll.full_syncs").increment();
+                    refreshAll(probe);
+                } else {
+                    schedulePoll(step.fullSync() ? poller.getBaseMillis() : step.delayMillis());
+                }
+            });
+        }));
+    }
+
+    /**
+     * Tells the poller what a probe or sync saw, on the FX thread. A track it hasn't seen yet
+     * has its length looked up first (track.getinfo, cached for days), so the poller can
+     * time a full sync for when it should end.
+     */
+    private void observePlayback(RecentTrackRow playing, boolean newScrobbles, Consumer<AdaptivePoller.Step> then) {
+        if (!poller.isNewTrack(playing)) {
+            then.accept(poller.observe(playing, newScrobbles, 0, System.currentTimeMillis()));
+            return;
+        }
+        client.getTrackDurationAsync(playing.getArtist(), playing.getTrack())
+                .handle((d, err) -> err == null ? d.toMillis() : 0L)
+                .thenAccept(ms -> Platform.runLater(() -> {
+                    if (background.isShutdown()) return;
+                    then.accept(poller.observe(playing, newScrobbles, ms, System.currentTimeMillis()));
+                }));
     }
+
     // -----------------------------
     // ✅ NOW PLAYING BAR (BOTTOM)
     // -----------------------------
     private void updateNowPlayingBar() {
         if (nowPlayingBar == null) return;
 
-        RecentTrackRow now = null;
-        for (RecentTrackRow r : tracksTable.getItems()) {
-            if (r != null && r.isNowPlaying()) {
-                now = r;
-                break;
-            }
-        }
+        RecentTrackRow now = trackHistory.getNowPlaying();
 
         if (now == null) {
+            imageCache.bind(nowPlayingArt, null, COVER_SIZE, COVER_SIZE);
             nowPlayingBar.setVisible(false);
             nowPlayingBar.setManaged(false);
             return;
@@ -454,43 +947,10 @@ public class DashboardController {
         nowPlayingArtist.setText(now.getArtist());
         nowPlayingStatus.setText("Now Playing");
 
-        String artUrl = now.getImageUrl();
-        if (artUrl != null && !artUrl.isBlank()) {
-            nowPlayingArt.setImage(new Image(artUrl, true));
-        } else {
-            nowPlayingArt.setImage(null);
-        }
+        imageCache.bind(nowPlayingArt, now.getImageUrl(), COVER_SIZE, COVER_SIZE);
 
         nowPlayingBar.setManaged(true);
         nowPlayingBar.setVisible(true);
     }
 
-    private static String formatRelative(Instant playedAt) {
-        if (playedAt == null) return "—";
-        long s = Instant.now().getEpochSecond() - playedAt.getEpochSecond();
-        if (s < 60) return s + "s ago";
-        if (s < 3600) return (s / 60) + "m ago";
-        if (s < 86400) return (s / 3600) + "h ago";
-        return (s / 86400) + "d ago";
-    }
-
-    //-------------------------------
-    //✅ SAME SCROBBLE
-    //-------------------------------
-
-    private boolean isSameScrobble(RecentTrackRow fetched, RecentTrackRow existing) {
-        if (fetched == null || existing == null) return false;
-
-        // If it's currently playing, we treat it as "not permanent"
-        // so it gets refreshed every cycle.
-        if (fetched.isNowPlaying() || existing.isNowPlaying()) return false;
-
-        // Use the timestamp for 100% accuracy
-        if (fetched.getPlayedAt() != null && existing.getPlayedAt() != null) {
-            return fetched.getPlayedAt().equals(existing.getPlayedAt()) &&
-                    fetched.getTrack().equalsIgnoreCase(existing.getTrack());
-        }
-        return false;
-    }
-
 }
@@ -0,0 +1,26 @@
+package app;
+
+import app.daemon.SyncDaemon;
+import javafx.application.Application;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of the jar and of `gradle run`. A main class that isn't itself an Application
+ * lets JavaFX load from the classpath. With --headless it starts the sync daemon instead of
+ * the window, and JavaFX is never initialized.
+ */
+public final class MainLauncher {
+
+    private MainLauncher() { }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--headless")) {
+            SyncDaemon.main(args);
+            return;
+        }
+        // Main lives in the unnamed package, which named packages can't import
+        Class<? extends Application> app = Class.forName("Main").asSubclass(Application.class);
+        Application.launch(app, args);
+    }
+}
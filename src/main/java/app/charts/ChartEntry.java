@@ -0,0 +1,8 @@
+package app.charts;
+
+/**
+ * One row of a local chart. For an artist chart title and artist are the same; imageUrl is the
+ * cover of the most recently counted scrobble (albums, tracks) or "" for artists, whose
+ * images scrobbles don't carry.
+ */
+public record ChartEntry(int rank, String title, String artist, int plays, String imageUrl) { }
@@ -0,0 +1,51 @@
+package app.charts;
+
+/**
+ * Play counts for one {@link TimeWindow}, kept up to date by {@link LocalCharts}:
+ * appended scrobbles inside [from, to) are added, and a rolling window subtracts what
+ * slid out of it. Keys are dictionary ids, so nothing here holds a String.
+ */
+final class ChartWindow {
+
+    final TimeWindow window;
+    long from;
+    final long to;
+
+    final CountTable artists = new CountTable(1024);
+    final CountTable albums = new CountTable(2048);   // pair(artist, album)
+    final CountTable tracks = new CountTable(4096);   // pair(artist, track)
+    final CountTable albumCovers = new CountTable(2048);  // pair(artist, album) -> image id + 1
+    final CountTable trackCovers = new CountTable(4096);  // pair(artist, track) -> image id + 1
+
+    long lastUsedNanos;
+
+    ChartWindow(TimeWindow window, long nowUts) {
+        this.window = window;
+        this.from = window.fromUts(nowUts);
+        this.to = window.toUts();
+    }
+
+    boolean contains(long playedAt) {
+        return playedAt >= from && playedAt < to;
+    }
+
+    void count(int track, int artist, int album, int image, int delta) {
+        artists.add(artist, delta);
+        long albumKey = CountTable.pair(artist, album);
+        albums.add(albumKey, delta);
+        long trackKey = CountTable.pair(artist, track);
+        tracks.add(trackKey, delta);
+        if (delta > 0) {
+            albumCovers.put(albumKey, image + 1);
+            trackCovers.put(trackKey, image + 1);
+        }
+    }
+
+    CountTable table(LocalCharts.Kind kind) {
+        return switch (kind) {
+            case ARTISTS -> artists;
+            case ALBUMS -> albums;
+            case TRACKS -> tracks;
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package app.charts;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -&gt; int counter: no boxing, no per-entry objects, two flat arrays.
+ * Keys are dictionary ids (an artist) or two of them packed into a long (artist + album).
+ * Counts may drop back to zero when a window slides; such keys stay until the next rehash.
+ */
+final class CountTable {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] counts;
+    private int used;      // slots holding a key
+    private int live;      // keys with a count > 0
+
+    CountTable() {
+        this(64);
+    }
+
+    CountTable(int expected) {
+        int cap = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        counts = new int[cap];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    static long pair(int hi, int lo) {
+        return ((long) hi << 32) | (lo & 0xFFFFFFFFL);
+    }
+
+    static int hi(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int lo(long key) {
+        return (int) key;
+    }
+
+    int get(long key) {
+        int i = find(key);
+        return keys[i] == EMPTY ? 0 : counts[i];
+    }
+
+    void add(long key, int delta) {
+        int i = find(key);
+        if (keys[i] == EMPTY) {
+            if (delta <= 0) return;
+            keys[i] = key;
+            counts[i] = delta;
+            live++;
+            if (++used * 4 > keys.length * 3) rehash();
+            return;
+        }
+        int before = counts[i];
+        int after = Math.max(0, before + delta);
+        counts[i] = after;
+        if (before > 0 && after == 0) live--;
+        else if (before == 0 && after > 0) live++;
+    }
+
+    /** Sets the value outright (for side tables such as key -&gt; image id + 1). */
+    void put(long key, int value) {
+        add(key, value - get(key));
+    }
+
+    /** Keys with a count above zero. */
+    int size() {
+        return live;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(counts, 0);
+        used = 0;
+        live = 0;
+    }
+
+    /**
+     * The limit keys with the highest counts, highest first (ties: smaller key first,
+     * i.e. interned earlier). A bounded min-heap, so O(n log limit) and no sort of everything.
+     */
+    long[] top(int limit) {
+        int k = Math.min(limit, live);
+        long[] heapKeys = new long[k];
+        int[] heapCounts = new int[k];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            int c = counts[i];
+            if (key == EMPTY || c == 0) continue;
+            if (n < k) {
+                heapKeys[n] = key;
+                heapCounts[n] = c;
+                siftUp(heapKeys, heapCounts, n++);
+            } else if (k > 0 && beats(c, key, heapCounts[0], heapKeys[0])) {
+                heapKeys[0] = key;
+                heapCounts[0] = c;
+                siftDown(heapKeys, heapCounts, n);
+            }
+        }
+        // pop the min repeatedly, filling from the back
+        long[] out = new long[n];
+        for (int size = n; size > 0; size--) {
+            out[size - 1] = heapKeys[0];
+            heapKeys[0] = heapKeys[size - 1];
+            heapCounts[0] = heapCounts[size - 1];
+            siftDown(heapKeys, heapCounts, size - 1);
+        }
+        return out;
+    }
+
+    private static boolean beats(int c1, long k1, int c2, long k2) {
+        return c1 != c2 ? c1 > c2 : k1 < k2;
+    }
+
+    private static void siftUp(long[] keys, int[] counts, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!beats(counts[parent], keys[parent], counts[i], keys[i])) break;
+            swap(keys, counts, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] keys, int[] counts, int size) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= size) return;
+            int r = l + 1;
+            int least = r < size && beats(counts[l], keys[l], counts[r], keys[r]) ? r : l;
+            if (!beats(counts[i], keys[i], counts[least], keys[least])) return;
+            swap(keys, counts, i, least);
+            i = least;
+        }
+    }
+
+    private static void swap(long[] keys, int[] counts, int a, int b) {
+        long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+        int c = counts[a]; counts[a] = counts[b]; counts[b] = c;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // also drops keys whose count fell to zero
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int cap = keys.length;
+        if (live * 2 > cap / 2) cap <<= 1;
+        keys = new long[cap];
+        counts = new int[cap];
+        Arrays.fill(keys, EMPTY);
+        used = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY || oldCounts[i] == 0) continue;
+            int j = find(oldKeys[i]);
+            keys[j] = oldKeys[i];
+            counts[j] = oldCounts[i];
+            used++;
+        }
+    }
+}
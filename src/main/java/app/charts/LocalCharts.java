@@ -0,0 +1,144 @@
+package app.charts;
+
+import app.metrics.Metrics;
+import app.store.ScrobbleStore;
+import app.store.StringDictionary;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top artists / albums / tracks computed from the local {@link ScrobbleStore}, for any
+ * {@link TimeWindow}, without the network.
+ *
+ * Each window asked for is counted once with a range scan (the store skips blocks outside
+ * it) and then kept: later queries only add the records appended since, by append index,
+ * and a rolling window subtracts the slice that slid out. So a refresh costs
+ * O(new scrobbles + top-N), not O(history). The few most recently used windows are kept.
+ * Thread-safe.
+ */
+public final class LocalCharts {
+
+    public enum Kind { ARTISTS, ALBUMS, TRACKS }
+
+    private static final int MAX_WINDOWS = 8;
+
+    private final ScrobbleStore store;
+    private final StringDictionary strings;
+    private final Map<TimeWindow, ChartWindow> windows = new HashMap<>();
+    private long seen;   // store records every open window has counted
+
+    public LocalCharts(ScrobbleStore store) {
+        this.store = store;
+        this.strings = store.strings();
+    }
+
+    /**
+     * Whether the store goes back to the window's start, i.e. whether a local chart for it
+     * is complete. Syncs fill the store oldest first, so the stored range has no gaps; what
+     * may be missing is only what is newer than the last sync.
+     */
+    public boolean covers(TimeWindow window) {
+        long from = window.fromUts(Instant.now().getEpochSecond());
+        return store.size() > 0 && (from == Long.MIN_VALUE || store.oldestPlayedAt() <= from);
+    }
+
+    /** The limit entries with the most plays in the window, most played first. */
+    public synchronized List<ChartEntry> top(Kind kind, TimeWindow window, int limit) {
+        long start = System.nanoTime();
+        long now = Instant.now().getEpochSecond();
+        catchUp();
+
+        ChartWindow w = windows.get(window);
+        if (w == null) {
+            w = open(window, now);
+        } else if (window.isRolling()) {
+            long from = window.fromUts(now);
+            if (from >= w.from) {
+                slide(w, from);
+            } else {
+                // the clock went backwards; recount rather than guess
+                windows.remove(window);
+                w = open(window, now);
+            }
+        }
+        w.lastUsedNanos = System.nanoTime();
+
+        List<ChartEntry> out = entries(kind, w, w.table(kind).top(limit));
+        Metrics.global().timer("charts.query").recordSince(start);
+        return out;
+    }
+
+    /**
+     * Counts what was appended to the store since the last call into every open window.
+     * Called by {@link #top}; call it after appending to keep the work off the query path.
+     */
+    public synchronized void catchUp() {
+        if (windows.isEmpty()) {
+            // nothing to update; a window opened later counts these with its range scan
+            seen = store.size();
+            return;
+        }
+        ChartWindow[] open = windows.values().toArray(ChartWindow[]::new);
+        seen = store.scanAppended(seen, (idx, ts, track, artist, album, image) -> {
+            for (ChartWindow w : open) {
+                if (w.contains(ts)) w.count(track, artist, album, image, 1);
+            }
+            return true;
+        });
+    }
+
+    private ChartWindow open(TimeWindow window, long now) {
+        if (windows.size() >= MAX_WINDOWS) {
+            windows.values().stream().min(Comparator.comparingLong(x -> x.lastUsedNanos))
+                    .ifPresent(lru -> windows.remove(lru.window));
+        }
+        ChartWindow w = new ChartWindow(window, now);
+        long upTo = seen;   // later records arrive through catchUp
+        store.scan(w.from, w.to, (idx, ts, track, artist, album, image) -> {
+            if (idx < upTo) w.count(track, artist, album, image, 1);
+            return true;
+        });
+        windows.put(window, w);
+        return w;
+    }
+
+    private void slide(ChartWindow w, long newFrom) {
+        if (newFrom == w.from) return;
+        long upTo = seen;
+        store.scan(w.from, newFrom, (idx, ts, track, artist, album, image) -> {
+            if (idx < upTo) w.count(track, artist, album, image, -1);
+            return true;
+        });
+        w.from = newFrom;
+    }
+
+    private List<ChartEntry> entries(Kind kind, ChartWindow w, long[] keys) {
+        List<ChartEntry> out = new ArrayList<>(keys.length);
+        CountTable counts = w.table(kind);
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            int plays = counts.get(key);
+            switch (kind) {
+                case ARTISTS -> {
+                    String artist = strings.get((int) key);
+                    out.add(new ChartEntry(i + 1, artist, artist, plays, ""));
+                }
+                case ALBUMS -> out.add(new ChartEntry(i + 1, strings.get(CountTable.lo(key)),
+                        strings.get(CountTable.hi(key)), plays, cover(w.albumCovers, key)));
+                case TRACKS -> out.add(new ChartEntry(i + 1, strings.get(CountTable.lo(key)),
+                        strings.get(CountTable.hi(key)), plays, cover(w.trackCovers, key)));
+            }
+        }
+        return out;
+    }
+
+    private String cover(CountTable covers, long key) {
+        int image = covers.get(key) - 1;
+        return image < 0 ? "" : strings.get(image);
+    }
+}
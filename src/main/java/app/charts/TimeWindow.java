@@ -0,0 +1,76 @@
+package app.charts;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Objects;
+
+/**
+ * Which scrobbles a chart counts: a fixed [from, to) range (custom dates, a calendar month)
+ * or a rolling window ending now ("last 7 days").
+ */
+public final class TimeWindow {
+
+    private final long fromUts;      // fixed windows
+    private final long toUts;
+    private final long lengthSeconds; // rolling windows; 0 for fixed
+
+    private TimeWindow(long fromUts, long toUts, long lengthSeconds) {
+        this.fromUts = fromUts;
+        this.toUts = toUts;
+        this.lengthSeconds = lengthSeconds;
+    }
+
+    /** The last {@code length} up to now, re-evaluated at every query. */
+    public static TimeWindow rolling(Duration length) {
+        if (length.isNegative() || length.isZero()) throw new IllegalArgumentException("length must be positive");
+        return new TimeWindow(0, Long.MAX_VALUE, length.toSeconds());
+    }
+
+    /** [from, to) */
+    public static TimeWindow between(Instant from, Instant to) {
+        if (!from.isBefore(to)) throw new IllegalArgumentException("empty window " + from + " .. " + to);
+        return new TimeWindow(from.getEpochSecond(), to.getEpochSecond(), 0);
+    }
+
+    public static TimeWindow month(YearMonth month, ZoneId zone) {
+        return between(month.atDay(1).atStartOfDay(zone).toInstant(),
+                month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant());
+    }
+
+    /** Everything in the store. */
+    public static TimeWindow allTime() {
+        return new TimeWindow(Long.MIN_VALUE, Long.MAX_VALUE, 0);
+    }
+
+    public boolean isRolling() {
+        return lengthSeconds > 0;
+    }
+
+    public long fromUts(long nowUts) {
+        return isRolling() ? nowUts - lengthSeconds : fromUts;
+    }
+
+    /** Exclusive; rolling windows take anything up to now (and clock skew past it). */
+    public long toUts() {
+        return toUts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TimeWindow w && w.fromUts == fromUts && w.toUts == toUts && w.lengthSeconds == lengthSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromUts, toUts, lengthSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return isRolling() ? "last " + Duration.ofSeconds(lengthSeconds)
+                : Instant.ofEpochSecond(Math.max(fromUts, Instant.MIN.getEpochSecond())) + " .. "
+                  + Instant.ofEpochSecond(Math.min(toUts, Instant.MAX.getEpochSecond()));
+    }
+}
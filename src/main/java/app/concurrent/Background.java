@@ -0,0 +1,61 @@
+package app.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one place background work runs: every store append, index catch-up, snapshot write,
+ * icon lookup and response parse gets its own virtual thread, so a blocking call costs no
+ * platform thread and fan-out isn't capped by a pool size.
+ *
+ * Async work that isn't a task here (a request in flight, a delayed retry) is tracked as
+ * futures, in a {@link TaskScope} per unit of work or with {@link #track}. {@link #shutdown}
+ * interrupts whatever is running, rejects new tasks and cancels every tracked future.
+ */
+public final class Background implements Executor {
+
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scrobbledash-", 0).factory());
+    private final Set<TaskScope> openScopes = ConcurrentHashMap.newKeySet();
+    // futures that belong to no unit of work; lives until shutdown
+    private final TaskScope untilShutdown = openScope();
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /** A scope whose pending futures are cancelled when it closes or this shuts down. */
+    public TaskScope openScope() {
+        TaskScope scope = new TaskScope(openScopes::remove);
+        openScopes.add(scope);
+        if (isShutdown()) scope.cancel();
+        return scope;
+    }
+
+    /** Cancels the future on {@link #shutdown} if it is still pending then (at once if already shut down). */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        return untilShutdown.track(future);
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /** Cancels running work and open scopes, then waits up to the timeout for threads to finish. */
+    public void shutdown(long timeout, TimeUnit unit) {
+        // first, so what a cancellation triggers can't start new tasks
+        executor.shutdownNow();
+        for (TaskScope scope : openScopes) scope.cancel();
+        try {
+            executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package app.concurrent;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/** Small helpers for code that offers both a CompletableFuture and a blocking variant. */
+public final class Futures {
+
+    private Futures() { }
+
+    /**
+     * Waits for the future and rethrows its failure as it was thrown (IOExceptions stay
+     * IOExceptions). Interrupting the waiting thread cancels the future.
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Cancels {@code to} when {@code from} is cancelled; a CompletableFuture doesn't pass
+     * cancellation on to the futures it was derived from.
+     */
+    public static void forwardCancel(CompletableFuture<?> from, CompletableFuture<?> to) {
+        from.whenComplete((v, err) -> {
+            if (from.isCancelled()) to.cancel(true);
+        });
+    }
+
+    /** The actual failure behind CompletionException/ExecutionException wrappers. */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+}
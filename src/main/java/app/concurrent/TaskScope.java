@@ -0,0 +1,54 @@
+package app.concurrent;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * The futures of one unit of work (e.g. a refresh cycle). Cancelling the scope cancels every
+ * tracked future still pending, and so do closing it and shutting down the {@link Background}
+ * that opened it: no request, retry or follow-up of the unit outlives it.
+ *
+ * <pre>
+ * TaskScope scope = background.openScope();
+ * CompletableFuture&lt;A&gt; a = scope.track(client.fooAsync());
+ * CompletableFuture&lt;B&gt; b = scope.track(a.thenApplyAsync(..., background));
+ * b.whenComplete((v, err) -&gt; scope.close());
+ * </pre>
+ */
+public final class TaskScope implements AutoCloseable {
+
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private final Consumer<TaskScope> onClose;
+    private volatile boolean cancelled;
+
+    TaskScope(Consumer<TaskScope> onClose) {
+        this.onClose = onClose;
+    }
+
+    /** Adds a future to the scope; one tracked after the scope was cancelled is cancelled right away. */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        pending.add(future);
+        future.whenComplete((v, err) -> pending.remove(future));
+        if (cancelled) future.cancel(true);
+        return future;
+    }
+
+    /** Cancels every pending future, and any tracked from now on. */
+    public void cancel() {
+        cancelled = true;
+        for (CompletableFuture<?> f : pending) f.cancel(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Cancels whatever is still pending and forgets the scope. */
+    @Override
+    public void close() {
+        cancel();
+        onClose.accept(this);
+    }
+}
@@ -0,0 +1,146 @@
+package app.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel: a ring of slots, one per tick, each holding the timeouts that fall
+ * due when the wheel passes it (after some number of full turns). Scheduling and cancelling
+ * are O(1) and the wheel costs one platform thread however many timeouts it holds, which
+ * is what thousands of periodic polls need; a ScheduledThreadPoolExecutor would keep them
+ * in a heap and wake once per task. Due tasks run on the given executor, never on the wheel
+ * thread, so a slow task can't make the wheel late. Precision is one tick.
+ */
+public final class TimingWheel implements AutoCloseable {
+
+    /** A scheduled task; cancelling it is lazy (it is dropped when its slot comes round). */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Timeout>[] slots;
+    private final Executor executor;
+    private final Thread worker;
+    private final long startNanos;
+
+    // Handed over from other threads; the slots themselves belong to the wheel thread
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+
+    private volatile long tick;
+    private volatile boolean closed;
+
+    /**
+     * @param tickMillis resolution
+     * @param slots      ring size, rounded up to a power of two; a turn should cover the usual delay
+     * @param executor   where due tasks run
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, int slots, Executor executor, String threadName) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be > 0");
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = size - 1;
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) this.slots[i] = new ArrayList<>();
+        this.executor = executor;
+        this.startNanos = System.nanoTime();
+        this.worker = Thread.ofPlatform().name(threadName).daemon().unstarted(this::run);
+        this.worker.start();
+    }
+
+    /** Runs the task once, no earlier than the delay and at most about a tick later. */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) throw new RejectedExecutionException("timing wheel closed");
+        long ticks = Math.max(1, (unit.toNanos(delay) + tickNanos - 1) / tickNanos);
+        Timeout t = new Timeout(task, tick + ticks);
+        incoming.add(t);
+        return t;
+    }
+
+    public long tickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    // -----------------------------
+    // Wheel thread
+    // -----------------------------
+
+    private void run() {
+        long current = 0;
+        while (!closed) {
+            long sleep = startNanos + (current + 1) * tickNanos - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (closed) return;
+                }
+                continue;
+            }
+            current++;
+            tick = current;
+            placeIncoming(current);
+            expire(slots[(int) (current & mask)]);
+        }
+    }
+
+    private void placeIncoming(long current) {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) continue;
+            // Scheduled against a tick that has gone by since: due now
+            long due = Math.max(current, t.deadlineTick);
+            t.rounds = (due - current) / slots.length;
+            slots[(int) (due & mask)].add(t);
+        }
+    }
+
+    private void expire(List<Timeout> slot) {
+        int kept = 0;
+        for (int i = 0, n = slot.size(); i < n; i++) {
+            Timeout t = slot.get(i);
+            if (t.cancelled) continue;
+            if (t.rounds > 0) {
+                t.rounds--;
+                slot.set(kept++, t);
+                continue;
+            }
+            try {
+                executor.execute(t.task);
+            } catch (RejectedExecutionException e) {
+                if (!closed) System.err.println("Timing wheel task rejected: " + e.getMessage());
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    /** Stops the wheel; pending timeouts never run. */
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,170 @@
+package app.daemon;
+
+import app.metrics.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Read-only JSON over HTTP, answered from {@link SyncDaemon}'s current snapshot:
+ *
+ *   GET /recent[?limit=n]   scrobbles, newest first
+ *   GET /now-playing        the current track, or null
+ *   GET /top-artists        last 7 days
+ *
+ * The same under /users/{name}/ for each account the daemon keeps; with --users that is the
+ * only way to reach them.
+ *
+ * Every response carries an ETag; a matching If-None-Match gets an empty 304, so pollers
+ * pay a few bytes per check until something actually changed.
+ */
+public final class QueryServer implements AutoCloseable {
+
+    private final SyncDaemon daemon;                // answers the plain paths; null with several users
+    private final Map<String, SyncDaemon> byUser;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Metrics metrics = Metrics.global();
+
+    public QueryServer(SyncDaemon daemon, InetSocketAddress address) throws IOException {
+        this(daemon, Map.of(daemon.user(), daemon), address);
+    }
+
+    /** One daemon per user name, each under /users/{name}/. */
+    public QueryServer(Map<String, SyncDaemon> byUser, InetSocketAddress address) throws IOException {
+        this(null, Collections.unmodifiableMap(new LinkedHashMap<>(byUser)), address);
+    }
+
+    private QueryServer(SyncDaemon daemon, Map<String, SyncDaemon> byUser, InetSocketAddress address) throws IOException {
+        this.daemon = daemon;
+        this.byUser = byUser;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public URI baseUri() {
+        InetSocketAddress a = server.getAddress();
+        return URI.create("http://" + a.getHostString() + ":" + a.getPort() + "/");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            metrics.counter("daemon.requests").increment();
+            String method = ex.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                ex.getResponseHeaders().set("Allow", "GET, HEAD");
+                send(ex, 405, SyncDaemon.Resource.of(Views.error("method not allowed"), 0));
+                return;
+            }
+
+            SyncDaemon d = daemon;
+            String path = ex.getRequestURI().getPath();
+            if (path.startsWith("/users/")) {
+                int slash = path.indexOf('/', "/users/".length());
+                String user = slash < 0 ? path.substring("/users/".length()) : path.substring("/users/".length(), slash);
+                d = byUser.get(user);
+                path = slash < 0 ? "/" : path.substring(slash);
+                if (d == null) {
+                    send(ex, 404, SyncDaemon.Resource.of(Views.error("unknown user; this daemon keeps " + String.join(", ", byUser.keySet())), 0));
+                    return;
+                }
+            } else if (d == null) {
+                send(ex, 404, SyncDaemon.Resource.of(Views.error("several users; try /users/{name}/recent"), 0));
+                return;
+            }
+
+            SyncDaemon.Snapshot s = d.snapshot();
+            switch (path) {
+                case "/recent", "/recent/" -> {
+                    int limit = intParam(ex.getRequestURI().getRawQuery(), "limit");
+                    if (limit <= 0 || limit >= s.recent().size()) {
+                        send(ex, 200, s.recentBody());
+                    } else {
+                        // the full body's tag plus the limit; rendered only if the client's copy is stale
+                        String etag = s.recentBody().etag().replaceFirst("\"$", "-" + limit + "\"");
+                        if (notModified(ex, etag)) return;
+                        long updatedAt = s.recentBody().updatedAt();
+                        byte[] body = Views.recent(d.user(), updatedAt, s.recent(), limit);
+                        send(ex, 200, new SyncDaemon.Resource(body, etag, updatedAt));
+                    }
+                }
+                case "/now-playing", "/now-playing/" -> send(ex, 200, s.nowPlayingBody());
+                case "/top-artists", "/top-artists/" -> send(ex, 200, s.topArtistsBody());
+                default -> send(ex, 404, SyncDaemon.Resource.of(Views.error("unknown path; try /recent, /now-playing or /top-artists"), 0));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Query server: " + e);
+        }
+    }
+
+    private void send(HttpExchange ex, int status, SyncDaemon.Resource r) throws IOException {
+        var headers = ex.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        // any page may read it; it's the same data the dashboard shows
+        headers.set("Access-Control-Allow-Origin", "*");
+        if (status == 200) {
+            if (notModified(ex, r.etag())) return;
+            headers.set("ETag", r.etag());
+            headers.set("Cache-Control", "no-cache");
+        }
+        boolean head = ex.getRequestMethod().equals("HEAD");
+        ex.sendResponseHeaders(status, head ? -1 : r.body().length);
+        if (!head) {
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(r.body());
+            }
+        }
+    }
+
+    private boolean notModified(HttpExchange ex, String etag) throws IOException {
+        String ifNoneMatch = ex.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag) || t.equals("*")) {
+                metrics.counter("daemon.not_modified").increment();
+                ex.getResponseHeaders().set("ETag", etag);
+                ex.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                ex.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int intParam(String query, String name) {
+        if (query == null) return 0;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                try {
+                    return Integer.parseInt(pair.substring(eq + 1));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
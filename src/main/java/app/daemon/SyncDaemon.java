@@ -0,0 +1,484 @@
+package app.daemon;
+
+import app.charts.ChartEntry;
+import app.charts.LocalCharts;
+import app.charts.TimeWindow;
+import app.concurrent.Background;
+import app.history.TrackHistory;
+import app.lastfm.LastFmClient;
+import app.lastfm.RequestGovernor;
+import app.metrics.Metrics;
+import app.metrics.MetricsJmx;
+import app.metrics.MetricsReporter;
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+import app.models.TopArtistRow;
+import app.store.ScrobbleStore;
+import app.sync.BackfillEngine;
+import app.sync.DeltaSync;
+import app.sync.MultiUserScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Headless mode: the dashboard's sync loop (delta sync into the local store and an
+ * in-memory history, top artists from the store or the API) without JavaFX, with the
+ * result served over HTTP by {@link QueryServer}. Any number of dashboards and scripts
+ * can read it; only this process polls Last.fm.
+ *
+ * With --backfill it also downloads the account's whole history into the store, in the
+ * background and resumable, so local charts cover more than what was synced since the start.
+ *
+ * With --users a,b,c it keeps several accounts instead of the configured one: each gets its
+ * own store (data-dir/users/name) and endpoints (/users/name/recent, ...), and one
+ * {@link MultiUserScheduler} polls them all over the shared client and rate limit, with
+ * --interval as the shortest interval.
+ *
+ *   java -cp app.jar app.MainLauncher --headless [--port 8090] [--bind 127.0.0.1]
+ *        [--interval 30] [--data-dir ~/.scrobbledash/headless] [--backfill] [--users a,b,c]
+ */
+public final class SyncDaemon implements AutoCloseable {
+
+    private static final int DEFAULT_HISTORY_SIZE = 100;
+    private static final int RECENT_LIMIT = 50;
+    private static final TimeWindow TOP_ARTISTS_WINDOW = TimeWindow.rolling(Duration.ofDays(7));
+    private static final int TOP_ARTISTS_LIMIT = 50;
+    private static final int BACKFILL_IN_FLIGHT = 4;
+    // Last.fm user names; also keeps a name from escaping the data dir
+    private static final Pattern USER_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    /** One endpoint's current body, its ETag, and when its data last changed. */
+    record Resource(byte[] body, String etag, long updatedAt) {
+        static Resource of(byte[] body, long updatedAt) {
+            return new Resource(body, etagOf(body), updatedAt);
+        }
+    }
+
+    /** Everything the endpoints serve; replaced as a whole after each poll, never mutated. */
+    record Snapshot(List<RecentTrackRow> recent, RecentTrackRow playing, List<TopArtistRow> artists, String artistsSource,
+                    Resource recentBody, Resource nowPlayingBody, Resource topArtistsBody) { }
+
+    private final LastFmClient client;
+    private final Path dataDir;
+    private final DeltaSync deltaSync;
+    private final TrackHistory history;
+    private final ScrobbleStore store;          // null if it couldn't be opened
+    private final LocalCharts charts;
+    private final Duration interval;
+    private final ScheduledExecutorService poller;
+    private final Metrics metrics = Metrics.global();
+
+    // poller thread only
+    private List<TopArtistRow> topArtists = List.of();
+    private String topArtistsSource = "none";
+    private int failuresInARow;
+
+    private volatile Snapshot snapshot;
+
+    private BackfillEngine backfill;
+    private Thread backfillThread;
+
+    public SyncDaemon(LastFmClient client, Path dataDir, int historySize, Duration interval) {
+        this(client, dataDir, historySize, interval,
+                Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "scrobbledash-sync")));
+    }
+
+    /** @param poller the single thread that applies syncs and renders snapshots */
+    private SyncDaemon(LastFmClient client, Path dataDir, int historySize, Duration interval, ScheduledExecutorService poller) {
+        this.client = client;
+        this.dataDir = dataDir;
+        this.deltaSync = new DeltaSync(client, RECENT_LIMIT);
+        this.history = new TrackHistory(historySize);
+        this.interval = interval;
+
+        ScrobbleStore opened = null;
+        try {
+            opened = ScrobbleStore.open(dataDir.resolve("store"));
+            for (RecentTrackRow r : opened.range(0, Long.MAX_VALUE, history.capacity())) history.addOldest(r);
+            deltaSync.advanceHighWaterMark(opened.newestPlayedAt());
+        } catch (IOException e) {
+            System.err.println("Scrobble store unavailable, serving memory only: " + e.getMessage());
+        }
+        this.store = opened;
+        this.charts = opened == null ? null : new LocalCharts(opened);
+
+        this.poller = poller;
+        publish();
+    }
+
+    public void start() {
+        poller.scheduleWithFixedDelay(this::poll, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** What the endpoints serve right now. */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    String user() {
+        return client.getUsername();
+    }
+
+    // -----------------------------
+    // Sync loop
+    // -----------------------------
+    private void poll() {
+        RequestGovernor governor = client.getGovernor();
+        if (governor.isOpen()) return;   // Last.fm is failing; the breaker says when to try again
+
+        long start = System.nanoTime();
+        try {
+            DeltaSync.Result res;
+            do {
+                // a long gap comes in several rounds, oldest first
+                res = deltaSync.sync();
+                merge(res);
+            } while (res.hasMore);
+            finishSync(start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            syncFailed(e);
+        }
+    }
+
+    /**
+     * A round a {@link MultiUserScheduler} fetched for this daemon's user, applied on the
+     * poller thread like the daemon's own. The scheduler fetches the rest of a long gap
+     * right away; the endpoints change once it's all in.
+     */
+    void deliver(DeltaSync.Result res) {
+        long start = System.nanoTime();
+        poller.execute(() -> {
+            try {
+                merge(res);
+                if (!res.hasMore) finishSync(start);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                syncFailed(e);
+            }
+        });
+    }
+
+    /** Newest scrobble in the store (epoch seconds), 0 if none; where a scheduler's sync starts. */
+    long newestStored() {
+        return store == null ? 0 : store.newestPlayedAt();
+    }
+
+    private void merge(DeltaSync.Result res) throws IOException {
+        if (store != null) store.appendAll(res.newScrobbles);
+        history.setNowPlaying(res.nowPlaying);
+        List<RecentTrackRow> added = history.mergeNewest(res.newScrobbles);
+        metrics.counter("history.merged").add(added.size());
+    }
+
+    private void finishSync(long start) throws IOException, InterruptedException {
+        refreshTopArtists();
+        publish();
+        metrics.timer("daemon.poll").recordSince(start);
+        failuresInARow = 0;
+    }
+
+    private void syncFailed(Exception e) {
+        metrics.counter("daemon.poll_failures").increment();
+        // one line per failure streak, not one per poll
+        if (failuresInARow++ == 0) System.err.println("Sync failed for " + user() + ": " + e.getMessage());
+    }
+
+    private void refreshTopArtists() throws IOException, InterruptedException {
+        if (charts != null && charts.covers(TOP_ARTISTS_WINDOW)) {
+            List<TopArtistRow> rows = new ArrayList<>();
+            StringPool pool = new StringPool();
+            for (ChartEntry e : charts.top(LocalCharts.Kind.ARTISTS, TOP_ARTISTS_WINDOW, TOP_ARTISTS_LIMIT)) {
+                rows.add(new TopArtistRow(pool, e.artist(), e.plays(), e.imageUrl()));
+            }
+            topArtists = rows;
+            topArtistsSource = "local";
+        } else {
+            // the response cache keeps this to one real request per TTL
+            topArtists = client.getTopArtists("7day", TOP_ARTISTS_LIMIT, 1).items;
+            topArtistsSource = "lastfm";
+        }
+    }
+
+    /**
+     * Renders each body once per change; requests only copy bytes (or answer 304).
+     * A body whose data didn't change keeps its bytes, ETag and updatedAt.
+     */
+    private void publish() {
+        long now = Instant.now().getEpochSecond();
+        String user = user();
+        Snapshot old = snapshot;
+
+        // scrobbles only; now playing has its own endpoint
+        List<RecentTrackRow> recent = new ArrayList<>(history.size());
+        for (int i = 0; i < history.size(); i++) recent.add(history.get(i));
+        RecentTrackRow playing = history.getNowPlaying();
+
+        Resource recentBody = old != null && sameRows(old.recent(), recent)
+                ? old.recentBody() : Resource.of(Views.recent(user, now, recent, 0), now);
+        Resource nowPlayingBody = old != null && samePlaying(old.playing(), playing)
+                ? old.nowPlayingBody() : Resource.of(Views.nowPlaying(user, now, playing), now);
+        Resource topArtistsBody = old != null && old.artistsSource().equals(topArtistsSource) && sameArtists(old.artists(), topArtists)
+                ? old.topArtistsBody() : Resource.of(Views.topArtists(user, now, "7day", topArtistsSource, topArtists), now);
+
+        snapshot = new Snapshot(List.copyOf(recent), playing, topArtists, topArtistsSource,
+                recentBody, nowPlayingBody, topArtistsBody);
+    }
+
+    // history rows are kept, not re-created, so identity is enough
+    private static boolean sameRows(List<RecentTrackRow> a, List<RecentTrackRow> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    // the probe returns a new row every poll, even for the same track
+    private static boolean samePlaying(RecentTrackRow a, RecentTrackRow b) {
+        if (a == null || b == null) return a == b;
+        return Objects.equals(a.getTrack(), b.getTrack()) && Objects.equals(a.getArtist(), b.getArtist())
+                && Objects.equals(a.getAlbum(), b.getAlbum());
+    }
+
+    private static boolean sameArtists(List<TopArtistRow> a, List<TopArtistRow> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            TopArtistRow x = a.get(i), y = b.get(i);
+            if (!Objects.equals(x.getArtist(), y.getArtist()) || x.getPlaycount() != y.getPlaycount()
+                    || !Objects.equals(x.getImageUrl(), y.getImageUrl())) return false;
+        }
+        return true;
+    }
+
+    // -----------------------------
+    // Backfill
+    // -----------------------------
+
+    /**
+     * Downloads the whole history into the store on a background thread, resuming where an
+     * earlier run stopped (the checkpoint lives in the data dir). Rows are appended a page at
+     * a time; scrobbles the store already has (the sync loop's, or a page sent twice) are
+     * skipped by the store. Runs at BACKFILL priority, so the sync loop keeps its share of the
+     * rate limit. No-op without a store.
+     */
+    public synchronized void startBackfill() {
+        if (store == null || backfillThread != null) return;
+        backfill = new BackfillEngine(client, dataDir.resolve("backfill.properties"),
+                BACKFILL_IN_FLIGHT, BackfillEngine.DEFAULT_PAGE_SIZE);
+        backfillThread = Thread.ofVirtual().name("scrobbledash-backfill").start(this::runBackfill);
+    }
+
+    private void runBackfill() {
+        List<RecentTrackRow> page = new ArrayList<>();
+        BackfillEngine.Sink sink = new BackfillEngine.Sink() {
+            // calls are serialized by the engine
+            @Override
+            public void accept(RecentTrackRow row) {
+                page.add(row);
+            }
+
+            @Override
+            public void pageDone(int p) {
+                try {
+                    metrics.counter("backfill.rows").add(store.appendAll(page));
+                    metrics.counter("backfill.pages").increment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    page.clear();
+                }
+            }
+        };
+        try {
+            BackfillEngine.Progress last = backfill.run(sink, null);
+            System.out.println("Backfill of " + user() + (last.isComplete() ? " complete: " : " stopped: ") + last);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Backfill failed: " + e.getMessage());
+        }
+    }
+
+    // -----------------------------
+    // Lifecycle
+    // -----------------------------
+    @Override
+    public void close() {
+        Thread backfilling;
+        synchronized (this) {
+            if (backfill != null) backfill.cancel();
+            backfilling = backfillThread;
+        }
+        if (backfilling != null) {
+            try {
+                // pages in flight finish, the checkpoint is written; then the store may close
+                backfilling.join(Duration.ofSeconds(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        poller.shutdownNow();
+        try {
+            poller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Scrobble store close failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) continue;
+            opts.put(a.substring(2), i + 1 < args.length && !args[i + 1].startsWith("--") ? args[++i] : "");
+        }
+
+        int port;
+        Duration interval;
+        List<String> users;
+        try {
+            port = Integer.parseInt(opts.getOrDefault("port", "8090"));
+            interval = Duration.ofSeconds(Long.parseLong(opts.getOrDefault("interval", "30")));
+            if (interval.toSeconds() < 5) throw new IllegalArgumentException("--interval must be at least 5 seconds");
+            users = parseUsers(opts.get("users"));
+        } catch (RuntimeException e) {
+            System.err.println("Usage: --headless [--port n] [--bind address] [--interval seconds] [--data-dir path] [--backfill]"
+                    + " [--users a,b,c]");
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        String bind = opts.getOrDefault("bind", "127.0.0.1");
+        // its own store by default: the GUI's is single-writer
+        Path dataDir = Path.of(opts.getOrDefault("data-dir",
+                Path.of(System.getProperty("user.home"), ".scrobbledash", "headless").toString()));
+        boolean backfill = opts.containsKey("backfill");
+
+        // parsing and retries of every user's requests; shut down last
+        Background background = new Background();
+        LastFmClient client = LastFmClient.fromClasspathProperties(background);
+        MetricsJmx.register(Metrics.global());
+        MetricsReporter reporter = new MetricsReporter(Metrics.global(), Duration.ofMinutes(1));
+
+        if (users.isEmpty()) {
+            SyncDaemon daemon = new SyncDaemon(client, dataDir, readHistorySize(), interval);
+            QueryServer server = new QueryServer(daemon, new InetSocketAddress(bind, port));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                daemon.close();
+                background.shutdown(3, TimeUnit.SECONDS);
+                reporter.close();
+            }, "scrobbledash-shutdown"));
+
+            server.start();
+            daemon.start();
+            if (backfill) daemon.startBackfill();
+            System.out.println("ScrobbleDash headless: syncing " + client.getUsername() + " every "
+                    + interval.toSeconds() + "s, serving " + server.baseUri()
+                    + (backfill ? ", backfilling history" : ""));
+            return;
+        }
+
+        // One daemon per user for its store, history and endpoints; the scheduler polls for all of them
+        Map<String, SyncDaemon> daemons = new LinkedHashMap<>();
+        for (String user : users) {
+            ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofVirtual().name("scrobbledash-sync-" + user).factory());
+            daemons.put(user, new SyncDaemon(client.forUser(user), dataDir.resolve("users").resolve(user),
+                    readHistorySize(), interval, poller));
+        }
+        MultiUserScheduler scheduler = new MultiUserScheduler(client, (user, result) -> daemons.get(user).deliver(result),
+                interval, max(interval, MultiUserScheduler.DEFAULT_MAX_INTERVAL), MultiUserScheduler.DEFAULT_MAX_IN_FLIGHT);
+        QueryServer server = new QueryServer(daemons, new InetSocketAddress(bind, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            scheduler.close();
+            daemons.values().forEach(SyncDaemon::close);
+            background.shutdown(3, TimeUnit.SECONDS);
+            reporter.close();
+        }, "scrobbledash-shutdown"));
+
+        server.start();
+        for (Map.Entry<String, SyncDaemon> e : daemons.entrySet()) {
+            scheduler.addUser(e.getKey(), e.getValue().newestStored());
+            if (backfill) e.getValue().startBackfill();
+        }
+        System.out.println("ScrobbleDash headless: syncing " + String.join(", ", users) + " every "
+                + interval.toSeconds() + "s or more, serving " + server.baseUri() + "users/<name>/"
+                + (backfill ? ", backfilling history" : ""));
+    }
+
+    /** --users a,b,c; empty if not given. */
+    private static List<String> parseUsers(String value) {
+        if (value == null) return List.of();
+        List<String> users = new ArrayList<>();
+        for (String u : value.split(",")) {
+            String name = u.trim();
+            if (name.isEmpty()) continue;
+            if (!USER_NAME.matcher(name).matches()) throw new IllegalArgumentException("not a Last.fm user name: " + name);
+            if (!users.contains(name)) users.add(name);
+        }
+        if (users.isEmpty()) throw new IllegalArgumentException("--users needs at least one name");
+        return users;
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /** history_size in lastfm.properties, as for the dashboard. */
+    private static int readHistorySize() {
+        Properties props = new Properties();
+        try (InputStream in = SyncDaemon.class.getResourceAsStream("/lastfm.properties")) {
+            if (in != null) props.load(in);
+        } catch (IOException ignored) { }
+        try {
+            int v = Integer.parseInt(props.getProperty("history_size", "").trim());
+            return v > 0 ? v : DEFAULT_HISTORY_SIZE;
+        } catch (NumberFormatException e) {
+            return DEFAULT_HISTORY_SIZE;
+        }
+    }
+
+    // -----------------------------
+    // ETags
+    // -----------------------------
+    static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package app.daemon;
+
+import app.models.RecentTrackRow;
+import app.models.TopArtistRow;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * JSON bodies of the query endpoints. Plain shapes (numbers as numbers, times as epoch
+ * seconds), not Last.fm's; rendered once per state change, not per request.
+ */
+final class Views {
+
+    private Views() { }
+
+    private interface Body {
+        void write(JsonWriter w) throws IOException;
+    }
+
+    private static byte[] json(Body body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        try (JsonWriter w = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            body.write(w);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] recent(String user, long updatedAt, List<RecentTrackRow> rows, int limit) {
+        int n = limit > 0 ? Math.min(limit, rows.size()) : rows.size();
+        return json(w -> {
+            w.beginObject()
+                    .name("user").value(user)
+                    .name("updatedAt").value(updatedAt)
+                    .name("count").value(n);
+            w.name("tracks").beginArray();
+            for (int i = 0; i < n; i++) track(w, rows.get(i));
+            w.endArray();
+            w.endObject();
+        });
+    }
+
+    static byte[] nowPlaying(String user, long updatedAt, RecentTrackRow row) {
+        return json(w -> {
+            w.beginObject()
+                    .name("user").value(user)
+                    .name("updatedAt").value(updatedAt)
+                    .name("nowPlaying");
+            if (row == null) w.nullValue();
+            else track(w, row);
+            w.endObject();
+        });
+    }
+
+    static byte[] topArtists(String user, long updatedAt, String period, String source, List<TopArtistRow> rows) {
+        return json(w -> {
+            w.beginObject()
+                    .name("user").value(user)
+                    .name("updatedAt").value(updatedAt)
+                    .name("period").value(period)
+                    .name("source").value(source);
+            w.name("artists").beginArray();
+            int rank = 1;
+            for (TopArtistRow r : rows) {
+                w.beginObject()
+                        .name("rank").value(rank++)
+                        .name("artist").value(r.getArtist())
+                        .name("playcount").value(r.getPlaycount())
+                        .name("image").value(r.getImageUrl())
+                        .endObject();
+            }
+            w.endArray();
+            w.endObject();
+        });
+    }
+
+    static byte[] error(String message) {
+        return json(w -> w.beginObject().name("error").value(message).endObject());
+    }
+
+    private static void track(JsonWriter w, RecentTrackRow r) throws IOException {
+        w.beginObject()
+                .name("track").value(r.getTrack())
+                .name("artist").value(r.getArtist())
+                .name("album").value(r.getAlbum())
+                .name("nowPlaying").value(r.isNowPlaying());
+        w.name("playedAt");
+        if (!r.hasPlayedAt()) w.nullValue();
+        else w.value(r.getPlayedAtEpochSecond());
+        w.name("image").value(r.getImageUrl());
+        w.endObject();
+    }
+}
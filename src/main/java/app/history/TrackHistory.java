@@ -0,0 +1,138 @@
+package app.history;
+
+import app.models.RecentTrackRow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-capacity recent-track history, newest first.
+ *
+ * Scrobbles sit in a ring buffer with a hash index on (playedAt, track), so membership checks,
+ * inserting at either end and evicting the oldest are all O(1). The now-playing row is not a
+ * scrobble yet and is kept beside the ring; replacing it is a single field write.
+ * Not thread-safe: used from the FX thread only.
+ */
+public class TrackHistory {
+
+    private final RecentTrackRow[] ring;
+    private final Map<Key, RecentTrackRow> index;
+    private int head;   // slot of the newest scrobble
+    private int size;
+
+    private RecentTrackRow nowPlaying;
+
+    public TrackHistory(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.ring = new RecentTrackRow[capacity];
+        this.index = new HashMap<>(Math.min(capacity, 1 << 16) * 2);
+    }
+
+    /**
+     * Dedup key: same second, same track title (case-insensitive, see
+     * {@link RecentTrackRow#dedupTitle}). The same rule as {@link app.store.ScrobbleStore#append},
+     * so the history and the store agree on what is one scrobble.
+     */
+    private record Key(long uts, String track) {
+        static Key of(RecentTrackRow r) {
+            if (r == null || r.isNowPlaying() || !r.hasPlayedAt()) return null;
+            return new Key(r.getPlayedAtEpochSecond(), RecentTrackRow.dedupTitle(r.getTrack()));
+        }
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /** Number of scrobbles (the now-playing row is not counted). */
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == ring.length;
+    }
+
+    public boolean contains(RecentTrackRow row) {
+        Key k = Key.of(row);
+        return k != null && index.containsKey(k);
+    }
+
+    /**
+     * Inserts a scrobble as the newest entry, evicting the oldest if full.
+     * @return false if it was a duplicate or not a scrobble
+     */
+    public boolean addNewest(RecentTrackRow row) {
+        Key k = Key.of(row);
+        if (k == null || index.containsKey(k)) return false;
+
+        if (size == ring.length) {
+            int tail = (head + size - 1) % ring.length;
+            index.remove(Key.of(ring[tail]));
+            ring[tail] = null;
+            size--;
+        }
+        head = (head - 1 + ring.length) % ring.length;
+        ring[head] = row;
+        index.put(k, row);
+        size++;
+        return true;
+    }
+
+    /**
+     * Merges a batch of scrobbles (newest first) on top of the history.
+     * @return the rows that were new, newest first; duplicates are left out
+     */
+    public List<RecentTrackRow> mergeNewest(List<RecentTrackRow> newestFirst) {
+        List<RecentTrackRow> added = new ArrayList<>(newestFirst.size());
+        // oldest first so the newest ends up on top
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            RecentTrackRow row = newestFirst.get(i);
+            if (addNewest(row)) added.add(row);
+        }
+        Collections.reverse(added);
+        return added;
+    }
+
+    /**
+     * Inserts a scrobble as the oldest entry. Ignored when full: older history
+     * than we have room for is not kept.
+     */
+    public boolean addOldest(RecentTrackRow row) {
+        Key k = Key.of(row);
+        if (k == null || size == ring.length || index.containsKey(k)) return false;
+
+        ring[(head + size) % ring.length] = row;
+        index.put(k, row);
+        size++;
+        return true;
+    }
+
+    /** i-th newest scrobble (0 = newest). */
+    public RecentTrackRow get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+        return ring[(head + i) % ring.length];
+    }
+
+    public RecentTrackRow getNowPlaying() {
+        return nowPlaying;
+    }
+
+    /** @return the row it replaced (may be null) */
+    public RecentTrackRow setNowPlaying(RecentTrackRow row) {
+        RecentTrackRow old = nowPlaying;
+        nowPlaying = row;
+        return old;
+    }
+
+    /** Now-playing (if any) followed by the scrobbles, newest first: what the table shows. */
+    public List<RecentTrackRow> snapshot() {
+        List<RecentTrackRow> out = new ArrayList<>(size + 1);
+        if (nowPlaying != null) out.add(nowPlaying);
+        for (int i = 0; i < size; i++) out.add(get(i));
+        return out;
+    }
+}
@@ -0,0 +1,28 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Merging fetched scrobbles into the in-memory history (dedup + eviction). */
+@Name("scrobbledash.HistoryMerge")
+@Label("History Merge")
+@Category({"ScrobbleDash", "Model"})
+@StackTrace(false)
+public class HistoryMergeEvent extends jdk.jfr.Event {
+
+    @Label("Kind")
+    @Description("newest (refresh) or oldest (Load More page)")
+    public String kind;
+
+    @Label("Offered")
+    public int offered;
+
+    @Label("Added")
+    public int added;
+
+    @Label("History Size")
+    public int size;
+}
@@ -0,0 +1,140 @@
+package app.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads a recording made with the scrobbledash.jfc profile and prints where the time went,
+ * per phase (network, parse, merge, table, FX pulse, GC) and per method / table / operation.
+ *
+ *   java -cp app.jar app.jfr.JfrSummary session.jfr
+ */
+public final class JfrSummary {
+
+    /** Durations and byte totals of one row of the report. */
+    private static final class Phase {
+        final List<Long> nanos = new ArrayList<>();
+        long bytes;
+        int failures;
+
+        void add(Duration d) {
+            nanos.add(d.toNanos());
+        }
+
+        long total() {
+            long t = 0;
+            for (long n : nanos) t += n;
+            return t;
+        }
+    }
+
+    private final Map<String, Phase> phases = new TreeMap<>();
+    private Instant first;
+    private Instant last;
+    private int tlsHandshakes;
+
+    private Phase phase(String group, String name) {
+        return phases.computeIfAbsent(group + "  " + name, k -> new Phase());
+    }
+
+    void accept(RecordedEvent e) {
+        Instant start = e.getStartTime();
+        if (first == null || start.isBefore(first)) first = start;
+        if (last == null || e.getEndTime().isAfter(last)) last = e.getEndTime();
+
+        switch (e.getEventType().getName()) {
+            case "scrobbledash.LastFmRequest" -> {
+                Phase p = phase("network", e.getString("method"));
+                p.add(e.getDuration());
+                p.bytes += e.getLong("bytes");
+                int status = e.getInt("status");
+                if (status != 200 && status != 304) p.failures++;
+            }
+            case "scrobbledash.Parse" -> {
+                Phase p = phase("parse", e.getString("method") + (e.getBoolean("streamed") ? "" : " (buffered)"));
+                p.add(e.getDuration());
+                p.bytes += e.getLong("bytes");
+            }
+            case "scrobbledash.HistoryMerge" -> phase("merge", e.getString("kind")).add(e.getDuration());
+            case "scrobbledash.TableUpdate" ->
+                    phase("table", e.getString("table") + "." + e.getString("operation")).add(e.getDuration());
+            case "javafx.PulsePhase" ->
+                    phase("fx", e.hasField("phaseName") ? e.getString("phaseName") : "pulse").add(e.getDuration());
+            case "jdk.GarbageCollection" -> phase("gc", "pauses").add(e.getDuration("sumOfPauses"));
+            case "jdk.TLSHandshake" -> tlsHandshakes++;
+            default -> { }
+        }
+    }
+
+    void print(String source) {
+        Duration span = first == null ? Duration.ZERO : Duration.between(first, last);
+        System.out.printf(Locale.ROOT, "%s: %dm%02ds of events%n%n", source, span.toMinutes(), span.toSecondsPart());
+        if (phases.isEmpty()) {
+            System.out.println("No ScrobbleDash events. Was the recording made with scrobbledash.jfc?");
+            return;
+        }
+
+        System.out.printf(Locale.ROOT, "%-40s %7s %11s %9s %9s %9s %10s%n",
+                "phase", "count", "total ms", "p50 ms", "p99 ms", "max ms", "bytes");
+
+        // Heaviest first within each group; groups in a fixed order
+        List<String> order = List.of("network", "parse", "merge", "table", "fx", "gc");
+        for (String group : order) {
+            List<Map.Entry<String, Phase>> rows = new ArrayList<>();
+            phases.forEach((name, p) -> {
+                if (name.startsWith(group + "  ")) rows.add(Map.entry(name, p));
+            });
+            rows.sort(Comparator.comparingLong((Map.Entry<String, Phase> r) -> r.getValue().total()).reversed());
+
+            long groupTotal = 0;
+            for (Map.Entry<String, Phase> r : rows) {
+                Phase p = r.getValue();
+                long[] sorted = p.nanos.stream().mapToLong(Long::longValue).toArray();
+                Arrays.sort(sorted);
+                groupTotal += p.total();
+                System.out.printf(Locale.ROOT, "%-40s %7d %11.1f %9.2f %9.2f %9.2f %10s%s%n",
+                        r.getKey(), sorted.length, p.total() / 1e6,
+                        quantile(sorted, 0.50) / 1e6, quantile(sorted, 0.99) / 1e6,
+                        sorted[sorted.length - 1] / 1e6,
+                        p.bytes == 0 ? "" : String.valueOf(p.bytes),
+                        p.failures == 0 ? "" : "  (" + p.failures + " failed)");
+            }
+            if (rows.size() > 1) {
+                System.out.printf(Locale.ROOT, "%-40s %7s %11.1f%n", group + "  (all)", "", groupTotal / 1e6);
+            }
+        }
+        if (tlsHandshakes > 0) System.out.println("\nTLS handshakes: " + tlsHandshakes);
+        System.out.println("\nnetwork = send to response headers; streamed parse includes body transfer.");
+    }
+
+    private static long quantile(long[] sorted, double q) {
+        int i = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: JfrSummary <recording.jfr> [more.jfr ...]");
+            System.exit(2);
+        }
+        JfrSummary summary = new JfrSummary();
+        for (String file : args) {
+            try (RecordingFile rf = new RecordingFile(Path.of(file))) {
+                while (rf.hasMoreEvents()) summary.accept(rf.readEvent());
+            }
+        }
+        summary.print(String.join(", ", args));
+    }
+}
@@ -0,0 +1,35 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One HTTP exchange with Last.fm, from send until the response headers are in
+ * (connect, TLS, queueing and server time). For streamed bodies the transfer overlaps
+ * parsing and is counted in {@link ParseEvent}; bytes is the full body either way.
+ */
+@Name("scrobbledash.LastFmRequest")
+@Label("Last.fm Request")
+@Category({"ScrobbleDash", "Network"})
+@StackTrace(false)
+public class LastFmRequestEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    @Description("API method, e.g. user.getrecenttracks")
+    public String method;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Body Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Conditional")
+    @Description("Sent with If-None-Match / If-Modified-Since")
+    public boolean conditional;
+}
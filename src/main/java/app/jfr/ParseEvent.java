@@ -0,0 +1,27 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Turning one response body into rows. */
+@Name("scrobbledash.Parse")
+@Label("Parse Response")
+@Category({"ScrobbleDash", "Parse"})
+@StackTrace(false)
+public class ParseEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("Body Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Streamed")
+    @Description("Parsed while the body was still arriving (includes transfer time)")
+    public boolean streamed;
+}
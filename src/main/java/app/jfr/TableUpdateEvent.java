@@ -0,0 +1,34 @@
+package app.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One mutation of a table's items on the FX thread, including the list-change
+ * listeners it fires. The re-layout itself happens on the next pulse.
+ */
+@Name("scrobbledash.TableUpdate")
+@Label("Table Update")
+@Category({"ScrobbleDash", "UI"})
+@StackTrace(false)
+public class TableUpdateEvent extends jdk.jfr.Event {
+
+    @Label("Table")
+    public String table;
+
+    @Label("Operation")
+    @Description("merge, page, replace or restore")
+    public String operation;
+
+    @Label("Rows Added")
+    public int added;
+
+    @Label("Rows Removed")
+    public int removed;
+
+    @Label("Rows Shown")
+    public int size;
+}
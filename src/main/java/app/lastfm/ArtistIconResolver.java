@@ -0,0 +1,198 @@
+package app.lastfm;
+
+import app.metrics.Counter;
+import app.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves artist icons (artist.getinfo, then the top album cover) and remembers the answer.
+ *
+ * - concurrent lookups for the same artist share one request
+ * - "no image" answers are cached too, for a while, and lookup errors for a shorter while
+ * - memory is bounded (LRU) and the table is saved to disk so a restart doesn't start cold
+ */
+public class ArtistIconResolver {
+
+    private static final Duration HIT_TTL = Duration.ofDays(30);
+    private static final Duration MISS_TTL = Duration.ofHours(12);
+    private static final Duration ERROR_TTL = Duration.ofMinutes(10);
+    private static final long SAVE_EVERY_MS = 30_000;
+
+    private static final Counter HITS = Metrics.global().counter("icons.hits");
+    private static final Counter MISSES = Metrics.global().counter("icons.misses");
+    private static final Counter SHARED = Metrics.global().counter("icons.shared");
+
+    private static final class Entry {
+        final String url;          // "" = known to have no usable image
+        final long expiresAtMillis;
+
+        Entry(String url, long expiresAtMillis) {
+            this.url = url;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    private final LastFmClient client;
+    private final Executor executor;
+    private final Path file;
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private boolean dirty;
+    private long lastSaveAt;
+
+    /** @param file where resolved icons are kept between runs (null = memory only) */
+    public ArtistIconResolver(LastFmClient client, Executor executor, Path file, int maxEntries) {
+        this.client = client;
+        this.executor = executor;
+        this.file = file;
+        this.maxEntries = Math.max(16, maxEntries);
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ArtistIconResolver.this.maxEntries;
+            }
+        };
+        load();
+    }
+
+    /** Icon URL if known, "" otherwise. Never blocks; meant for cell rendering. */
+    public synchronized String cached(String artistName) {
+        Entry e = entries.get(key(artistName));
+        return e == null ? "" : e.url;
+    }
+
+    /** True if we have a still-valid answer (hit or miss) and don't need to ask again. */
+    public synchronized boolean isKnown(String artistName) {
+        Entry e = entries.get(key(artistName));
+        return e != null && e.expiresAtMillis > System.currentTimeMillis();
+    }
+
+    /**
+     * Icon URL for the artist ("" if there is none). Served from cache while valid;
+     * otherwise one lookup runs no matter how many callers ask at the same time.
+     */
+    public CompletableFuture<String> resolve(String artistName) {
+        if (artistName == null || artistName.isBlank()) return CompletableFuture.completedFuture("");
+        String key = key(artistName);
+
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && e.expiresAtMillis > System.currentTimeMillis()) {
+                HITS.increment();
+                return CompletableFuture.completedFuture(e.url);
+            }
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            SHARED.increment();
+            return running;
+        }
+        MISSES.increment();
+
+        // the answer is recorded (and maybe saved to disk) on the executor, not the HTTP thread
+        client.getBestArtistIconUrlAsync(artistName)
+                .handleAsync((url, err) -> record(key, url, err), executor)
+                .whenComplete((url, err) -> {
+                    inFlight.remove(key, mine);
+                    mine.complete(err == null ? url : cached(artistName));
+                });
+        return mine;
+    }
+
+    private String record(String key, String url, Throwable error) {
+        long now = System.currentTimeMillis();
+        if (error == null) {
+            if (url == null) url = "";
+            put(key, new Entry(url, now + (url.isBlank() ? MISS_TTL : HIT_TTL).toMillis()));
+            return url;
+        }
+        // keep a previous good URL if there was one; just don't retry right away
+        String previous;
+        synchronized (this) {
+            Entry e = entries.get(key);
+            previous = e == null ? "" : e.url;
+        }
+        put(key, new Entry(previous, now + ERROR_TTL.toMillis()));
+        return previous;
+    }
+
+    private void put(String key, Entry e) {
+        boolean saveNow;
+        synchronized (this) {
+            entries.put(key, e);
+            dirty = true;
+            saveNow = System.currentTimeMillis() - lastSaveAt >= SAVE_EVERY_MS;
+        }
+        if (saveNow) save();
+    }
+
+    private static String key(String artistName) {
+        return artistName == null ? "" : artistName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // -----------------------------
+    // Persistence
+    // -----------------------------
+
+    /** Writes the table if anything changed since the last save. */
+    public void save() {
+        if (file == null) return;
+        Properties props = new Properties();
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+            lastSaveAt = System.currentTimeMillis();
+            entries.forEach((k, e) -> props.setProperty(k, e.expiresAtMillis + "|" + e.url));
+        }
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "ScrobbleDash artist icons (expiresAtMillis|url)");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Artist icon cache write failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void load() {
+        if (file == null || !Files.isRegularFile(file)) return;
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            System.err.println("Artist icon cache unreadable: " + e.getMessage());
+            return;
+        }
+        for (String k : props.stringPropertyNames()) {
+            String v = props.getProperty(k);
+            int bar = v.indexOf('|');
+            if (bar <= 0) continue;
+            try {
+                long expires = Long.parseLong(v.substring(0, bar));
+                entries.put(k, new Entry(v.substring(bar + 1), expires));
+            } catch (NumberFormatException ignored) { }
+        }
+    }
+}
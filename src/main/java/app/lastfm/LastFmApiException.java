@@ -0,0 +1,32 @@
+package app.lastfm;
+
+import java.io.IOException;
+
+/** Error answer from the Last.fm API ({"error": code, "message": ...}). */
+public class LastFmApiException extends IOException {
+
+    // https://www.last.fm/api/errorcodes
+    public static final int OPERATION_FAILED = 8;
+    public static final int SERVICE_OFFLINE = 11;
+    public static final int TEMPORARILY_UNAVAILABLE = 16;
+    public static final int RATE_LIMIT_EXCEEDED = 29;
+
+    private final int code;
+
+    public LastFmApiException(int code, String message) {
+        super("Last.fm error " + code + (message == null || message.isBlank() ? "" : ": " + message));
+        this.code = code;
+    }
+
+    public int getCode() { return code; }
+
+    /** Codes that mean "try again later" rather than "this request is wrong". */
+    public boolean isTransient() {
+        return isTransientCode(code);
+    }
+
+    public static boolean isTransientCode(int code) {
+        return code == OPERATION_FAILED || code == SERVICE_OFFLINE
+                || code == TEMPORARILY_UNAVAILABLE || code == RATE_LIMIT_EXCEEDED;
+    }
+}
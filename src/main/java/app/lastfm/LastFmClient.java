@@ -1,44 +1,105 @@
 package app.lastfm;
 
+import app.concurrent.Background;
+import app.concurrent.Futures;
+import app.jfr.LastFmRequestEvent;
+import app.jfr.ParseEvent;
+import app.metrics.Metrics;
 import app.models.RecentTrackRow;
 import app.models.TopArtistRow;
-import com.google.gson.Gson;
-import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class LastFmClient {
 
-    private static final String API_BASE = "https://ws.audioscrobbler.com/2.0/";
+    public static final URI DEFAULT_API_BASE = URI.create("https://ws.audioscrobbler.com/2.0/");
 
     private static final String NO_IMAGE_HASH = "2a96cbd8b46e442fc41c2b86b821562f";
 
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BACKOFF_BASE_MS = 250;
+    private static final long BACKOFF_MAX_MS = 8_000;
+
+    private static final Metrics METRICS = Metrics.global();
+
     private final HttpClient http;
-    private final Gson gson;
+    private final String apiBase;
+    private final ResponseCache cache;
+    private final RequestGovernor governor;
+    private final RequestGovernor.Priority priority;
+    // body parsing (it reads the stream, so it blocks), cache reads and delayed retries; the owner's
+    private final Background background;
 
     private final String apiKey;
     private final String username;
 
     public LastFmClient(String apiKey, String username) {
-        this.http = HttpClient.newHttpClient();
-        this.gson = new Gson();
+        this(apiKey, username, new ResponseCache(null));
+    }
+
+    /** A client with a {@link Background} of its own, which nothing shuts down; for tools and benchmarks. */
+    public LastFmClient(String apiKey, String username, ResponseCache cache) {
+        this(apiKey, username, cache, DEFAULT_API_BASE, HttpClient.newHttpClient(), new Background());
+    }
+
+    /**
+     * @param apiBase    where the API lives (e.g. a local stand-in server)
+     * @param http       the transport; shared by every view of this client
+     * @param background where responses are parsed and retries wait; shutting it down cancels
+     *                   every call still pending, on this client and all its views
+     */
+    public LastFmClient(String apiKey, String username, ResponseCache cache, URI apiBase, HttpClient http,
+                        Background background) {
+        this.http = Objects.requireNonNull(http, "http");
+        this.background = Objects.requireNonNull(background, "background");
+        this.apiBase = Objects.requireNonNull(apiBase, "apiBase").toString();
+        this.cache = Objects.requireNonNull(cache, "cache");
         this.apiKey = requireNonBlank(apiKey, "api_key");
         this.username = requireNonBlank(username, "username");
+        this.governor = RequestGovernor.forApiKey(this.apiKey);
+        this.priority = RequestGovernor.Priority.FOREGROUND;
+    }
+
+    /** Same connection, cache and governor; another user and/or priority. */
+    private LastFmClient(LastFmClient base, String username, RequestGovernor.Priority priority) {
+        this.http = base.http;
+        this.apiBase = base.apiBase;
+        this.cache = base.cache;
+        this.apiKey = base.apiKey;
+        this.username = username;
+        this.governor = base.governor;
+        this.priority = priority;
+        this.background = base.background;
     }
 
-    public static LastFmClient fromClasspathProperties() throws IOException {
+    /** The client lastfm.properties describes, doing its work on the owner's background. */
+    public static LastFmClient fromClasspathProperties(Background background) throws IOException {
         Properties props = new Properties();
         try (InputStream in = LastFmClient.class.getResourceAsStream("/lastfm.properties")) {
             if (in == null) throw new IOException("Missing /lastfm.properties in src/main/resources");
@@ -47,7 +108,41 @@ public class LastFmClient {
 
         String apiKey = props.getProperty("api_key");
         String username = props.getProperty("username");
-        return new LastFmClient(apiKey, username);
+
+        // Optional: keep cached responses across restarts
+        String cacheDir = props.getProperty("cache_dir", "").trim();
+        ResponseCache cache = new ResponseCache(cacheDir.isEmpty() ? null : Path.of(cacheDir));
+
+        // Optional: talk to something else than Last.fm (e.g. app.lastfm.fake.FakeLastFmServer)
+        String apiBase = props.getProperty("api_base", "").trim();
+        return new LastFmClient(apiKey, username, cache,
+                apiBase.isEmpty() ? DEFAULT_API_BASE : URI.create(apiBase), HttpClient.newHttpClient(), background);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    public RequestGovernor getGovernor() {
+        return governor;
+    }
+
+    /** A view of this client whose requests go through the rate limit at the given priority. */
+    public LastFmClient withPriority(RequestGovernor.Priority priority) {
+        return priority == this.priority ? this : new LastFmClient(this, username, priority);
+    }
+
+    /**
+     * A view of this client for another account: same connection, cache, API key and rate
+     * limit, so any number of users cost one HttpClient and one shared request budget.
+     */
+    public LastFmClient forUser(String username) {
+        requireNonBlank(username, "username");
+        return username.equals(this.username) ? this : new LastFmClient(this, username, priority);
     }
 
     // -----------------------------
@@ -69,116 +164,135 @@ public class LastFmClient {
         }
     }
 
-    // -----------------------------
-    // Recent Tracks (paged)
-    // -----------------------------
-    public PagedResult<RecentTrackRow> getRecentTracks(int limit, int page) throws IOException, InterruptedException {
-        if (limit <= 0) limit = 50;
-        if (page <= 0) page = 1;
+    /** Non-200 answer from Last.fm; keeps the status so callers can decide what to do with it. */
+    public static class HttpStatusException extends IOException {
+        private static final Pattern ERROR_CODE = Pattern.compile("\"error\"\\s*:\\s*(\\d+)");
 
-        URI uri = buildRecentTracksUri(limit, page);
+        private final int statusCode;
+        private final int errorCode;
+        private final long retryAfterMillis;
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(uri)
-                .GET()
-                .header("Accept", "application/json")
-                .build();
+        public HttpStatusException(int statusCode, String body) {
+            this(statusCode, body, 0);
+        }
+
+        public HttpStatusException(int statusCode, String body, long retryAfterMillis) {
+            super("HTTP " + statusCode + " from Last.fm: " + truncate(body, 300));
+            this.statusCode = statusCode;
+            this.retryAfterMillis = retryAfterMillis;
 
-        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
-        if (res.statusCode() != 200) {
-            throw new IOException("HTTP " + res.statusCode() + " from Last.fm: " + truncate(res.body(), 300));
+            Matcher m = ERROR_CODE.matcher(body == null ? "" : body);
+            this.errorCode = m.find() ? Integer.parseInt(m.group(1)) : 0;
         }
 
-        RecentTracksResponse parsed = gson.fromJson(res.body(), RecentTracksResponse.class);
-        if (parsed == null || parsed.recenttracks == null || parsed.recenttracks.track == null) {
-            return new PagedResult<>(List.of(), page, 1, limit, 0);
+        public int getStatusCode() { return statusCode; }
+
+        /** Last.fm error code from the body ({"error": n}), 0 if there was none. */
+        public int getErrorCode() { return errorCode; }
+
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+    }
+
+    /** A 200 whose body isn't the JSON we expect; asking again won't change it. */
+    public static class MalformedResponseException extends IOException {
+        public MalformedResponseException(String method, Throwable cause) {
+            super("Unreadable " + method + " response from Last.fm: " + cause.getMessage(), cause);
         }
+    }
 
-        int totalPages = safeInt(parsed.recenttracks.attr != null ? parsed.recenttracks.attr.totalPages : null, 1);
-        int perPage = safeInt(parsed.recenttracks.attr != null ? parsed.recenttracks.attr.perPage : null, limit);
-        int total = safeInt(parsed.recenttracks.attr != null ? parsed.recenttracks.attr.total : null, 0);
-        int currentPage = safeInt(parsed.recenttracks.attr != null ? parsed.recenttracks.attr.page : null, page);
+    // -----------------------------
+    // Recent Tracks (paged)
+    // -----------------------------
+    public PagedResult<RecentTrackRow> getRecentTracks(int limit, int page) throws IOException, InterruptedException {
+        return Futures.await(getRecentTracksAsync(limit, page, 0, 0));
+    }
 
-        List<RecentTrackRow> rows = new ArrayList<>();
-        for (Track t : parsed.recenttracks.track) {
-            String trackName = safe(t.name);
-            String artist = pickArtistName(t.artist);
-            String album = t.album != null ? safe(t.album.text) : "";
+    /**
+     * Recent tracks restricted to a time window.
+     * @param fromUts only scrobbles after this epoch second (0 = no lower bound)
+     * @param toUts only scrobbles before this epoch second (0 = no upper bound)
+     */
+    public PagedResult<RecentTrackRow> getRecentTracks(int limit, int page, long fromUts, long toUts)
+            throws IOException, InterruptedException {
+        return Futures.await(getRecentTracksAsync(limit, page, fromUts, toUts));
+    }
 
-            boolean nowPlaying = t.attr != null && "true".equalsIgnoreCase(t.attr.nowplaying);
+    public CompletableFuture<PagedResult<RecentTrackRow>> getRecentTracksAsync(int limit, int page) {
+        return getRecentTracksAsync(limit, page, 0, 0);
+    }
 
-            Instant playedAt = null;
-            if (!nowPlaying && t.date != null && t.date.uts != null && !t.date.uts.isBlank()) {
-                playedAt = parseUts(t.date.uts);
-            }
+    public CompletableFuture<PagedResult<RecentTrackRow>> getRecentTracksAsync(int limit, int page, long fromUts, long toUts) {
+        if (limit <= 0) limit = 50;
+        if (page <= 0) page = 1;
 
-            // Album/track art (reliable)
-            String imageUrl = pickBestImageUrl(t.image);
+        URI uri = buildRecentTracksUri(limit, page, fromUts, toUts);
+        final int p = page, l = limit;
+        return fetchJsonAsync(uri, in -> {
+            // a list per attempt, so a retried request can't leave half a page behind
+            List<RecentTrackRow> rows = new ArrayList<>(l + 1);
+            LastFmStreamParser.PageInfo info = LastFmStreamParser.readRecentTracks(in, p, l, rows::add);
+            return new PagedResult<>(rows, info.page, info.totalPages, info.perPage, info.total);
+        });
+    }
 
-            // placeholder; controller renders relative time
-            String when = nowPlaying ? "Now Playing" : "—";
+    /**
+     * Streaming variant: every row goes to the sink as soon as it is parsed.
+     * The returned result only carries the paging numbers; its item list is empty.
+     */
+    public PagedResult<RecentTrackRow> streamRecentTracks(int limit, int page, long fromUts, long toUts,
+                                                          Consumer<RecentTrackRow> sink)
+            throws IOException, InterruptedException {
+        return Futures.await(streamRecentTracksAsync(limit, page, fromUts, toUts, sink));
+    }
 
-            rows.add(new RecentTrackRow(trackName, artist, album, when, nowPlaying, playedAt, imageUrl));
-        }
+    /** As {@link #streamRecentTracks}; the sink is called on a background thread. */
+    public CompletableFuture<PagedResult<RecentTrackRow>> streamRecentTracksAsync(int limit, int page, long fromUts, long toUts,
+                                                                                  Consumer<RecentTrackRow> sink) {
+        if (limit <= 0) limit = 50;
+        if (page <= 0) page = 1;
 
-        return new PagedResult<>(rows, currentPage, totalPages, perPage, total);
+        URI uri = buildRecentTracksUri(limit, page, fromUts, toUts);
+        final int p = page, l = limit;
+        return fetchJsonAsync(uri, in -> {
+            LastFmStreamParser.PageInfo info = LastFmStreamParser.readRecentTracks(in, p, l, sink);
+            return new PagedResult<>(List.of(), info.page, info.totalPages, info.perPage, info.total);
+        });
     }
 
-    private URI buildRecentTracksUri(int limit, int page) {
+    URI buildRecentTracksUri(int limit, int page, long fromUts, long toUts) {
         String q = "method=" + enc("user.getrecenttracks")
                 + "&user=" + enc(username)
                 + "&api_key=" + enc(apiKey)
                 + "&limit=" + enc(String.valueOf(limit))
                 + "&page=" + enc(String.valueOf(page))
+                + (fromUts > 0 ? "&from=" + fromUts : "")
+                + (toUts > 0 ? "&to=" + toUts : "")
                 + "&extended=1"
                 + "&format=json";
 
-        return URI.create(API_BASE + "?" + q);
+        return URI.create(apiBase + "?" + q);
     }
 
     // -----------------------------
     // Top Artists (paged)
     // -----------------------------
     public PagedResult<TopArtistRow> getTopArtists(String period, int limit, int page) throws IOException, InterruptedException {
+        return Futures.await(getTopArtistsAsync(period, limit, page));
+    }
+
+    public CompletableFuture<PagedResult<TopArtistRow>> getTopArtistsAsync(String period, int limit, int page) {
         if (limit <= 0) limit = 50;
         if (page <= 0) page = 1;
         if (period == null || period.isBlank()) period = "7day";
 
         URI uri = buildTopArtistsUri(period, limit, page);
 
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(uri)
-                .GET()
-                .header("Accept", "application/json")
-                .build();
-
-        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
-        if (res.statusCode() != 200) {
-            throw new IOException("HTTP " + res.statusCode() + " from Last.fm: " + truncate(res.body(), 300));
-        }
-
-        TopArtistsResponse parsed = gson.fromJson(res.body(), TopArtistsResponse.class);
-        if (parsed == null || parsed.topartists == null || parsed.topartists.artist == null) {
-            return new PagedResult<>(List.of(), page, 1, limit, 0);
-        }
-
-        int totalPages = safeInt(parsed.topartists.attr != null ? parsed.topartists.attr.totalPages : null, 1);
-        int perPage = safeInt(parsed.topartists.attr != null ? parsed.topartists.attr.perPage : null, limit);
-        int total = safeInt(parsed.topartists.attr != null ? parsed.topartists.attr.total : null, 0);
-        int currentPage = safeInt(parsed.topartists.attr != null ? parsed.topartists.attr.page : null, page);
-
-        List<TopArtistRow> rows = new ArrayList<>();
-        for (TopArtist a : parsed.topartists.artist) {
-            String name = safe(a.name);
-            int playcount = safeInt(a.playcount, 0);
-
-            // Often blank or placeholder for artists
-            String imageUrl = pickBestImageUrl(a.image);
-
-            rows.add(new TopArtistRow(name, playcount, imageUrl));
-        }
-
-        return new PagedResult<>(rows, currentPage, totalPages, perPage, total);
+        final int p = page, l = limit;
+        return fetchCachedAsync(uri, in -> {
+            List<TopArtistRow> rows = new ArrayList<>(l);
+            LastFmStreamParser.PageInfo info = LastFmStreamParser.readTopArtists(in, p, l, rows::add);
+            return new PagedResult<>(List.copyOf(rows), info.page, info.totalPages, info.perPage, info.total);
+        });
     }
 
     private URI buildTopArtistsUri(String period, int limit, int page) {
@@ -190,7 +304,7 @@ public class LastFmClient {
                 + "&page=" + enc(String.valueOf(page))
                 + "&format=json";
 
-        return URI.create(API_BASE + "?" + q);
+        return URI.create(apiBase + "?" + q);
     }
 
     // -----------------------------
@@ -202,23 +316,14 @@ public class LastFmClient {
      * Can often be empty or "no image" placeholder.
      */
     public String getArtistImageUrl(String artistName) throws IOException, InterruptedException {
-        if (artistName == null || artistName.isBlank()) return "";
-
-        URI uri = buildArtistInfoUri(artistName);
-
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(uri)
-                .GET()
-                .header("Accept", "application/json")
-                .build();
-
-        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
-        if (res.statusCode() != 200) return "";
+        return Futures.await(getArtistImageUrlAsync(artistName));
+    }
 
-        ArtistInfoResponse parsed = gson.fromJson(res.body(), ArtistInfoResponse.class);
-        if (parsed == null || parsed.artist == null) return "";
+    public CompletableFuture<String> getArtistImageUrlAsync(String artistName) {
+        if (artistName == null || artistName.isBlank()) return CompletableFuture.completedFuture("");
 
-        return pickBestImageUrl(parsed.artist.image);
+        URI uri = buildArtistInfoUri(artistName);
+        return noImageIfRejected(fetchCachedAsync(uri, LastFmStreamParser::readArtistInfoImage));
     }
 
     private URI buildArtistInfoUri(String artistName) {
@@ -228,7 +333,7 @@ public class LastFmClient {
                 + "&autocorrect=1"
                 + "&format=json";
 
-        return URI.create(API_BASE + "?" + q);
+        return URI.create(apiBase + "?" + q);
     }
 
     /**
@@ -236,26 +341,14 @@ public class LastFmClient {
      * This is usually MUCH more available than artist images.
      */
     public String getArtistTopAlbumImageUrl(String artistName) throws IOException, InterruptedException {
-        if (artistName == null || artistName.isBlank()) return "";
-
-        URI uri = buildArtistTopAlbumsUri(artistName);
-
-        HttpRequest req = HttpRequest.newBuilder()
-                .uri(uri)
-                .GET()
-                .header("Accept", "application/json")
-                .build();
+        return Futures.await(getArtistTopAlbumImageUrlAsync(artistName));
+    }
 
-        HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
-        if (res.statusCode() != 200) return "";
+    public CompletableFuture<String> getArtistTopAlbumImageUrlAsync(String artistName) {
+        if (artistName == null || artistName.isBlank()) return CompletableFuture.completedFuture("");
 
-        ArtistTopAlbumsResponse parsed = gson.fromJson(res.body(), ArtistTopAlbumsResponse.class);
-        if (parsed == null || parsed.topalbums == null || parsed.topalbums.album == null || parsed.topalbums.album.isEmpty()) {
-            return "";
-        }
-
-        TopAlbum first = parsed.topalbums.album.get(0);
-        return pickBestImageUrl(first.image);
+        URI uri = buildArtistTopAlbumsUri(artistName);
+        return noImageIfRejected(fetchCachedAsync(uri, LastFmStreamParser::readFirstTopAlbumImage));
     }
 
     private URI buildArtistTopAlbumsUri(String artistName) {
@@ -266,7 +359,7 @@ public class LastFmClient {
                 + "&autocorrect=1"
                 + "&format=json";
 
-        return URI.create(API_BASE + "?" + q);
+        return URI.create(apiBase + "?" + q);
     }
 
     /**
@@ -275,11 +368,15 @@ public class LastFmClient {
      * - if empty/placeholder -> try top album cover
      */
     public String getBestArtistIconUrl(String artistName) throws IOException, InterruptedException {
-        String url = getArtistImageUrl(artistName);
-        if (isBlankOrNoImage(url)) {
-            url = getArtistTopAlbumImageUrl(artistName);
-        }
-        return isBlankOrNoImage(url) ? "" : url;
+        return Futures.await(getBestArtistIconUrlAsync(artistName));
+    }
+
+    public CompletableFuture<String> getBestArtistIconUrlAsync(String artistName) {
+        return getArtistImageUrlAsync(artistName)
+                .thenCompose(url -> isBlankOrNoImage(url)
+                        ? getArtistTopAlbumImageUrlAsync(artistName)
+                        : CompletableFuture.completedFuture(url))
+                .thenApply(url -> isBlankOrNoImage(url) ? "" : url);
     }
 
     private static boolean isBlankOrNoImage(String url) {
@@ -288,174 +385,415 @@ public class LastFmClient {
     }
 
     // -----------------------------
-    // Helpers
+    // Track length (track.getinfo)
     // -----------------------------
-    private static String pickArtistName(Artist a) {
-        if (a == null) return "";
-        if (a.name != null && !a.name.isBlank()) return a.name;
-        if (a.text != null && !a.text.isBlank()) return a.text;
-        return "";
-    }
-
-    private static Instant parseUts(String utsSeconds) {
-        try {
-            long secs = Long.parseLong(utsSeconds);
-            return Instant.ofEpochSecond(secs);
-        } catch (NumberFormatException e) {
-            return null;
-        }
-    }
-
-    private static String pickBestImageUrl(List<ImageInfo> images) {
-        if (images == null || images.isEmpty()) return "";
-        for (int i = images.size() - 1; i >= 0; i--) {
-            ImageInfo it = images.get(i);
-            if (it != null && it.text != null && !it.text.isBlank()) return it.text;
-        }
-        return "";
-    }
-
-    private static int safeInt(String s, int def) {
-        if (s == null) return def;
-        try { return Integer.parseInt(s.trim()); }
-        catch (Exception e) { return def; }
-    }
 
-    private static int safeInt(Object s, int def) {
-        if (s == null) return def;
-        try { return Integer.parseInt(String.valueOf(s).trim()); }
-        catch (Exception e) { return def; }
-    }
-
-    private static String enc(String s) {
-        return URLEncoder.encode(Objects.toString(s, ""), StandardCharsets.UTF_8);
+    /** Length of a track as Last.fm knows it; zero if unknown (it often is for obscure tracks). */
+    public Duration getTrackDuration(String artistName, String trackName) throws IOException, InterruptedException {
+        return Futures.await(getTrackDurationAsync(artistName, trackName));
     }
 
-    private static String requireNonBlank(String v, String name) {
-        if (v == null || v.trim().isEmpty()) {
-            throw new IllegalArgumentException("Missing/blank property: " + name);
+    public CompletableFuture<Duration> getTrackDurationAsync(String artistName, String trackName) {
+        if (artistName == null || artistName.isBlank() || trackName == null || trackName.isBlank()) {
+            return CompletableFuture.completedFuture(Duration.ZERO);
         }
-        return v.trim();
-    }
+        URI uri = buildTrackInfoUri(artistName, trackName);
+        return fetchCachedAsync(uri, LastFmStreamParser::readTrackDurationMillis)
+                .thenApply(Duration::ofMillis)
+                .exceptionallyCompose(err -> {
+                    Throwable cause = Futures.unwrap(err);
+                    if ((cause instanceof HttpStatusException || cause instanceof LastFmApiException) && !isTransient((IOException) cause)) {
+                        return CompletableFuture.completedFuture(Duration.ZERO);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
+
+    private URI buildTrackInfoUri(String artistName, String trackName) {
+        String q = "method=" + enc("track.getinfo")
+                + "&artist=" + enc(artistName)
+                + "&track=" + enc(trackName)
+                + "&api_key=" + enc(apiKey)
+                + "&autocorrect=1"
+                + "&format=json";
 
-    private static String safe(String v) {
-        return v == null ? "" : v;
+        return URI.create(apiBase + "?" + q);
     }
 
-    private static String truncate(String s, int max) {
-        if (s == null) return "";
-        if (s.length() <= max) return s;
-        return s.substring(0, max) + "...";
+    /** Unknown artist etc. means "no image"; outages still propagate. */
+    private static CompletableFuture<String> noImageIfRejected(CompletableFuture<String> lookup) {
+        return lookup.exceptionallyCompose(err -> {
+            Throwable cause = Futures.unwrap(err);
+            if ((cause instanceof HttpStatusException || cause instanceof LastFmApiException) && !isTransient((IOException) cause)) {
+                return CompletableFuture.completedFuture("");
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
     }
 
     // -----------------------------
-    // Gson DTOs
+    // Transport
     // -----------------------------
-    private static class RecentTracksResponse {
-        RecentTracks recenttracks;
+    private interface BodyParser<T> {
+        T parse(JsonReader in) throws IOException;
     }
 
-    private static class RecentTracks {
-        List<Track> track;
-
-        @SerializedName("@attr")
-        PageAttr attr;
+    /**
+     * GETs the URI and hands the body stream to the parser as it arrives;
+     * the response is never buffered as a whole String. Reading the stream blocks,
+     * so parsing runs on the background, not on the HttpClient's own threads.
+     */
+    private <T> CompletableFuture<T> fetchJsonAsync(URI uri, BodyParser<T> parser) {
+        String method = ResponseCache.methodOf(uri);
+        return governedAsync(() -> {
+            LastFmRequestEvent event = new LastFmRequestEvent();
+            event.method = method;
+            event.begin();
+            long sent = System.nanoTime();
+            CompletableFuture<HttpResponse<InputStream>> exchange =
+                    http.sendAsync(newRequest(uri).build(), HttpResponse.BodyHandlers.ofInputStream());
+            return abortable(exchange, exchange
+                    .thenApplyAsync(res -> {
+                        // headers are in; from here on it's body transfer + parse
+                        long headers = System.nanoTime();
+                        event.end();
+                        event.status = res.statusCode();
+                        METRICS.timer("lastfm." + method).record(headers - sent);
+                        try (CountingInputStream body = new CountingInputStream(res.body())) {
+                            try {
+                                if (res.statusCode() != 200) {
+                                    METRICS.counter("lastfm." + method + ".errors").increment();
+                                    byte[] head = body.readNBytes(300);
+                                    throw new HttpStatusException(res.statusCode(), new String(head, StandardCharsets.UTF_8), retryAfter(res));
+                                }
+                                ParseEvent parse = new ParseEvent();
+                                parse.begin();
+                                JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+                                T value = parseBody(method, parser, reader);
+                                METRICS.timer("parse." + method).recordSince(headers);
+                                if (parse.shouldCommit()) {
+                                    parse.method = method;
+                                    parse.bytes = body.count;
+                                    parse.streamed = true;
+                                    parse.commit();
+                                }
+                                return value;
+                            } finally {
+                                METRICS.counter("lastfm." + method + ".bytes").add(body.count);
+                                event.bytes = body.count;
+                                event.commit();
+                            }
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, background));
+        });
     }
 
-    private static class Track {
-        String name;
-        Artist artist;
-        Album album;
-        DateInfo date;
+    /**
+     * Like {@link #fetchJsonAsync} but goes through the response cache when the method has a TTL.
+     * The parser must be side-effect free: on a fresh hit its previous result is handed back as-is.
+     * An entry that is only on disk is read on the background, not on the caller's thread.
+     */
+    private <T> CompletableFuture<T> fetchCachedAsync(URI uri, BodyParser<T> parser) {
+        if (!cache.isCacheable(uri)) return fetchJsonAsync(uri, parser);
+
+        return cache.lookup(uri, background).thenCompose(entry -> {
+            if (entry != null && entry.isFresh(System.currentTimeMillis())) {
+                try {
+                    return CompletableFuture.completedFuture(decode(ResponseCache.methodOf(uri), entry, parser));
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+            return fetchOrRevalidateAsync(uri, entry, parser);
+        });
+    }
+
+    /** The network half of {@link #fetchCachedAsync}: a conditional GET if the stale entry allows one. */
+    private <T> CompletableFuture<T> fetchOrRevalidateAsync(URI uri, ResponseCache.Entry entry, BodyParser<T> parser) {
+        return governedAsync(() -> {
+            HttpRequest.Builder rb = newRequest(uri);
+            boolean conditional = entry != null && entry.canRevalidate();
+            if (conditional) {
+                if (!entry.etag.isEmpty()) rb.header("If-None-Match", entry.etag);
+                if (!entry.lastModified.isEmpty()) rb.header("If-Modified-Since", entry.lastModified);
+            }
 
-        List<ImageInfo> image;
+            String method = ResponseCache.methodOf(uri);
+            LastFmRequestEvent event = new LastFmRequestEvent();
+            event.begin();
+            long sent = System.nanoTime();
+            CompletableFuture<HttpResponse<byte[]>> exchange = http.sendAsync(rb.build(), HttpResponse.BodyHandlers.ofByteArray());
+            return abortable(exchange, exchange.thenApplyAsync(res -> {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.method = method;
+                    event.status = res.statusCode();
+                    event.bytes = res.body().length;
+                    event.conditional = conditional;
+                    event.commit();
+                }
+                METRICS.timer("lastfm." + method).recordSince(sent);
+                METRICS.counter("lastfm." + method + ".bytes").add(res.body().length);
+                try {
+                    if (conditional && res.statusCode() == 304) {
+                        cache.markRevalidated(uri, entry);
+                        return decode(method, entry, parser);
+                    }
+                    if (res.statusCode() != 200) {
+                        METRICS.counter("lastfm." + method + ".errors").increment();
+                        throw new HttpStatusException(res.statusCode(), new String(res.body(), StandardCharsets.UTF_8), retryAfter(res));
+                    }
+
+                    // parse before storing: an error body must not become a cached answer
+                    T value = parse(method, res.body(), parser);
+                    ResponseCache.Entry fresh = cache.store(uri, res.body(),
+                            res.headers().firstValue("ETag").orElse(""),
+                            res.headers().firstValue("Last-Modified").orElse(""));
+                    fresh.decoded = value;
+                    return value;
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, background));
+        });
+    }
+
+    /** Cancelling the parsed result aborts the exchange it comes from. */
+    private static <T> CompletableFuture<T> abortable(CompletableFuture<?> exchange, CompletableFuture<T> parsed) {
+        Futures.forwardCancel(parsed, exchange);
+        return parsed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T decode(String method, ResponseCache.Entry entry, BodyParser<T> parser) throws IOException {
+        Object memo = entry.decoded;
+        if (memo != null) return (T) memo;
+
+        T value = parse(method, entry.body, parser);
+        entry.decoded = value;
+        return value;
+    }
+
+    private static <T> T parse(String method, byte[] body, BodyParser<T> parser) throws IOException {
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        T value = parseBody(method, parser, reader);
+        METRICS.timer("parse.cached").recordSince(start);
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.bytes = body.length;
+            event.commit();
+        }
+        return value;
+    }
 
-        @SerializedName("@attr")
-        NowAttr attr;
+    /**
+     * Syntax errors and unexpected structure become {@link MalformedResponseException};
+     * an IOException from the stream itself (the connection dropped) stays as it is.
+     */
+    private static <T> T parseBody(String method, BodyParser<T> parser, JsonReader reader) throws IOException {
+        try {
+            return parser.parse(reader);
+        } catch (MalformedJsonException | IllegalStateException e) {
+            throw new MalformedResponseException(method, e);
+        }
     }
 
-    private static class Artist {
-        @SerializedName("#text")
-        String text;
+    /** Counts what the parser actually pulled off the wire. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
 
-        String name;
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
 
-        @SuppressWarnings("unused")
-        String mbid;
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
 
-        @SuppressWarnings("unused")
-        String url;
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
     }
 
-    private static class Album {
-        @SerializedName("#text")
-        String text;
+    private static HttpRequest.Builder newRequest(URI uri) {
+        return HttpRequest.newBuilder()
+                .uri(uri)
+                .GET()
+                .header("Accept", "application/json");
     }
 
-    private static class DateInfo {
-        String uts;
-
-        @SerializedName("#text")
-        @SuppressWarnings("unused")
-        String text;
+    /**
+     * Sets up the connection (DNS, TCP, TLS) before the first real request needs it: a HEAD
+     * of the API root. That is no API method, so it bypasses the rate limit and the cache.
+     * Completes, never exceptionally, once the connection is pooled or couldn't be made
+     * (the real request will tell why).
+     */
+    public CompletableFuture<Void> warmUpAsync(Duration timeout) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(apiBase))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(timeout)
+                .build();
+        long start = System.nanoTime();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((res, err) -> {
+                    METRICS.timer("lastfm.warmup").recordSince(start);
+                    return null;
+                });
     }
 
-    private static class NowAttr {
-        String nowplaying;
-    }
+    // -----------------------------
+    // Rate limit, retry, circuit breaker
+    // -----------------------------
 
-    private static class PageAttr {
-        String page;
-        String perPage;
-        String totalPages;
-        String total;
+    /**
+     * Runs one request under the governor without holding a thread while it waits: the
+     * circuit breaker is asked first (an open one fails fast, spending no rate-limit token),
+     * then a token of this client's priority is taken (re-checked after the suggested delay).
+     * Transient failures are retried with jittered exponential backoff. Only answers from
+     * Last.fm (an HTTP status, an API error) and transport failures count toward the breaker;
+     * a body that doesn't parse or an error in our own code fails the call without counting.
+     * A retried streaming call may hand the same rows to its sink twice (only if the failure
+     * came mid-body).
+     */
+    private <T> CompletableFuture<T> governedAsync(Supplier<CompletableFuture<T>> call) {
+        // cancelled if the owner's background shuts down first; nothing is retried after that
+        CompletableFuture<T> result = background.track(new CompletableFuture<>());
+        attempt(call, 1, false, false, result);
+        return result;
     }
 
-    private static class ImageInfo {
-        @SerializedName("#text")
-        String text;
+    /**
+     * @param admitted the breaker already let this attempt through; it's only waiting for a token
+     * @param trial    this attempt is the breaker's half-open trial, and only it may settle it
+     */
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, int attempt, boolean admitted, boolean trial,
+                             CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // cancelled while waiting
+            if (trial) governor.releaseTrial();
+            return;
+        }
 
-        @SuppressWarnings("unused")
-        String size;
-    }
+        boolean isTrial = trial;
+        if (!admitted) {
+            try {
+                isTrial = governor.checkCircuit();
+            } catch (RequestGovernor.CircuitOpenException e) {
+                METRICS.counter("lastfm.circuit_open").increment();
+                result.completeExceptionally(e);
+                return;
+            }
+        }
+        long wait = governor.tryAcquire(priority);
+        if (wait > 0) {
+            governor.recordWait(wait);
+            boolean waitingTrial = isTrial;
+            later(wait, TimeUnit.NANOSECONDS, () -> attempt(call, attempt, true, waitingTrial, result));
+            return;
+        }
 
-    // Top artists DTOs
-    private static class TopArtistsResponse {
-        TopArtists topartists;
+        CompletableFuture<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        // cancelling the call (or shutting down the background) aborts the request in flight
+        Futures.forwardCancel(result, sent);
+        boolean sentTrial = isTrial;
+        sent.whenComplete((value, err) -> {
+            if (err == null) {
+                governor.recordSuccess(sentTrial);
+                result.complete(value);
+                return;
+            }
+            Throwable cause = Futures.unwrap(err);
+            if (!(cause instanceof IOException e) || cause instanceof MalformedResponseException) {
+                // no verdict on Last.fm's health: our bug, or a body we couldn't read
+                if (sentTrial) governor.releaseTrial();
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!isTransient(e)) {
+                // the API answered; it just didn't like this request
+                governor.recordSuccess(sentTrial);
+                result.completeExceptionally(e);
+                return;
+            }
+            governor.recordFailure(sentTrial);
+            METRICS.counter("lastfm.transient_failures").increment();
+            if (attempt >= MAX_ATTEMPTS || governor.isOpen()) {
+                result.completeExceptionally(e);
+                return;
+            }
+            later(backoffMillis(attempt, e), TimeUnit.MILLISECONDS, () -> attempt(call, attempt + 1, false, false, result));
+        });
     }
 
-    private static class TopArtists {
-        List<TopArtist> artist;
-
-        @SerializedName("@attr")
-        PageAttr attr;
+    /** Runs r on the background after the delay; a shut-down background cancels the call instead. */
+    private void later(long delay, TimeUnit unit, Runnable r) {
+        CompletableFuture.delayedExecutor(delay, unit, background).execute(r);
     }
 
-    private static class TopArtist {
-        String name;
-        String playcount;
-        List<ImageInfo> image;
+    /** 5xx, 429, Last.fm's "try later" codes, and transport errors (timeouts, resets). */
+    public static boolean isTransient(IOException e) {
+        if (e instanceof RequestGovernor.CircuitOpenException || e instanceof MalformedResponseException) return false;
+        if (e instanceof HttpStatusException h) {
+            int code = h.getStatusCode();
+            return code == 429 || code >= 500 || LastFmApiException.isTransientCode(h.getErrorCode());
+        }
+        if (e instanceof LastFmApiException a) return a.isTransient();
+        return true;
     }
 
-    // Artist info DTOs
-    private static class ArtistInfoResponse {
-        ArtistInfo artist;
+    /** Full jitter: random in [0, base * 2^attempt), but never less than a server's Retry-After. */
+    private static long backoffMillis(int attempt, IOException e) {
+        long cap = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << attempt);
+        long jittered = ThreadLocalRandom.current().nextLong(BACKOFF_BASE_MS, cap + 1);
+        if (e instanceof HttpStatusException h && h.getRetryAfterMillis() > 0) {
+            return Math.max(jittered, Math.min(BACKOFF_MAX_MS, h.getRetryAfterMillis()));
+        }
+        return jittered;
     }
 
-    private static class ArtistInfo {
-        List<ImageInfo> image;
+    private static long retryAfter(HttpResponse<?> res) {
+        String v = res.headers().firstValue("Retry-After").orElse("").trim();
+        try {
+            return v.isEmpty() ? 0 : Long.parseLong(v) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 
-    // Artist top albums DTOs
-    private static class ArtistTopAlbumsResponse {
-        TopAlbums topalbums;
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+    private static String enc(String s) {
+        return URLEncoder.encode(Objects.toString(s, ""), StandardCharsets.UTF_8);
     }
 
-    private static class TopAlbums {
-        List<TopAlbum> album;
+    private static String requireNonBlank(String v, String name) {
+        if (v == null || v.trim().isEmpty()) {
+            throw new IllegalArgumentException("Missing/blank property: " + name);
+        }
+        return v.trim();
     }
 
-    private static class TopAlbum {
-        List<ImageInfo> image;
+    private static String truncate(String s, int max) {
+        if (s == null) return "";
+        if (s.length() <= max) return s;
+        return s.substring(0, max) + "...";
     }
 }
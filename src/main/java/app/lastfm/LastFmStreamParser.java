@@ -0,0 +1,379 @@
+package app.lastfm;
+
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+import app.models.TopArtistRow;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Token-level readers for Last.fm JSON responses.
+ * Rows are emitted straight from the stream; nothing but the fields we show is kept,
+ * and of each image array only the last (largest) non-blank URL survives.
+ * The rows of one response share one {@link StringPool}.
+ */
+final class LastFmStreamParser {
+
+    private LastFmStreamParser() { }
+
+    /** Paging numbers from an "@attr" block, filled in whenever it shows up in the stream. */
+    static final class PageInfo {
+        int page;
+        int totalPages;
+        int perPage;
+        int total;
+
+        PageInfo(int page, int perPage) {
+            this.page = page;
+            this.totalPages = 1;
+            this.perPage = perPage;
+            this.total = 0;
+        }
+    }
+
+    // -----------------------------
+    // user.getrecenttracks
+    // -----------------------------
+    static PageInfo readRecentTracks(JsonReader in, int page, int limit, Consumer<RecentTrackRow> sink) throws IOException {
+        PageInfo info = new PageInfo(page, limit);
+        if (!beginObject(in)) return info;
+        ApiError error = new ApiError();
+        StringPool pool = new StringPool();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (error.read(field, in)) continue;
+            if (!"recenttracks".equals(field)) {
+                in.skipValue();
+                continue;
+            }
+            if (!beginObject(in)) continue;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "track" -> readArrayOrSingle(in, () -> sink.accept(readTrack(in, pool)));
+                    case "@attr" -> readPageAttr(in, info);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        in.endObject();
+        pool.freeze();
+        error.throwIfSet();
+        return info;
+    }
+
+    private static RecentTrackRow readTrack(JsonReader in, StringPool pool) throws IOException {
+        String name = "";
+        String artist = "";
+        String album = "";
+        String uts = null;
+        String imageUrl = "";
+        boolean nowPlaying = false;
+
+        if (!beginObject(in)) return new RecentTrackRow(pool, "", "", "", false, RecentTrackRow.NO_TIME, "");
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name" -> name = nextString(in);
+                case "artist" -> artist = readArtistName(in);
+                case "album" -> album = readTextField(in);
+                case "date" -> uts = readField(in, "uts");
+                case "image" -> imageUrl = readBestImageUrl(in);
+                case "@attr" -> nowPlaying = "true".equalsIgnoreCase(readField(in, "nowplaying"));
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        long playedAt = RecentTrackRow.NO_TIME;
+        if (!nowPlaying && uts != null && !uts.isBlank()) {
+            playedAt = parseUts(uts);
+        }
+        return new RecentTrackRow(pool, name, artist, album, nowPlaying, playedAt, imageUrl);
+    }
+
+    /** extended=1 gives {"name": ...}, the plain form gives {"#text": ...}; prefer "name". */
+    private static String readArtistName(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.STRING) return in.nextString();
+        if (!beginObject(in)) return "";
+        String name = "";
+        String text = "";
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name" -> name = nextString(in);
+                case "#text" -> text = nextString(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return !name.isBlank() ? name : text.isBlank() ? "" : text;
+    }
+
+    // -----------------------------
+    // user.gettopartists
+    // -----------------------------
+    static PageInfo readTopArtists(JsonReader in, int page, int limit, Consumer<TopArtistRow> sink) throws IOException {
+        PageInfo info = new PageInfo(page, limit);
+        if (!beginObject(in)) return info;
+        ApiError error = new ApiError();
+        StringPool pool = new StringPool();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (error.read(field, in)) continue;
+            if (!"topartists".equals(field)) {
+                in.skipValue();
+                continue;
+            }
+            if (!beginObject(in)) continue;
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "artist" -> readArrayOrSingle(in, () -> sink.accept(readTopArtist(in, pool)));
+                    case "@attr" -> readPageAttr(in, info);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+        in.endObject();
+        pool.freeze();
+        error.throwIfSet();
+        return info;
+    }
+
+    private static TopArtistRow readTopArtist(JsonReader in, StringPool pool) throws IOException {
+        String name = "";
+        int playcount = 0;
+        String imageUrl = "";
+
+        if (!beginObject(in)) return new TopArtistRow(pool, "", 0, "");
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name" -> name = nextString(in);
+                case "playcount" -> playcount = safeInt(nextString(in), 0);
+                // Often blank or placeholder for artists
+                case "image" -> imageUrl = readBestImageUrl(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new TopArtistRow(pool, name, playcount, imageUrl);
+    }
+
+    // -----------------------------
+    // artist.getinfo / artist.gettopalbums
+    // -----------------------------
+    static String readArtistInfoImage(JsonReader in) throws IOException {
+        String url = "";
+        if (!beginObject(in)) return url;
+        ApiError error = new ApiError();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (error.read(field, in)) continue;
+            if ("artist".equals(field)) {
+                url = readImageOf(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        error.throwIfSet();
+        return url;
+    }
+
+    /** track.getinfo: "duration" in milliseconds, 0 if Last.fm doesn't know it. */
+    static long readTrackDurationMillis(JsonReader in) throws IOException {
+        long millis = 0;
+        if (!beginObject(in)) return millis;
+        ApiError error = new ApiError();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (error.read(field, in)) continue;
+            if ("track".equals(field)) {
+                millis = Math.max(0, safeInt(readField(in, "duration"), 0));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        error.throwIfSet();
+        return millis;
+    }
+
+    /** Image of the first album only; the rest of the list is skipped. */
+    static String readFirstTopAlbumImage(JsonReader in) throws IOException {
+        String url = "";
+        if (!beginObject(in)) return url;
+        ApiError error = new ApiError();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            if (error.read(field, in)) continue;
+            if (!"topalbums".equals(field)) {
+                in.skipValue();
+                continue;
+            }
+            if (!beginObject(in)) continue;
+            while (in.hasNext()) {
+                if (!"album".equals(in.nextName())) {
+                    in.skipValue();
+                    continue;
+                }
+                if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                    in.beginArray();
+                    if (in.hasNext()) url = readImageOf(in);
+                    while (in.hasNext()) in.skipValue();
+                    in.endArray();
+                } else {
+                    url = readImageOf(in);
+                }
+            }
+            in.endObject();
+        }
+        in.endObject();
+        error.throwIfSet();
+        return url;
+    }
+
+    /** Reads an object and returns the best URL of its "image" array. */
+    private static String readImageOf(JsonReader in) throws IOException {
+        String url = "";
+        if (!beginObject(in)) return url;
+        while (in.hasNext()) {
+            if ("image".equals(in.nextName())) {
+                url = readBestImageUrl(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return url;
+    }
+
+    // -----------------------------
+    // Shared pieces
+    // -----------------------------
+
+    /** Top-level {"error": n, "message": "..."} that Last.fm may send instead of data. */
+    private static final class ApiError {
+        int code;
+        String message = "";
+
+        boolean read(String field, JsonReader in) throws IOException {
+            switch (field) {
+                case "error" -> code = safeInt(nextString(in), -1);
+                case "message" -> message = nextString(in);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void throwIfSet() throws LastFmApiException {
+            if (code != 0) throw new LastFmApiException(code, message);
+        }
+    }
+
+    /** Sizes come smallest first, so the last non-blank "#text" wins. */
+    static String readBestImageUrl(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            in.skipValue();
+            return "";
+        }
+        String best = "";
+        in.beginArray();
+        while (in.hasNext()) {
+            String text = readTextField(in);
+            if (!text.isBlank()) best = text;
+        }
+        in.endArray();
+        return best;
+    }
+
+    private static void readPageAttr(JsonReader in, PageInfo info) throws IOException {
+        if (!beginObject(in)) return;
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "page" -> info.page = safeInt(nextString(in), info.page);
+                case "perPage" -> info.perPage = safeInt(nextString(in), info.perPage);
+                case "totalPages" -> info.totalPages = safeInt(nextString(in), info.totalPages);
+                case "total" -> info.total = safeInt(nextString(in), info.total);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    private static String readTextField(JsonReader in) throws IOException {
+        return readField(in, "#text");
+    }
+
+    /** Value of a single string field of an object, or "" if absent. */
+    private static String readField(JsonReader in, String field) throws IOException {
+        if (!beginObject(in)) return "";
+        String value = "";
+        while (in.hasNext()) {
+            if (field.equals(in.nextName())) {
+                value = nextString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return value;
+    }
+
+    private interface Element {
+        void read() throws IOException;
+    }
+
+    /** Last.fm sends a bare object instead of a one-element array when there's a single result. */
+    private static void readArrayOrSingle(JsonReader in, Element element) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.BEGIN_ARRAY) {
+            in.beginArray();
+            while (in.hasNext()) element.read();
+            in.endArray();
+        } else if (t == JsonToken.BEGIN_OBJECT) {
+            element.read();
+        } else {
+            in.skipValue();
+        }
+    }
+
+    /** Enters an object, or skips whatever else is there and returns false. */
+    private static boolean beginObject(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.BEGIN_OBJECT) {
+            in.beginObject();
+            return true;
+        }
+        in.skipValue();
+        return false;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        return switch (in.peek()) {
+            case STRING, NUMBER -> in.nextString();
+            case BOOLEAN -> String.valueOf(in.nextBoolean());
+            default -> {
+                in.skipValue();
+                yield "";
+            }
+        };
+    }
+
+    private static long parseUts(String utsSeconds) {
+        try {
+            return Long.parseLong(utsSeconds.trim());
+        } catch (NumberFormatException e) {
+            return RecentTrackRow.NO_TIME;
+        }
+    }
+
+    private static int safeInt(String s, int def) {
+        if (s == null) return def;
+        try { return Integer.parseInt(s.trim()); }
+        catch (Exception e) { return def; }
+    }
+}
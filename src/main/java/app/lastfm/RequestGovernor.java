@@ -0,0 +1,201 @@
+package app.lastfm;
+
+import app.metrics.Histogram;
+import app.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit + circuit breaker shared by every client using the same API key.
+ *
+ * Rate: a token bucket ({@value #DEFAULT_RATE_PER_SECOND}/s, burst {@value #DEFAULT_BURST}).
+ * Lower priority classes must leave part of the bucket untouched, so a running backfill or
+ * icon prefetch can't starve the refresh the user is looking at.
+ *
+ * Breaker: after {@value #FAILURE_THRESHOLD} consecutive server-side failures requests fail
+ * fast for a cool-down (doubling up to {@value #MAX_OPEN_SECONDS}s); the first request after
+ * it is the trial that closes it again. Callers ask the breaker before taking a token, so
+ * requests failing fast don't drain the bucket.
+ */
+public class RequestGovernor {
+
+    // Last.fm asks for no more than 5 requests per second per key, averaged
+    static final double DEFAULT_RATE_PER_SECOND = 5.0;
+    static final int DEFAULT_BURST = 10;
+
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long MIN_OPEN_SECONDS = 15;
+    private static final long MAX_OPEN_SECONDS = 600;
+
+    public enum Priority {
+        /** what the user is waiting for (refresh, load more) */
+        FOREGROUND(0.0),
+        /** nice to have soon (artist icons) */
+        PREFETCH(0.25),
+        /** bulk work (history backfill) */
+        BACKFILL(0.5);
+
+        /** share of the bucket this class must leave for higher ones */
+        final double headroom;
+
+        Priority(double headroom) {
+            this.headroom = headroom;
+        }
+    }
+
+    /** Thrown instead of sending while the breaker is open. */
+    public static class CircuitOpenException extends IOException {
+        private final long retryInMillis;
+
+        CircuitOpenException(long retryInMillis) {
+            super("Last.fm looks unavailable; pausing requests for " + (retryInMillis / 1000 + 1) + "s");
+            this.retryInMillis = retryInMillis;
+        }
+
+        public long getRetryInMillis() { return retryInMillis; }
+    }
+
+    private static final Histogram WAITS = Metrics.global().timer("ratelimit.wait");
+
+    private static final Map<String, RequestGovernor> BY_API_KEY = new ConcurrentHashMap<>();
+
+    /** The governor shared by everything using this API key. */
+    public static RequestGovernor forApiKey(String apiKey) {
+        return BY_API_KEY.computeIfAbsent(apiKey, k -> new RequestGovernor(DEFAULT_RATE_PER_SECOND, DEFAULT_BURST));
+    }
+
+    private final double ratePerNano;
+    private final double capacity;
+
+    // bucket (guarded by this)
+    private double tokens;
+    private long lastRefillNanos;
+    private long waitedNanos;
+
+    // breaker (guarded by this)
+    private int consecutiveFailures;
+    private long openUntilMillis;
+    private long openSeconds = MIN_OPEN_SECONDS;
+    private boolean trialInFlight;
+
+    public RequestGovernor(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / 1e9;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // -----------------------------
+    // Rate limit
+    // -----------------------------
+
+    /** Blocks until the request may be sent. */
+    public void acquire(Priority priority) throws InterruptedException {
+        long wait;
+        while ((wait = tryAcquire(priority)) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+            recordWait(wait);
+        }
+    }
+
+    /**
+     * Takes a token if this priority may have one now.
+     * @return 0 if granted, otherwise roughly how long to wait before trying again (nanos)
+     */
+    public synchronized long tryAcquire(Priority priority) {
+        refill();
+        double needed = 1.0 + priority.headroom * capacity;
+        if (tokens >= needed) {
+            tokens -= 1.0;
+            return 0;
+        }
+        return Math.max(1_000_000L, (long) Math.ceil((needed - tokens) / ratePerNano));
+    }
+
+    /** Adds to {@link #getWaitedNanos()}; for callers that wait without {@link #acquire}. */
+    synchronized void recordWait(long nanos) {
+        waitedNanos += nanos;
+        WAITS.record(nanos);
+    }
+
+    /** Sustained rate the bucket refills at. */
+    public double getRatePerSecond() {
+        return ratePerNano * 1e9;
+    }
+
+    /** Total time callers spent waiting for a token. */
+    public synchronized long getWaitedNanos() {
+        return waitedNanos;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+        lastRefillNanos = now;
+    }
+
+    // -----------------------------
+    // Circuit breaker
+    // -----------------------------
+
+    /**
+     * Fails fast while open; lets exactly one trial request through once the cool-down ends.
+     * @return true if the caller is that trial: it alone settles it, through the
+     *         {@code trial} flag of the record methods or {@link #releaseTrial()}
+     */
+    public synchronized boolean checkCircuit() throws CircuitOpenException {
+        if (openUntilMillis == 0) return false;
+        long now = System.currentTimeMillis();
+        if (now < openUntilMillis || trialInFlight) {
+            throw new CircuitOpenException(Math.max(0, openUntilMillis - now));
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntilMillis != 0 && System.currentTimeMillis() < openUntilMillis;
+    }
+
+    /** Milliseconds until the breaker lets a trial request through (0 if closed). */
+    public synchronized long getRetryInMillis() {
+        return isOpen() ? openUntilMillis - System.currentTimeMillis() : 0;
+    }
+
+    /**
+     * The API answered (any non-server-error answer counts). Only the trial closes an open
+     * breaker; an answer to a request sent before it opened says nothing about now.
+     */
+    public synchronized void recordSuccess(boolean trial) {
+        if (!trial && openUntilMillis != 0) return;
+        consecutiveFailures = 0;
+        openUntilMillis = 0;
+        openSeconds = MIN_OPEN_SECONDS;
+        trialInFlight = false;
+    }
+
+    /**
+     * The trial ended without telling anything about Last.fm's health (e.g. its body didn't
+     * parse, or it was cancelled before it was sent): frees the slot for the next one and
+     * changes nothing else. Only the holder of the trial may call this.
+     */
+    public synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    /** 5xx, 429, Last.fm "temporary" error codes, or no answer at all. */
+    public synchronized void recordFailure(boolean trial) {
+        consecutiveFailures++;
+        if (trial) {
+            // trial failed: stay open, longer
+            trialInFlight = false;
+            openSeconds = Math.min(MAX_OPEN_SECONDS, openSeconds * 2);
+            openUntilMillis = System.currentTimeMillis() + openSeconds * 1000;
+        } else if (consecutiveFailures >= FAILURE_THRESHOLD && openUntilMillis == 0) {
+            openUntilMillis = System.currentTimeMillis() + openSeconds * 1000;
+        }
+    }
+}
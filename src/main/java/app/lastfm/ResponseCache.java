@@ -0,0 +1,399 @@
+package app.lastfm;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Response cache for Last.fm GETs, keyed by API method + parameters (api_key excluded).
+ *
+ * Each method has its own TTL; a zero TTL means "never cache". Entries keep the raw body
+ * (so they can be written to disk and re-parsed after a restart) plus the decoded value
+ * of the last parse, so a fresh hit costs neither a request nor a parse.
+ * Stale entries that carry an ETag / Last-Modified are revalidated with a conditional GET.
+ * Disk reads and writes happen outside the lock, so a slow disk holds up only the request
+ * that needs that file, not every other user of the cache.
+ *
+ * The disk copies are bounded on their own: by file count and total bytes (least recently
+ * written or read go first), and files not touched for {@link #MAX_DISK_AGE} are dropped
+ * when the cache opens. {@link #clear()} deletes them too.
+ */
+public class ResponseCache {
+
+    private static final int FILE_MAGIC = 0x53444331; // "SDC1"
+    private static final int DEFAULT_MAX_ENTRIES = 512;
+    private static final int DEFAULT_MAX_DISK_FILES = 4096;
+    private static final long DEFAULT_MAX_DISK_BYTES = 64L * 1024 * 1024;
+    // longer than any TTL: a stale entry is still worth a conditional GET for a while
+    private static final Duration MAX_DISK_AGE = Duration.ofDays(30);
+
+    private final Map<String, Duration> ttlByMethod = new HashMap<>();
+    private final Path dir;
+    private final int maxEntries;
+    private final int maxDiskFiles;
+    private final long maxDiskBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // disk reads in progress, so concurrent misses for one key share a read (guarded by this)
+    private final Map<String, CompletableFuture<Entry>> loading = new HashMap<>();
+
+    // file name -> size of every disk copy, least recently used first (guarded by itself)
+    private final LinkedHashMap<String, Long> diskFiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskBytes;
+
+    private long hits;
+    private long misses;
+    private long revalidated;
+
+    /** @param dir where entries are persisted, or null for memory only */
+    public ResponseCache(Path dir) {
+        this(dir, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ResponseCache(Path dir, int maxEntries) {
+        this(dir, maxEntries, DEFAULT_MAX_DISK_FILES, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * @param maxDiskFiles disk copies kept at most
+     * @param maxDiskBytes total size of the disk copies kept at most
+     */
+    public ResponseCache(Path dir, int maxEntries, int maxDiskFiles, long maxDiskBytes) {
+        this.dir = dir;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxDiskFiles = Math.max(1, maxDiskFiles);
+        this.maxDiskBytes = Math.max(1, maxDiskBytes);
+
+        // Chart data moves slowly; artist and track metadata hardly at all.
+        // Recent tracks have no TTL at all: page 1 changes with every scrobble.
+        ttlByMethod.put("user.gettopartists", Duration.ofMinutes(5));
+        ttlByMethod.put("artist.getinfo", Duration.ofDays(7));
+        ttlByMethod.put("artist.gettopalbums", Duration.ofDays(7));
+        ttlByMethod.put("track.getinfo", Duration.ofDays(7));
+
+        if (dir != null) {
+            try {
+                Files.createDirectories(dir);
+                indexDisk();
+            } catch (IOException e) {
+                System.err.println("Response cache dir not usable (" + dir + "): " + e.getMessage());
+            }
+        }
+    }
+
+    // -----------------------------
+    // Entries
+    // -----------------------------
+    public static final class Entry {
+        final String key;
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        volatile long expiresAtMillis;
+
+        // last parse result; memory only
+        volatile Object decoded;
+
+        Entry(String key, byte[] body, String etag, String lastModified, long expiresAtMillis) {
+            this.key = key;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isFresh(long nowMillis) {
+            return nowMillis < expiresAtMillis;
+        }
+
+        boolean canRevalidate() {
+            return !etag.isEmpty() || !lastModified.isEmpty();
+        }
+    }
+
+    public synchronized void setTtl(String method, Duration ttl) {
+        ttlByMethod.put(method, ttl == null ? Duration.ZERO : ttl);
+    }
+
+    public synchronized Duration ttlFor(String method) {
+        return ttlByMethod.getOrDefault(method, Duration.ZERO);
+    }
+
+    boolean isCacheable(URI uri) {
+        Duration ttl = ttlFor(methodOf(uri));
+        return !ttl.isZero() && !ttl.isNegative();
+    }
+
+    /**
+     * Fresh or stale entry for the URI (null if there is none). A memory hit completes
+     * right away; a miss reads the disk copy on the given executor, never on the caller's
+     * thread, and concurrent misses for the same key wait for that one read.
+     */
+    CompletableFuture<Entry> lookup(URI uri, Executor io) {
+        String key = keyFor(uri);
+        CompletableFuture<Entry> load;
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null || dir == null) return CompletableFuture.completedFuture(count(e));
+            load = loading.get(key);
+            if (load != null) return load.thenApply(this::count);
+            load = new CompletableFuture<>();
+            loading.put(key, load);
+        }
+        CompletableFuture<Entry> read = load;
+        try {
+            io.execute(() -> {
+                Entry fromDisk = null;
+                try {
+                    fromDisk = readFromDisk(key);
+                } finally {
+                    read.complete(loaded(key, fromDisk));
+                }
+            });
+        } catch (RuntimeException ex) {
+            read.complete(loaded(key, null));
+        }
+        return read.thenApply(this::count);
+    }
+
+    /** A disk read finished; an entry stored in the meantime is newer and wins. */
+    private synchronized Entry loaded(String key, Entry fromDisk) {
+        loading.remove(key);
+        Entry e = entries.get(key);
+        if (e != null) return e;
+        if (fromDisk != null) putInMemory(fromDisk);
+        return fromDisk;
+    }
+
+    private synchronized Entry count(Entry e) {
+        if (e != null && e.isFresh(System.currentTimeMillis())) hits++;
+        else misses++;
+        return e;
+    }
+
+    Entry store(URI uri, byte[] body, String etag, String lastModified) {
+        String key = keyFor(uri);
+        Entry e;
+        synchronized (this) {
+            long expires = System.currentTimeMillis() + ttlFor(methodOf(uri)).toMillis();
+            e = new Entry(key, body, safe(etag), safe(lastModified), expires);
+            putInMemory(e);
+        }
+        writeToDisk(e);
+        return e;
+    }
+
+    /**
+     * A 304 answered for a stale entry: keep the body, push the expiry out again. An entry
+     * evicted while the request was out goes back in; one stored anew meanwhile is newer and
+     * stays.
+     */
+    void markRevalidated(URI uri, Entry e) {
+        synchronized (this) {
+            e.expiresAtMillis = System.currentTimeMillis() + ttlFor(methodOf(uri)).toMillis();
+            revalidated++;
+            Entry current = entries.get(e.key);
+            if (current != null && current != e) return;
+            if (current == null) putInMemory(e);
+        }
+        writeToDisk(e);
+    }
+
+    /** Drops every entry, in memory and on disk. */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+        }
+        if (dir == null) return;
+        synchronized (diskFiles) {
+            for (String name : diskFiles.keySet()) deleteFile(name);
+            diskFiles.clear();
+            diskBytes = 0;
+        }
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getRevalidated() { return revalidated; }
+
+    private void putInMemory(Entry e) {
+        entries.put(e.key, e);
+        while (entries.size() > maxEntries) {
+            String eldest = entries.keySet().iterator().next();
+            entries.remove(eldest);
+        }
+    }
+
+    // -----------------------------
+    // Keys
+    // -----------------------------
+
+    /** "method?k=v&k=v" with parameters sorted and the API key / format dropped. */
+    public static String keyFor(URI uri) {
+        Map<String, String> params = new TreeMap<>(parseQuery(uri));
+        params.remove("api_key");
+        params.remove("format");
+        String method = params.remove("method");
+
+        StringBuilder sb = new StringBuilder(method == null ? "" : method).append('?');
+        params.forEach((k, v) -> sb.append(k).append('=').append(v).append('&'));
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    static String methodOf(URI uri) {
+        return parseQuery(uri).getOrDefault("method", "");
+    }
+
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> out = new HashMap<>();
+        String q = uri.getRawQuery();
+        if (q == null || q.isEmpty()) return out;
+        for (String pair : q.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            String k = URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            out.put(k, v);
+        }
+        return out;
+    }
+
+    // -----------------------------
+    // Disk
+    // -----------------------------
+    private Path fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(HexFormat.of().formatHex(digest) + ".bin");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        Path file = fileFor(key);
+        synchronized (diskFiles) {
+            // a read counts as a use for eviction; not indexed means not there (or evicted)
+            if (diskFiles.get(file.getFileName().toString()) == null) return null;
+        }
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(raw)) {
+            if (in.readInt() != FILE_MAGIC) return null;
+            String storedKey = in.readUTF();
+            if (!storedKey.equals(key)) return null; // hash collision; treat as miss
+            long expires = in.readLong();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            byte[] body = in.readNBytes(in.readInt());
+            return new Entry(key, body, etag, lastModified, expires);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeToDisk(Entry e) {
+        if (dir == null) return;
+        Path file = fileFor(e.key);
+        Path tmp = null;
+        try {
+            // a temp file per write: two writers of one key must not share it
+            tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (OutputStream raw = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(raw)) {
+                out.writeInt(FILE_MAGIC);
+                out.writeUTF(e.key);
+                out.writeLong(e.expiresAtMillis);
+                out.writeUTF(e.etag);
+                out.writeUTF(e.lastModified);
+                out.writeInt(e.body.length);
+                out.write(e.body);
+            }
+            long size = Files.size(tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written(file.getFileName().toString(), size);
+        } catch (IOException ex) {
+            System.err.println("Response cache write failed: " + ex.getMessage());
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) { }
+        }
+    }
+
+    /** Indexes the disk copies left by earlier runs, oldest first; drops stale files and temp leftovers. */
+    private void indexDisk() throws IOException {
+        long cutoff = System.currentTimeMillis() - MAX_DISK_AGE.toMillis();
+        List<Path> files = new ArrayList<>();
+        Map<Path, FileTime> touched = new HashMap<>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(dir)) {
+            for (Path f : listing) {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(f);
+                } else if (name.endsWith(".bin")) {
+                    FileTime t = Files.getLastModifiedTime(f);
+                    if (t.toMillis() < cutoff) {
+                        Files.deleteIfExists(f);
+                    } else {
+                        files.add(f);
+                        touched.put(f, t);
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparing(touched::get));
+        for (Path f : files) written(f.getFileName().toString(), Files.size(f));
+    }
+
+    /** A disk copy was (re)written; evicts the least recently used ones over the bounds. */
+    private void written(String name, long size) {
+        synchronized (diskFiles) {
+            Long old = diskFiles.put(name, size);
+            diskBytes += size - (old == null ? 0 : old);
+            Iterator<Map.Entry<String, Long>> it = diskFiles.entrySet().iterator();
+            while ((diskFiles.size() > maxDiskFiles || diskBytes > maxDiskBytes) && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(name)) break;   // never the one just written
+                it.remove();
+                diskBytes -= eldest.getValue();
+                deleteFile(eldest.getKey());
+            }
+        }
+    }
+
+    private void deleteFile(String name) {
+        try {
+            Files.deleteIfExists(dir.resolve(name));
+        } catch (IOException e) {
+            System.err.println("Response cache delete failed: " + e.getMessage());
+        }
+    }
+
+    private static String safe(String v) {
+        return v == null ? "" : v;
+    }
+}
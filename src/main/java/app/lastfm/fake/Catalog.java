@@ -0,0 +1,151 @@
+package app.lastfm.fake;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The made-up music world every synthetic user listens to: artists, their albums and
+ * tracks, all derived from a seed so the same name always means the same thing.
+ * Popularity follows a Zipf curve, the way real listening does.
+ */
+final class Catalog {
+
+    static final int ARTISTS = 1000;
+    static final int ALBUMS_PER_ARTIST = 6;
+    static final int TRACKS_PER_ALBUM = 10;
+
+    private static final String[] ADJ = {
+            "Velvet", "Silver", "Midnight", "Paper", "Electric", "Hollow", "Golden", "Neon",
+            "Quiet", "Broken", "Crimson", "Northern", "Glass", "Wild", "Lunar", "Static"};
+    private static final String[] NOUN = {
+            "Harbor", "Tigers", "Engines", "Orchard", "Saints", "Parade", "Lights", "Rivers",
+            "Ghosts", "Machines", "Foxes", "Choir", "Theory", "Canyon", "Signal", "Atlas"};
+    private static final String[] PREFIX = {"", "The ", "DJ ", "Los "};
+    private static final String[] FIRST = {
+            "Björk", "Anna", "Jonas", "Mía", "Kenji", "Léa", "Oskar", "Nadia",
+            "Tomás", "Ingrid", "Yuki", "Rafael", "Søren", "Amara", "Felix", "Zoë"};
+    private static final String[] LAST = {
+            "Sørensen", "Okafor", "Lindqvist", "Moreau", "Tanaka", "Rossi", "Novak", "Haddad",
+            "Kowalski", "Brennan", "Álvarez", "Nakamura", "Petrov", "Dubois", "Eriksen", "Costa"};
+    private static final String[] TRACK_SUFFIX = {
+            "", "", "", "", " (Remastered 2011)", " - Live", " (feat. Nadia Haddad)", " (Radio Edit)"};
+
+    private static final double ZIPF_EXPONENT = 1.07;
+
+    private final long seed;
+    private final String[] artistNames = new String[ARTISTS];
+    private final Map<String, Integer> byName = new HashMap<>(ARTISTS * 2);
+    private final double[] cumulative = new double[ARTISTS];
+
+    Catalog(long seed) {
+        this.seed = seed;
+        for (int a = 0; a < ARTISTS; a++) {
+            String name = baseName(mix(seed ^ (a * 0x9E3779B97F4A7C15L)));
+            String unique = name;
+            for (int n = 2; byName.containsKey(key(unique)); n++) unique = name + " " + roman(n);
+            artistNames[a] = unique;
+            byName.put(key(unique), a);
+        }
+
+        double sum = 0;
+        for (int r = 0; r < ARTISTS; r++) {
+            sum += 1.0 / Math.pow(r + 1, ZIPF_EXPONENT);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < ARTISTS; r++) cumulative[r] /= sum;
+    }
+
+    String artist(int a) {
+        return artistNames[a];
+    }
+
+    /** Artist id for a name (case-insensitive), -1 if there is none. */
+    int find(String name) {
+        Integer a = name == null ? null : byName.get(key(name));
+        return a == null ? -1 : a;
+    }
+
+    String album(int artist, int album) {
+        long h = mix(seed ^ ((long) artist << 20) ^ (album * 0xC2B2AE3DL));
+        return ADJ[(int) (h & 15)] + " " + NOUN[(int) ((h >>> 4) & 15)] + (((h >>> 8) & 3) == 0 ? " (Deluxe)" : "");
+    }
+
+    String track(int artist, int album, int track) {
+        long h = mix(seed ^ ((long) artist << 24) ^ ((long) album << 12) ^ (track * 0x165667B1L));
+        String title = switch ((int) (h & 3)) {
+            case 0 -> ADJ[(int) ((h >>> 2) & 15)] + " " + NOUN[(int) ((h >>> 6) & 15)];
+            case 1 -> NOUN[(int) ((h >>> 2) & 15)];
+            case 2 -> "Song for " + FIRST[(int) ((h >>> 2) & 15)];
+            default -> ADJ[(int) ((h >>> 2) & 15)];
+        };
+        return title + TRACK_SUFFIX[(int) ((h >>> 10) & 7)];
+    }
+
+    /** Cover art URL; the size segment is the one Last.fm uses for each image size. */
+    String albumImage(int artist, int album, String sizePath) {
+        return "https://lastfm.freetls.fastly.net/i/u/" + sizePath + "/" + hash(artist, album) + ".png";
+    }
+
+    /** Share of all listening that goes to the artist of this popularity rank (0 = most). */
+    double share(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    /** Popularity rank for a uniform number in [0, 1). */
+    int rankFor(double u) {
+        int lo = 0, hi = ARTISTS - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumulative[mid] < u) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    long listeners(int artist) {
+        return 1_000 + (mix(seed ^ artist) & 0x3FFFFF);
+    }
+
+    long playcount(int artist) {
+        return listeners(artist) * (8 + (mix(seed ^ ~artist) & 31));
+    }
+
+    String mbid(int artist) {
+        long h = mix(seed ^ (artist * 31L + 7));
+        if ((h & 3) == 0) return "";   // plenty of real artists have none
+        String hex = hash(artist, -1);
+        return hex.substring(0, 8) + "-" + hex.substring(8, 12) + "-" + hex.substring(12, 16) + "-"
+                + hex.substring(16, 20) + "-" + hex.substring(20, 32);
+    }
+
+    private String hash(int artist, int album) {
+        long a = mix(seed ^ ((long) artist << 32) ^ (album & 0xFFFFFFFFL));
+        long b = mix(a ^ 0x5851F42D4C957F2DL);
+        return String.format("%016x%016x", a, b);
+    }
+
+    private static String baseName(long h) {
+        return switch ((int) (h & 3)) {
+            case 0, 1 -> PREFIX[(int) ((h >>> 2) & 3)] + ADJ[(int) ((h >>> 4) & 15)] + " " + NOUN[(int) ((h >>> 8) & 15)];
+            case 2 -> FIRST[(int) ((h >>> 4) & 15)] + " " + LAST[(int) ((h >>> 8) & 15)];
+            default -> NOUN[(int) ((h >>> 4) & 15)] + " of " + ADJ[(int) ((h >>> 8) & 15)] + " " + NOUN[(int) ((h >>> 12) & 15)];
+        };
+    }
+
+    private static String roman(int n) {
+        String[] r = {"", "I", "II", "III", "IV", "V", "VI", "VII", "VIII", "IX", "X"};
+        return n < r.length ? r[n] : String.valueOf(n);
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** SplitMix64 finalizer: cheap, well-spread, deterministic. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,403 @@
+package app.lastfm.fake;
+
+import app.lastfm.RequestGovernor;
+import app.lastfm.ResponseCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for ws.audioscrobbler.com/2.0/ on localhost, for working and load testing
+ * without a network. Point the client at it with api_base in lastfm.properties.
+ *
+ * Answers user.getrecenttracks, user.gettopartists, artist.getinfo, artist.gettopalbums and
+ * track.getinfo from synthetic users (any user name works; each gets a history of the default
+ * size unless added explicitly). Latency, server errors and rate limiting can be injected, and instead of
+ * synthetic data it can record real responses through to disk or replay recorded ones.
+ *
+ * <pre>
+ * java app.lastfm.fake.FakeLastFmServer --port 8089 --history 250000 --latency 40-250 \
+ *      --error-rate 0.02 --rate-limit 5
+ * java app.lastfm.fake.FakeLastFmServer --record recordings --upstream https://ws.audioscrobbler.com/2.0/
+ * java app.lastfm.fake.FakeLastFmServer --replay recordings
+ * </pre>
+ */
+public class FakeLastFmServer implements AutoCloseable {
+
+    public static final long DEFAULT_HISTORY = 50_000;
+
+    public enum Mode {
+        /** generated answers */
+        SYNTHETIC,
+        /** forward to the real API and keep every good answer on disk */
+        RECORD,
+        /** answer only from what was recorded */
+        REPLAY
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Catalog catalog = new Catalog(0x5C0BB1EDA5L);
+    private final Map<String, SyntheticUser> users = new ConcurrentHashMap<>();
+    private final Map<String, RequestGovernor> limits = new ConcurrentHashMap<>();
+
+    // settings (volatile: may be changed while serving, e.g. mid load test)
+    private volatile long defaultHistory = DEFAULT_HISTORY;
+    private volatile long minLatencyMs;
+    private volatile long maxLatencyMs;
+    private volatile double errorRate;
+    private volatile double rateLimitPerSecond;
+    private volatile int rateLimitBurst;
+    private volatile Mode mode = Mode.SYNTHETIC;
+    private volatile Path recordDir;
+    private volatile URI upstream;
+
+    private HttpClient upstreamClient;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    /** @param port 0 picks a free one */
+    public FakeLastFmServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/2.0/", this::handle);
+    }
+
+    public FakeLastFmServer start() {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** What to give LastFmClient as its API base. */
+    public URI baseUri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/2.0/");
+    }
+
+    // -----------------------------
+    // Settings
+    // -----------------------------
+
+    /** Adds (or replaces) a user with this many scrobbles as of now. */
+    public void addUser(String name, long history) {
+        users.put(userKey(name), new SyntheticUser(catalog, name, history, nowSeconds()));
+    }
+
+    /** History size for users that show up without having been added. */
+    public void setDefaultHistory(long history) {
+        this.defaultHistory = Math.max(0, history);
+    }
+
+    /** Every answer is delayed by a uniformly random time in [min, max]. */
+    public void setLatency(Duration min, Duration max) {
+        this.minLatencyMs = min.toMillis();
+        this.maxLatencyMs = Math.max(min.toMillis(), max.toMillis());
+    }
+
+    /** Share of requests (0..1) answered with a 500/503 and Last.fm's "try again" error body. */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+    }
+
+    /** Per API key; beyond it requests get a 429 with error 29. 0 = unlimited. */
+    public void setRateLimit(double perSecond, int burst) {
+        this.rateLimitPerSecond = perSecond;
+        this.rateLimitBurst = burst;
+        limits.clear();
+    }
+
+    public void record(Path dir, URI upstream) throws IOException {
+        Files.createDirectories(dir);
+        this.upstreamClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+        this.recordDir = dir;
+        this.upstream = upstream;
+        this.mode = Mode.RECORD;
+    }
+
+    public void replay(Path dir) {
+        this.recordDir = dir;
+        this.mode = Mode.REPLAY;
+    }
+
+    public long getRequests() { return requests.get(); }
+    public long getInjectedErrors() { return injectedErrors.get(); }
+    public long getRateLimited() { return rateLimited.get(); }
+
+    // -----------------------------
+    // Serving
+    // -----------------------------
+    private record Answer(int status, byte[] body) {
+        static Answer ok(String json) {
+            return new Answer(200, json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Answer error(int status, int code, String message) {
+            return new Answer(status, FakeResponses.error(code, message).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            requests.incrementAndGet();
+            Map<String, String> q = parseQuery(ex.getRequestURI().getRawQuery());
+            delay();
+
+            Answer answer;
+            String apiKey = q.getOrDefault("api_key", "");
+            if (apiKey.isBlank()) {
+                answer = Answer.error(403, 10, "Invalid API key - You must be granted a valid key by last.fm");
+            } else if (!takeToken(apiKey)) {
+                rateLimited.incrementAndGet();
+                answer = Answer.error(429, 29, "Rate Limit Exceeded - Your IP has made too many requests in a short period");
+            } else if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                answer = ThreadLocalRandom.current().nextBoolean()
+                        ? Answer.error(500, 8, "Operation failed - Most likely the backend service failed. Please try again.")
+                        : Answer.error(503, 16, "There was a temporary error processing your request. Please try again");
+            } else {
+                answer = switch (mode) {
+                    case SYNTHETIC -> synthetic(q);
+                    case RECORD -> record(ex.getRequestURI());
+                    case REPLAY -> replay(ex.getRequestURI());
+                };
+            }
+            send(ex, answer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            System.err.println("Fake Last.fm: " + e);
+        }
+    }
+
+    private void send(HttpExchange ex, Answer answer) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (answer.status() == 200) {
+            String etag = "\"" + sha1(answer.body()).substring(0, 16) + "\"";
+            ex.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+                ex.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+        if (ex.getRequestMethod().equals("HEAD")) {
+            // the client's connection warm-up
+            ex.sendResponseHeaders(answer.status(), -1);
+            return;
+        }
+        ex.sendResponseHeaders(answer.status(), answer.body().length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(answer.body());
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long min = minLatencyMs, max = maxLatencyMs;
+        if (max <= 0) return;
+        Thread.sleep(min == max ? min : ThreadLocalRandom.current().nextLong(min, max + 1));
+    }
+
+    private boolean takeToken(String apiKey) {
+        double rate = rateLimitPerSecond;
+        if (rate <= 0) return true;
+        RequestGovernor bucket = limits.computeIfAbsent(apiKey, k -> new RequestGovernor(rate, rateLimitBurst));
+        return bucket.tryAcquire(RequestGovernor.Priority.FOREGROUND) == 0;
+    }
+
+    // -----------------------------
+    // Synthetic answers
+    // -----------------------------
+    private Answer synthetic(Map<String, String> q) {
+        String method = q.getOrDefault("method", "").toLowerCase(Locale.ROOT);
+        return switch (method) {
+            case "user.getrecenttracks" -> withUser(q, u -> Answer.ok(FakeResponses.recentTracks(catalog, u, nowSeconds(),
+                    intParam(q, "limit", 50, 1, 200), intParam(q, "page", 1, 1, Integer.MAX_VALUE),
+                    longParam(q, "from"), longParam(q, "to"), "1".equals(q.get("extended")))));
+            case "user.gettopartists" -> withUser(q, u -> Answer.ok(FakeResponses.topArtists(catalog, u, nowSeconds(),
+                    q.getOrDefault("period", "overall"),
+                    intParam(q, "limit", 50, 1, 1000), intParam(q, "page", 1, 1, Integer.MAX_VALUE))));
+            case "artist.getinfo" -> withArtist(q, a -> Answer.ok(FakeResponses.artistInfo(catalog, a)));
+            case "artist.gettopalbums" -> withArtist(q, a -> Answer.ok(FakeResponses.artistTopAlbums(catalog, a,
+                    intParam(q, "limit", 50, 1, 1000), intParam(q, "page", 1, 1, Integer.MAX_VALUE))));
+            case "track.getinfo" -> withArtist(q, a -> Answer.ok(FakeResponses.trackInfo(catalog, a, q.getOrDefault("track", ""))));
+            default -> Answer.error(400, 3, "Invalid Method - No method with that name in this package");
+        };
+    }
+
+    private interface UserAnswer {
+        Answer answer(SyntheticUser user);
+    }
+
+    private interface ArtistAnswer {
+        Answer answer(int artist);
+    }
+
+    private Answer withUser(Map<String, String> q, UserAnswer a) {
+        String name = q.getOrDefault("user", "").trim();
+        if (name.isEmpty()) return Answer.error(400, 6, "User not found");
+        SyntheticUser user = users.computeIfAbsent(userKey(name),
+                k -> new SyntheticUser(catalog, name, defaultHistory, nowSeconds()));
+        return a.answer(user);
+    }
+
+    private Answer withArtist(Map<String, String> q, ArtistAnswer a) {
+        int artist = catalog.find(q.get("artist"));
+        if (artist < 0) return Answer.error(200, 6, "The artist you supplied could not be found");
+        return a.answer(artist);
+    }
+
+    // -----------------------------
+    // Record / replay
+    // -----------------------------
+    private Answer record(URI requestUri) throws IOException, InterruptedException {
+        URI target = URI.create(upstream.toString() + "?" + requestUri.getRawQuery());
+        HttpResponse<byte[]> res = upstreamClient.send(
+                HttpRequest.newBuilder(target).GET().header("Accept", "application/json").build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        String body = new String(res.body(), StandardCharsets.UTF_8);
+        if (res.statusCode() == 200 && !body.startsWith("{\"error\"")) {
+            String key = ResponseCache.keyFor(requestUri);
+            Path file = recordDir.resolve(sha1(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, res.body());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                Files.writeString(recordDir.resolve("index.tsv"), file.getFileName() + "\t" + key + "\n",
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        }
+        return new Answer(res.statusCode(), res.body());
+    }
+
+    private Answer replay(URI requestUri) throws IOException {
+        String key = ResponseCache.keyFor(requestUri);
+        Path file = recordDir.resolve(sha1(key.getBytes(StandardCharsets.UTF_8)) + ".json");
+        if (!Files.isRegularFile(file)) return Answer.error(404, 6, "Not recorded: " + key);
+        return new Answer(200, Files.readAllBytes(file));
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String v = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            q.put(k, v);
+        }
+        return q;
+    }
+
+    private static int intParam(Map<String, String> q, String name, int def, int min, int max) {
+        try {
+            return Math.max(min, Math.min(max, Integer.parseInt(q.getOrDefault(name, "").trim())));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static long longParam(Map<String, String> q, String name) {
+        try {
+            return Long.parseLong(q.getOrDefault(name, "").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String userKey(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // -----------------------------
+    // Standalone
+    // -----------------------------
+    public static void main(String[] args) throws Exception {
+        int port = 8089;
+        FakeLastFmServer fake = null;
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) continue;
+            opts.put(a.substring(2), i + 1 < args.length && !args[i + 1].startsWith("--") ? args[++i] : "");
+        }
+        if (opts.containsKey("port")) port = Integer.parseInt(opts.get("port"));
+        try {
+            fake = new FakeLastFmServer(port);
+            if (opts.containsKey("history")) fake.setDefaultHistory(Long.parseLong(opts.get("history")));
+            if (opts.containsKey("latency")) {
+                String[] mm = opts.get("latency").split("-");
+                long min = Long.parseLong(mm[0]);
+                long max = mm.length > 1 ? Long.parseLong(mm[1]) : min;
+                fake.setLatency(Duration.ofMillis(min), Duration.ofMillis(max));
+            }
+            if (opts.containsKey("error-rate")) fake.setErrorRate(Double.parseDouble(opts.get("error-rate")));
+            if (opts.containsKey("rate-limit")) {
+                double rate = Double.parseDouble(opts.get("rate-limit"));
+                fake.setRateLimit(rate, (int) Math.max(1, Math.ceil(rate * 2)));
+            }
+            if (opts.containsKey("record")) {
+                fake.record(Path.of(opts.get("record")),
+                        URI.create(opts.getOrDefault("upstream", "https://ws.audioscrobbler.com/2.0/")));
+            } else if (opts.containsKey("replay")) {
+                fake.replay(Path.of(opts.get("replay")));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Usage: FakeLastFmServer [--port n] [--history n] [--latency min-max] "
+                    + "[--error-rate 0..1] [--rate-limit perSecond] [--record dir [--upstream url] | --replay dir]");
+            System.err.println(e.getMessage());
+            if (fake != null) fake.close();
+            System.exit(2);
+            return;
+        }
+        fake.start();
+        System.out.println("Fake Last.fm (" + fake.mode + ") at " + fake.baseUri());
+    }
+}
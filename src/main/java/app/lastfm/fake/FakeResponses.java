@@ -0,0 +1,279 @@
+package app.lastfm.fake;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * JSON bodies in the shape Last.fm sends them: numbers as strings, "#text" fields,
+ * four image sizes smallest first, "@attr" paging after the list, and a bare object
+ * instead of a one-element array.
+ */
+final class FakeResponses {
+
+    private static final String NO_IMAGE =
+            "https://lastfm.freetls.fastly.net/i/u/%s/2a96cbd8b46e442fc41c2b86b821562f.png";
+    private static final String[][] SIZES = {
+            {"small", "34s"}, {"medium", "64s"}, {"large", "174s"}, {"extralarge", "300x300"}};
+    private static final DateTimeFormatter DATE_TEXT =
+            DateTimeFormatter.ofPattern("dd MMM yyyy, HH:mm", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    private FakeResponses() { }
+
+    private interface Body {
+        void write(JsonWriter w) throws IOException;
+    }
+
+    private static String json(Body body) {
+        StringWriter out = new StringWriter(4096);
+        try (JsonWriter w = new JsonWriter(out)) {
+            body.write(w);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    static String error(int code, String message) {
+        return json(w -> w.beginObject()
+                .name("error").value(code)
+                .name("message").value(message)
+                .name("links").beginArray().endArray()
+                .endObject());
+    }
+
+    // -----------------------------
+    // user.getrecenttracks
+    // -----------------------------
+    static String recentTracks(Catalog catalog, SyntheticUser user, long now, int limit, int page,
+                               long from, long to, boolean extended) {
+        long upper = to > 0 ? Math.min(to, now) : now;
+        long hi = user.countAtOrBefore(upper) - 1;                // newest index in the window
+        long lo = from > 0 ? user.countAtOrBefore(from - 1) : 0;  // oldest index in the window
+        long total = Math.max(0, hi - lo + 1);
+        long totalPages = Math.max(1, (total + limit - 1) / limit);
+
+        long first = hi - (long) (page - 1) * limit;
+        long last = Math.max(lo, first - limit + 1);
+        // like Last.fm: the now-playing row comes on top of page 1 of an open-ended query
+        SyntheticUser.Scrobble playing = (page == 1 && to <= 0) ? user.nowPlaying(now) : null;
+        long rows = (first >= last && first >= lo ? first - last + 1 : 0) + (playing != null ? 1 : 0);
+
+        return json(w -> {
+            w.beginObject().name("recenttracks").beginObject().name("track");
+            if (rows != 1) w.beginArray();
+            if (playing != null) writeTrack(w, catalog, playing, true, extended);
+            for (long j = first; j >= last && j >= lo; j--) {
+                writeTrack(w, catalog, user.scrobble(j), false, extended);
+            }
+            if (rows != 1) w.endArray();
+            w.name("@attr").beginObject()
+                    .name("user").value(user.name())
+                    .name("totalPages").value(String.valueOf(totalPages))
+                    .name("page").value(String.valueOf(page))
+                    .name("perPage").value(String.valueOf(limit))
+                    .name("total").value(String.valueOf(total))
+                    .endObject();
+            w.endObject().endObject();
+        });
+    }
+
+    private static void writeTrack(JsonWriter w, Catalog c, SyntheticUser.Scrobble s, boolean nowPlaying,
+                                   boolean extended) throws IOException {
+        String artist = c.artist(s.artist());
+        w.beginObject();
+        w.name("artist").beginObject();
+        if (extended) {
+            w.name("url").value(artistUrl(artist));
+            w.name("name").value(artist);
+            w.name("image");
+            writeImages(w, NO_IMAGE, null);
+            w.name("mbid").value(c.mbid(s.artist()));
+        } else {
+            w.name("mbid").value(c.mbid(s.artist()));
+            w.name("#text").value(artist);
+        }
+        w.endObject();
+        w.name("streamable").value("0");
+        w.name("image");
+        writeImages(w, null, new int[]{s.artist(), s.album()}, c);
+        w.name("mbid").value("");
+        w.name("album").beginObject().name("mbid").value("").name("#text").value(c.album(s.artist(), s.album())).endObject();
+        w.name("name").value(c.track(s.artist(), s.album(), s.track()));
+        if (nowPlaying) {
+            w.name("@attr").beginObject().name("nowplaying").value("true").endObject();
+        }
+        w.name("url").value(artistUrl(artist) + "/_/" + urlPart(c.track(s.artist(), s.album(), s.track())));
+        if (!nowPlaying) {
+            w.name("date").beginObject()
+                    .name("uts").value(String.valueOf(s.playedAt()))
+                    .name("#text").value(DATE_TEXT.format(Instant.ofEpochSecond(s.playedAt())))
+                    .endObject();
+        }
+        if (extended) w.name("loved").value((s.track() * 7 + s.album()) % 23 == 0 ? "1" : "0");
+        w.endObject();
+    }
+
+    // -----------------------------
+    // user.gettopartists
+    // -----------------------------
+    static String topArtists(Catalog catalog, SyntheticUser user, long now, String period, int limit, int page) {
+        long window = switch (period) {
+            case "7day" -> 7L * 86_400;
+            case "1month" -> 30L * 86_400;
+            case "3month" -> 91L * 86_400;
+            case "6month" -> 182L * 86_400;
+            case "12month" -> 365L * 86_400;
+            default -> Long.MAX_VALUE / 4;
+        };
+        long scrobbles = user.countAtOrBefore(now) - user.countAtOrBefore(now - window);
+
+        // expected plays per artist; rank order is play order
+        int listened = 0;
+        while (listened < Catalog.ARTISTS && Math.round(scrobbles * catalog.share(listened)) > 0) listened++;
+        int totalPages = Math.max(1, (listened + limit - 1) / limit);
+        int first = (page - 1) * limit;
+        int last = Math.min(listened, first + limit);
+        int rows = Math.max(0, last - first);
+        final int total = listened;
+
+        return json(w -> {
+            w.beginObject().name("topartists").beginObject().name("artist");
+            if (rows != 1) w.beginArray();
+            for (int rank = first; rank < last; rank++) {
+                int a = user.artistAt(rank);
+                String name = catalog.artist(a);
+                w.beginObject()
+                        .name("streamable").value("0")
+                        .name("image");
+                writeImages(w, NO_IMAGE, null);
+                w.name("mbid").value(catalog.mbid(a))
+                        .name("url").value(artistUrl(name))
+                        .name("playcount").value(String.valueOf(Math.round(scrobbles * catalog.share(rank))))
+                        .name("@attr").beginObject().name("rank").value(String.valueOf(rank + 1)).endObject()
+                        .name("name").value(name)
+                        .endObject();
+            }
+            if (rows != 1) w.endArray();
+            w.name("@attr").beginObject()
+                    .name("user").value(user.name())
+                    .name("totalPages").value(String.valueOf(totalPages))
+                    .name("page").value(String.valueOf(page))
+                    .name("perPage").value(String.valueOf(limit))
+                    .name("total").value(String.valueOf(total))
+                    .endObject();
+            w.endObject().endObject();
+        });
+    }
+
+    // -----------------------------
+    // artist.getinfo / artist.gettopalbums / track.getinfo
+    // -----------------------------
+
+    /** Like the real thing these days: artist images are always the placeholder star. */
+    static String artistInfo(Catalog catalog, int artist) {
+        String name = catalog.artist(artist);
+        return json(w -> {
+            w.beginObject().name("artist").beginObject()
+                    .name("name").value(name)
+                    .name("mbid").value(catalog.mbid(artist))
+                    .name("url").value(artistUrl(name))
+                    .name("image");
+            writeImages(w, NO_IMAGE, null);
+            w.name("streamable").value("0")
+                    .name("ontour").value("0")
+                    .name("stats").beginObject()
+                    .name("listeners").value(String.valueOf(catalog.listeners(artist)))
+                    .name("playcount").value(String.valueOf(catalog.playcount(artist)))
+                    .endObject()
+                    .name("similar").beginObject().name("artist").beginArray().endArray().endObject()
+                    .name("tags").beginObject().name("tag").beginArray().endArray().endObject()
+                    .name("bio").beginObject()
+                    .name("summary").value(name + " is a synthetic artist. <a href=\"" + artistUrl(name) + "\">Read more on Last.fm</a>")
+                    .endObject();
+            w.endObject().endObject();
+        });
+    }
+
+    /** Any title by a known artist is a track of theirs, as long as every synthetic track. */
+    static String trackInfo(Catalog catalog, int artist, String track) {
+        String name = catalog.artist(artist);
+        return json(w -> w.beginObject().name("track").beginObject()
+                .name("name").value(track)
+                .name("url").value(artistUrl(name) + "/_/" + urlPart(track))
+                .name("duration").value(String.valueOf(SyntheticUser.TRACK_SECONDS * 1000))
+                .name("artist").beginObject()
+                .name("name").value(name)
+                .name("mbid").value(catalog.mbid(artist))
+                .name("url").value(artistUrl(name))
+                .endObject()
+                .endObject().endObject());
+    }
+
+    static String artistTopAlbums(Catalog catalog, int artist, int limit, int page) {
+        String name = catalog.artist(artist);
+        int totalPages = Math.max(1, (Catalog.ALBUMS_PER_ARTIST + limit - 1) / limit);
+        int first = (page - 1) * limit;
+        int last = Math.min(Catalog.ALBUMS_PER_ARTIST, first + limit);
+        int rows = Math.max(0, last - first);
+
+        return json(w -> {
+            w.beginObject().name("topalbums").beginObject().name("album");
+            if (rows != 1) w.beginArray();
+            for (int album = first; album < last; album++) {
+                w.beginObject()
+                        .name("name").value(catalog.album(artist, album))
+                        .name("playcount").value(String.valueOf(catalog.playcount(artist) / (2L << album)))
+                        .name("url").value(artistUrl(name) + "/" + urlPart(catalog.album(artist, album)))
+                        .name("artist").beginObject()
+                        .name("name").value(name)
+                        .name("mbid").value(catalog.mbid(artist))
+                        .name("url").value(artistUrl(name))
+                        .endObject()
+                        .name("image");
+                writeImages(w, null, new int[]{artist, album}, catalog);
+                w.endObject();
+            }
+            if (rows != 1) w.endArray();
+            w.name("@attr").beginObject()
+                    .name("artist").value(name)
+                    .name("page").value(String.valueOf(page))
+                    .name("perPage").value(String.valueOf(limit))
+                    .name("totalPages").value(String.valueOf(totalPages))
+                    .name("total").value(String.valueOf(Catalog.ALBUMS_PER_ARTIST))
+                    .endObject();
+            w.endObject().endObject();
+        });
+    }
+
+    // -----------------------------
+    // Pieces
+    // -----------------------------
+    private static void writeImages(JsonWriter w, String pattern, int[] album) throws IOException {
+        writeImages(w, pattern, album, null);
+    }
+
+    /** Either the pattern (%s = size path) or the album's cover, in all four sizes. */
+    private static void writeImages(JsonWriter w, String pattern, int[] album, Catalog c) throws IOException {
+        w.beginArray();
+        for (String[] size : SIZES) {
+            String url = album != null ? c.albumImage(album[0], album[1], size[1]) : String.format(pattern, size[1]);
+            w.beginObject().name("size").value(size[0]).name("#text").value(url).endObject();
+        }
+        w.endArray();
+    }
+
+    private static String artistUrl(String artist) {
+        return "https://www.last.fm/music/" + urlPart(artist);
+    }
+
+    private static String urlPart(String s) {
+        return s.replace(' ', '+');
+    }
+}
@@ -0,0 +1,79 @@
+package app.lastfm.fake;
+
+/**
+ * One synthetic listener with a history of any size, computed rather than stored.
+ *
+ * Scrobble j (0 = oldest) was played at origin + j * spacing + jitter, so any page or
+ * time window is found arithmetically. The history keeps growing with the wall clock
+ * (a new scrobble every few minutes, with the next one showing as now playing), which
+ * is what delta syncs and pollers need to see. Listening comes in album runs, artists
+ * picked by a per-user permutation of the catalog's popularity curve.
+ */
+final class SyntheticUser {
+
+    static final long SPACING_SECONDS = 210;
+    /** Every track is this long; it shows as now playing for that long before it is scrobbled. */
+    static final long TRACK_SECONDS = 180;
+    private static final long JITTER_MASK = 63;     // < spacing, so play times stay ordered
+    private static final int RUN_LENGTH = 8;        // scrobbles in a row from the same album
+
+    /** What scrobble j was. */
+    record Scrobble(long index, int artist, int album, int track, long playedAt) { }
+
+    private final Catalog catalog;
+    private final String name;
+    private final long seed;
+    private final long origin;
+    private final int stride;
+    private final int offset;
+
+    /** @param history scrobbles already there at createdAt (epoch seconds) */
+    SyntheticUser(Catalog catalog, String name, long history, long createdAt) {
+        this.catalog = catalog;
+        this.name = name;
+        this.seed = Catalog.mix(name.hashCode() * 0x9E3779B97F4A7C15L);
+        this.origin = createdAt - Math.max(0, history) * SPACING_SECONDS;
+        // odd and not a multiple of 5: coprime to the catalog size, so a permutation
+        this.stride = (int) ((seed >>> 8) % 199) * 10 + 1 + 2 * (int) ((seed >>> 4) & 1);
+        this.offset = (int) ((seed >>> 32) % Catalog.ARTISTS);
+    }
+
+    String name() {
+        return name;
+    }
+
+    long playedAt(long j) {
+        return origin + j * SPACING_SECONDS + (Catalog.mix(seed ^ j) & JITTER_MASK);
+    }
+
+    Scrobble scrobble(long j) {
+        long run = j / RUN_LENGTH;
+        long h = Catalog.mix(seed ^ (run * 0xD1B54A32D192ED03L));
+        int rank = catalog.rankFor((h >>> 11) * 0x1.0p-53);
+        int artist = artistAt(rank);
+        int album = (int) Long.remainderUnsigned(h, Catalog.ALBUMS_PER_ARTIST);
+        int track = (int) ((j % RUN_LENGTH + (h >>> 40)) % Catalog.TRACKS_PER_ALBUM);
+        return new Scrobble(j, artist, album, track, playedAt(j));
+    }
+
+    /** Artist id of this user's rank-th favourite. */
+    int artistAt(int rank) {
+        return (int) (((long) rank * stride + offset) % Catalog.ARTISTS);
+    }
+
+    /** Number of scrobbles played at or before t, i.e. the index of the next one. */
+    long countAtOrBefore(long t) {
+        if (t < playedAt(0)) return 0;
+        long j = (t - origin) / SPACING_SECONDS;
+        while (j >= 0 && playedAt(j) > t) j--;
+        while (playedAt(j + 1) <= t) j++;
+        return j + 1;
+    }
+
+    /** The track playing at t, or null between tracks. */
+    Scrobble nowPlaying(long t) {
+        long next = countAtOrBefore(t);
+        Scrobble s = scrobble(next);
+        return s.playedAt() - t <= TRACK_SECONDS ? s : null;
+    }
+}
@@ -0,0 +1,21 @@
+package app.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A monotonically increasing count; cheap to bump from many threads at once. */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,115 @@
+package app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of non-negative longs (durations in nanos, or byte counts):
+ * each power of two is split into four buckets, so a percentile overstates the true value
+ * by at most 25%, in a fixed 2 KB of counters and with a lock-free record().
+ */
+public final class Histogram {
+
+    public enum Unit { NANOS, BYTES }
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB;
+
+    private final Unit unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram(Unit unit) {
+        this.unit = unit;
+    }
+
+    public Unit unit() {
+        return unit;
+    }
+
+    public void record(long value) {
+        if (value < 0) return;
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /** Records the time since startNanos (a System.nanoTime() reading). */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) c[i] = counts.get(i);
+        return new Snapshot(unit, c, sum.sum(), max.get());
+    }
+
+    /** Counts at one moment; two of them subtract to give an interval. */
+    public static final class Snapshot {
+        private final Unit unit;
+        private final long[] counts;
+        private final long sum;
+        private final long max;
+        private final long count;
+
+        Snapshot(Unit unit, long[] counts, long sum, long max) {
+            this.unit = unit;
+            this.counts = counts;
+            this.sum = sum;
+            this.max = max;
+            long n = 0;
+            for (long c : counts) n += c;
+            this.count = n;
+        }
+
+        public Unit unit() { return unit; }
+        public long count() { return count; }
+        public long sum() { return sum; }
+
+        /** Largest value ever recorded (not per interval). */
+        public long max() { return max; }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /** Upper edge of the bucket holding the q-th quantile (0 < q <= 1). */
+        public long percentile(double q) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+
+        /** What was recorded between earlier and this one. */
+        public Snapshot minus(Snapshot earlier) {
+            long[] c = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) c[i] = counts[i] - earlier.counts[i];
+            return new Snapshot(unit, c, sum - earlier.sum, max);
+        }
+    }
+
+    // values 0..3 get exact buckets; above that, 4 per power of two
+    private static int bucketOf(long v) {
+        if (v < SUB) return (int) v;
+        int log = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) ((v >>> (log - SUB_BITS)) & (SUB - 1));
+        return (log - SUB_BITS + 1) * SUB + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int log = bucket / SUB + SUB_BITS - 1;
+        int sub = bucket % SUB;
+        if (log >= 62) return Long.MAX_VALUE;
+        return (1L << log) + ((long) (sub + 1) << (log - SUB_BITS)) - 1;
+    }
+}
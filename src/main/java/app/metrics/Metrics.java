@@ -0,0 +1,89 @@
+package app.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * In-process metrics: counters, histograms and gauges by name.
+ * Names are dotted, most general part first ("lastfm.user.getrecenttracks", "fx.apply").
+ * Everything the app records goes to {@link #global()}, which JMX and the periodic log read.
+ */
+public final class Metrics {
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /** A histogram of durations in nanoseconds. */
+    public Histogram timer(String name) {
+        return histogram(name, Histogram.Unit.NANOS);
+    }
+
+    public Histogram histogram(String name, Histogram.Unit unit) {
+        return histograms.computeIfAbsent(name, k -> new Histogram(unit));
+    }
+
+    /** A value read when asked (e.g. a cache's hit count); replaces any gauge of that name. */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public Map<String, Long> counterValues() {
+        Map<String, Long> out = new TreeMap<>();
+        counters.forEach((k, c) -> out.put(k, c.get()));
+        return out;
+    }
+
+    public Map<String, Long> gaugeValues() {
+        Map<String, Long> out = new TreeMap<>();
+        gauges.forEach((k, g) -> {
+            try {
+                out.put(k, g.getAsLong());
+            } catch (RuntimeException e) {
+                // a gauge whose owner is gone; leave it out
+            }
+        });
+        return out;
+    }
+
+    public Map<String, Histogram.Snapshot> histogramSnapshots() {
+        Map<String, Histogram.Snapshot> out = new TreeMap<>();
+        histograms.forEach((k, h) -> out.put(k, h.snapshot()));
+        return out;
+    }
+
+    // -----------------------------
+    // Allocation
+    // -----------------------------
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean t
+                    && t.isThreadAllocatedMemorySupported() ? t : null;
+
+    /** Bytes allocated by the calling (platform) thread so far; -1 if the JVM can't tell. */
+    public static long threadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Bytes allocated by all threads so far; -1 if the JVM can't tell. */
+    public static long totalAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getTotalThreadAllocatedBytes();
+    }
+
+    /** Records what was allocated since a reading of one of the methods above. */
+    public static void recordAllocation(Histogram h, long before, long after) {
+        if (before >= 0 && after >= before) h.record(after - before);
+    }
+}
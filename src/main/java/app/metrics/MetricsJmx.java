@@ -0,0 +1,65 @@
+package app.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Publishes a {@link Metrics} registry as an MXBean on the platform MBean server. */
+public final class MetricsJmx implements MetricsMXBean {
+
+    public static final String OBJECT_NAME = "app.scrobbledash:type=Metrics";
+
+    private final Metrics metrics;
+
+    private MetricsJmx(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Registers (replacing an earlier registration); failures are logged, not thrown. */
+    public static void register(Metrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(new MetricsJmx(metrics), name);
+        } catch (JMException e) {
+            System.err.println("Metrics MXBean not registered: " + e.getMessage());
+        }
+    }
+
+    public static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException ignored) { }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return metrics.counterValues();
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        return metrics.gaugeValues();
+    }
+
+    @Override
+    public Map<String, Double> getHistograms() {
+        Map<String, Double> out = new TreeMap<>();
+        metrics.histogramSnapshots().forEach((name, s) -> {
+            double scale = s.unit() == Histogram.Unit.NANOS ? 1e6 : 1;
+            out.put(name + ".count", (double) s.count());
+            out.put(name + ".mean", s.mean() / scale);
+            out.put(name + ".p50", s.percentile(0.50) / scale);
+            out.put(name + ".p90", s.percentile(0.90) / scale);
+            out.put(name + ".p99", s.percentile(0.99) / scale);
+            out.put(name + ".max", s.max() / scale);
+        });
+        return out;
+    }
+}
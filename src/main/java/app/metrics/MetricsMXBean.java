@@ -0,0 +1,14 @@
+package app.metrics;
+
+import java.util.Map;
+
+/** What jconsole / VisualVM / JMX exporters see under app.scrobbledash:type=Metrics. */
+public interface MetricsMXBean {
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    /** Per histogram: name.count, name.mean, name.p50, name.p90, name.p99, name.max (ms or bytes). */
+    Map<String, Double> getHistograms();
+}
@@ -0,0 +1,100 @@
+package app.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs one compact line per interval with what changed in it: percentiles of every
+ * histogram that saw values, and the increase of every counter and gauge that moved.
+ * Quiet intervals log nothing. Goes to System.Logger "scrobbledash.metrics" at INFO.
+ */
+public final class MetricsReporter implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger("scrobbledash.metrics");
+
+    private final Metrics metrics;
+    private final long intervalSeconds;
+    private final ScheduledExecutorService timer;
+
+    private Map<String, Long> lastCounters = new HashMap<>();
+    private Map<String, Long> lastGauges = new HashMap<>();
+    private Map<String, Histogram.Snapshot> lastHistograms = new HashMap<>();
+
+    public MetricsReporter(Metrics metrics, Duration every) {
+        this.metrics = metrics;
+        this.intervalSeconds = Math.max(1, every.toSeconds());
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "scrobbledash-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        try {
+            String line = nextLine();
+            if (!line.isEmpty()) LOG.log(System.Logger.Level.INFO, line);
+        } catch (RuntimeException e) {
+            LOG.log(System.Logger.Level.WARNING, "metrics report failed", e);
+        }
+    }
+
+    /** The line for the interval since the previous call (empty if nothing happened). */
+    synchronized String nextLine() {
+        List<String> parts = new ArrayList<>();
+
+        Map<String, Histogram.Snapshot> histograms = metrics.histogramSnapshots();
+        histograms.forEach((name, now) -> {
+            Histogram.Snapshot before = lastHistograms.get(name);
+            Histogram.Snapshot d = before == null ? now : now.minus(before);
+            if (d.count() == 0) return;
+            parts.add(name + " n=" + d.count()
+                    + " p50=" + format(d.percentile(0.50), d.unit())
+                    + " p99=" + format(d.percentile(0.99), d.unit()));
+        });
+
+        Map<String, Long> counters = metrics.counterValues();
+        addIncreases(parts, counters, lastCounters);
+        Map<String, Long> gauges = metrics.gaugeValues();
+        addIncreases(parts, gauges, lastGauges);
+
+        lastHistograms = histograms;
+        lastCounters = counters;
+        lastGauges = gauges;
+        return parts.isEmpty() ? "" : intervalSeconds + "s: " + String.join(" | ", parts);
+    }
+
+    private static void addIncreases(List<String> parts, Map<String, Long> now, Map<String, Long> before) {
+        now.forEach((name, v) -> {
+            long d = v - before.getOrDefault(name, 0L);
+            if (d == 0) return;
+            String amount = name.endsWith(".bytes") ? format(d, Histogram.Unit.BYTES)
+                    : name.endsWith("_ms") ? d + "ms" : String.valueOf(d);
+            parts.add(name + (d > 0 ? " +" : " ") + amount);
+        });
+    }
+
+    static String format(long v, Histogram.Unit unit) {
+        if (unit == Histogram.Unit.BYTES) {
+            if (Math.abs(v) < 1024) return v + "B";
+            if (Math.abs(v) < 1024 * 1024) return String.format(Locale.ROOT, "%.1fKB", v / 1024.0);
+            return String.format(Locale.ROOT, "%.1fMB", v / (1024.0 * 1024));
+        }
+        if (v < 1_000_000) return String.format(Locale.ROOT, "%.2fms", v / 1e6);
+        if (v < 10_000_000_000L) return String.format(Locale.ROOT, "%.0fms", v / 1e6);
+        return String.format(Locale.ROOT, "%.1fs", v / 1e9);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+}
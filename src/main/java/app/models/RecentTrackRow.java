@@ -1,40 +1,81 @@
 package app.models;
 
 import java.time.Instant;
+import java.util.Locale;
 
+/**
+ * One scrobble (or the now-playing track), kept small because a history holds a lot of them:
+ * strings are ids into the {@link RowStrings} of whoever made the row (the store's dictionary,
+ * or the pool of the page it was parsed from) and the time is plain epoch seconds, so a row
+ * is one 48-byte object instead of an object, an Instant and four Strings of its own.
+ */
 public class RecentTrackRow {
-    private final String track;
-    private final String artist;
-    private final String album;
 
-    // what you display in the "When" column (relative or "Now Playing")
-    private final String when;
+    /** {@link #getPlayedAtEpochSecond()} of a row without a time (now playing, or none given). */
+    public static final long NO_TIME = Long.MIN_VALUE;
 
-    private final boolean nowPlaying;
+    private final RowStrings strings;
+    private final int track;
+    private final int artist;
+    private final int album;
+    // album art URL (can be empty)
+    private final int imageUrl;
 
     // raw time for relative updates
-    private final Instant playedAt;
+    private final long playedAt;
 
-    // album art URL (can be empty)
-    private final String imageUrl;
+    private final boolean nowPlaying;
 
-    public RecentTrackRow(String track, String artist, String album,
-                          String when, boolean nowPlaying,
-                          Instant playedAt, String imageUrl) {
+    /**
+     * A row whose strings go into the pool of the batch it belongs to.
+     * @param playedAt epoch seconds, or {@link #NO_TIME}
+     */
+    public RecentTrackRow(StringPool pool, String track, String artist, String album,
+                          boolean nowPlaying, long playedAt, String imageUrl) {
+        this(pool, pool.intern(track), pool.intern(artist), pool.intern(album), pool.intern(imageUrl),
+                nowPlaying, playedAt);
+    }
+
+    /** A row over strings that are already there, e.g. a store record's dictionary ids. */
+    public RecentTrackRow(RowStrings strings, int track, int artist, int album, int imageUrl,
+                          boolean nowPlaying, long playedAt) {
+        this.strings = strings;
         this.track = track;
         this.artist = artist;
         this.album = album;
-        this.when = when;
+        this.imageUrl = imageUrl;
         this.nowPlaying = nowPlaying;
         this.playedAt = playedAt;
-        this.imageUrl = imageUrl;
     }
 
-    public String getTrack() { return track; }
-    public String getArtist() { return artist; }
-    public String getAlbum() { return album; }
-    public String getWhen() { return when; }
+    /**
+     * What two scrobbles of the same second must share to be one: the title, case aside
+     * (a play whose title was re-tagged to another case is still that play). The history and the store
+     * both dedup by this.
+     */
+    public static String dedupTitle(String track) {
+        return track == null ? "" : track.toLowerCase(Locale.ROOT);
+    }
+
+    public String getTrack() { return strings.get(track); }
+    public String getArtist() { return strings.get(artist); }
+    public String getAlbum() { return strings.get(album); }
     public boolean isNowPlaying() { return nowPlaying; }
-    public Instant getPlayedAt() { return playedAt; }
-    public String getImageUrl() { return imageUrl; }
+    public String getImageUrl() { return strings.get(imageUrl); }
+
+    /** What the "When" column shows before its cell renders the relative time. */
+    public String getWhen() { return nowPlaying ? "Now Playing" : "—"; }
+
+    /** Allocates; loops should use {@link #getPlayedAtEpochSecond()}. */
+    public Instant getPlayedAt() { return playedAt == NO_TIME ? null : Instant.ofEpochSecond(playedAt); }
+
+    public long getPlayedAtEpochSecond() { return playedAt; }
+    public boolean hasPlayedAt() { return playedAt != NO_TIME; }
+
+    // Ids into strings(): equal ids in the same strings(), equal strings
+    public RowStrings strings() { return strings; }
+    public int getTrackId() { return track; }
+    public int getArtistId() { return artist; }
+    public int getAlbumId() { return album; }
+    public int getImageUrlId() { return imageUrl; }
 }
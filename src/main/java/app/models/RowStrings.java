@@ -0,0 +1,12 @@
+package app.models;
+
+/**
+ * Where a row's strings live. Rows keep dense int ids and look the strings up here: in the
+ * store's dictionary for rows read from the store, in a {@link StringPool} for rows built
+ * from a response or a file. Ids only mean something within one RowStrings.
+ */
+public interface RowStrings {
+
+    /** The string with this id; "" for an id it doesn't have. */
+    String get(int id);
+}
@@ -0,0 +1,65 @@
+package app.models;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Strings of the rows built from one response (or one file), each kept once.
+ *
+ * The parser hands over a fresh copy of every artist, album, title and image URL; rows of a
+ * page keep the id and repeats are garbage straight away. Once the batch is complete,
+ * {@link #freeze()} drops the lookup map, leaving just the strings. A pool lives exactly as
+ * long as the last row that uses it, so nothing here grows for the life of the process.
+ *
+ * One thread adds strings; rows handed to other threads (through a future, a queue...) can
+ * read them from any thread.
+ */
+public final class StringPool implements RowStrings {
+
+    // null once frozen
+    private HashMap<String, Integer> ids = new HashMap<>();
+
+    // entries are written before they are published
+    private volatile String[] byId = new String[64];
+    private volatile int size;
+
+    public StringPool() {
+        intern("");   // id 0: empty / missing
+    }
+
+    /** Id for the string, adding it if it's new. Null is stored as "". */
+    public int intern(String s) {
+        if (s == null || s.isEmpty()) s = "";
+        if (ids == null) throw new IllegalStateException("string pool is frozen");
+        Integer id = ids.get(s);
+        return id != null ? id : add(s);
+    }
+
+    /** No more strings: drops the lookup map and spare capacity; rows go on reading. */
+    public void freeze() {
+        ids = null;
+        byId = Arrays.copyOf(byId, size);
+    }
+
+    @Override
+    public String get(int id) {
+        // size first: the array published before it is at least that long
+        if (id < 0 || id >= size) return "";
+        return byId[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String s) {
+        int id = size;
+        String[] arr = byId;
+        if (id == arr.length) arr = Arrays.copyOf(arr, arr.length * 2);
+        arr[id] = s;
+        byId = arr;
+        size = id + 1;
+        ids.put(s, id);
+        return id;
+    }
+}
@@ -1,17 +1,24 @@
 package app.models;
 
+/** One chart row; names and URLs are ids into the {@link StringPool} of its chart. */
 public class TopArtistRow {
-    private final String artist;
+
+    private final StringPool strings;
+    private final int artist;
     private final int playcount;
-    private final String imageUrl;
+    private final int imageUrl;
 
-    public TopArtistRow(String artist, int playcount, String imageUrl) {
-        this.artist = artist;
+    public TopArtistRow(StringPool pool, String artist, int playcount, String imageUrl) {
+        this.strings = pool;
+        this.artist = pool.intern(artist);
         this.playcount = playcount;
-        this.imageUrl = imageUrl;
+        this.imageUrl = pool.intern(imageUrl);
     }
 
-    public String getArtist() { return artist; }
+    public String getArtist() { return strings.get(artist); }
     public int getPlaycount() { return playcount; }
-    public String getImageUrl() { return imageUrl; }
+    public String getImageUrl() { return strings.get(imageUrl); }
+
+    public int getArtistId() { return artist; }
+    public int getImageUrlId() { return imageUrl; }
 }
@@ -0,0 +1,316 @@
+package app.search;
+
+import app.charts.TimeWindow;
+import app.metrics.Histogram;
+import app.metrics.Metrics;
+import app.store.ScrobbleStore;
+import app.store.StringDictionary;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Type-ahead search over every scrobble in the local {@link ScrobbleStore}: the records
+ * whose artist, album or track name matches each word of the query, within a
+ * {@link TimeWindow}, newest first.
+ *
+ * A query word becomes the set of dictionary ids whose names match it ({@link TermIndex}).
+ * Every id has a posting list of the records that use it, in time order, so a window is a
+ * binary search away. The word with the fewest postings drives the query, and each of its
+ * records is checked against the other words' id sets. Two ways to do that:
+ * - merge the postings, newest first, when they are few or the words are rare
+ * - walk all records newest first, when the words are common and the first page of hits
+ *   comes quickly
+ * Whichever is estimated to touch fewer records wins. Either way a query stops at its
+ * limit, so it costs about the same however long the history is.
+ *
+ * The index holds the time and the three name ids of every record, its place in time order,
+ * and the postings: about 36 bytes per scrobble. New records are picked up by append index,
+ * like {@link app.charts.LocalCharts}. Thread-safe.
+ */
+public final class ScrobbleSearch {
+
+    /** Store record indexes, newest first; {@code more} if the limit cut the list short. */
+    public record Hits(int[] records, boolean more) {
+        static final Hits NONE = new Hits(new int[0], false);
+    }
+
+    private static final Histogram QUERY_TIME = Metrics.global().timer("search.query");
+
+    private final ScrobbleStore store;
+    private final StringDictionary strings;
+    private final TermIndex terms = new TermIndex();
+
+    private long seen;               // store records indexed
+    private int count;
+    private long[] playedAt = new long[1024];
+    private int[] names = new int[3 * 1024];   // track, artist, album id per record
+    private int[] byTime = new int[1024];      // record indexes, oldest first
+
+    // per dictionary id: the records naming it, oldest first
+    private int[][] postings = new int[1024][];
+    private int[] postingSizes = new int[1024];
+
+    public ScrobbleSearch(ScrobbleStore store) {
+        this.store = store;
+        this.strings = store.strings();
+    }
+
+    // -----------------------------
+    // Query
+    // -----------------------------
+
+    /**
+     * At most limit records matching every word of the query (prefixes for one or two
+     * letters, anywhere in a word for more), newest first. An empty query matches nothing.
+     */
+    public synchronized Hits search(String query, TimeWindow window, int limit) {
+        long start = System.nanoTime();
+        catchUp();
+
+        String[] words = TermIndex.words(TermIndex.fold(query));
+        if (words.length == 0 || count == 0 || limit <= 0) return Hits.NONE;
+
+        BitSet[] matching = new BitSet[words.length];
+        TermIndex.Ids[] ids = new TermIndex.Ids[words.length];
+        int driver = 0;
+        long driverPostings = Long.MAX_VALUE;
+        for (int w = 0; w < words.length; w++) {
+            matching[w] = new BitSet();
+            ids[w] = new TermIndex.Ids();
+            if (terms.match(words[w], matching[w], ids[w]) == 0) return Hits.NONE;
+            long total = 0;
+            for (int i = 0; i < ids[w].size; i++) total += postingSizes[ids[w].ids[i]];
+            if (total < driverPostings) {
+                driver = w;
+                driverPostings = total;
+            }
+        }
+
+        long from = window.fromUts(Instant.now().getEpochSecond());
+        long to = window.toUts();
+        int lo = firstAtOrAfter(byTime, count, from);
+        int hi = firstAtOrAfter(byTime, count, to);
+        if (lo >= hi) return Hits.NONE;
+
+        // records each way is expected to touch: a walk until limit hits at the driver's density,
+        // or a binary search per posting list plus a heap step per hit
+        long range = hi - lo;
+        long walk = Math.min(range, (long) ((limit + 1) * ((double) count / Math.max(1, driverPostings))));
+        int lists = ids[driver].size;
+        long merge = lists * (long) (64 - Long.numberOfLeadingZeros(count)) + (limit + 1L) * (32 - Integer.numberOfLeadingZeros(lists));
+
+        Hits hits = merge < walk
+                ? merge(ids[driver], matching, driver, from, to, limit)
+                : walk(lo, hi, matching, limit);
+        QUERY_TIME.recordSince(start);
+        return hits;
+    }
+
+    /** Time order, newest first, keeping the records every word matches. */
+    private Hits walk(int lo, int hi, BitSet[] matching, int limit) {
+        int[] out = new int[Math.min(limit, hi - lo)];
+        int n = 0;
+        for (int i = hi - 1; i >= lo; i--) {
+            int record = byTime[i];
+            if (!matchesAll(record, matching, -1)) continue;
+            if (n == out.length) return new Hits(out, true);
+            out[n++] = record;
+        }
+        return new Hits(Arrays.copyOf(out, n), false);
+    }
+
+    /** The driver's posting lists merged newest first (a heap of cursors), keeping records the other words match. */
+    private Hits merge(TermIndex.Ids lists, BitSet[] matching, int driver, long from, long to, int limit) {
+        int[][] list = new int[lists.size][];
+        int[] pos = new int[lists.size];
+        int[] floor = new int[lists.size];
+        int[] heap = new int[lists.size];
+        int size = 0;
+        for (int i = 0; i < lists.size; i++) {
+            int id = lists.ids[i];
+            int[] p = postings[id];
+            int top = firstAtOrAfter(p, postingSizes[id], to) - 1;
+            int bottom = firstAtOrAfter(p, postingSizes[id], from);
+            if (top < bottom) continue;
+            list[i] = p;
+            pos[i] = top;
+            floor[i] = bottom;
+            heap[size] = i;
+            siftUp(heap, size++, list, pos);
+        }
+
+        int[] out = new int[Math.min(limit, 1024)];
+        int n = 0;
+        int last = -1;
+        while (size > 0) {
+            int c = heap[0];
+            int record = list[c][pos[c]];
+            if (--pos[c] < floor[c]) heap[0] = heap[--size];
+            siftDown(heap, size, list, pos);
+
+            // a record naming two matching ids comes out of both lists, one after the other
+            if (record == last) continue;
+            last = record;
+            if (!matchesAll(record, matching, driver)) continue;
+            if (n == limit) return new Hits(out, true);
+            if (n == out.length) out = Arrays.copyOf(out, Math.min(limit, n * 2));
+            out[n++] = record;
+        }
+        return new Hits(n == out.length ? out : Arrays.copyOf(out, n), false);
+    }
+
+    private boolean matchesAll(int record, BitSet[] matching, int skip) {
+        int at = record * 3;
+        for (int w = 0; w < matching.length; w++) {
+            if (w == skip) continue;
+            BitSet m = matching[w];
+            if (!m.get(names[at]) && !m.get(names[at + 1]) && !m.get(names[at + 2])) return false;
+        }
+        return true;
+    }
+
+    // max-heap of cursors by the time order of the record each points at
+    private void siftUp(int[] heap, int i, int[][] list, int[] pos) {
+        int c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!after(list[c][pos[c]], list[heap[parent]][pos[heap[parent]]])) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = c;
+    }
+
+    private void siftDown(int[] heap, int size, int[][] list, int[] pos) {
+        if (size == 0) return;
+        int c = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && after(list[heap[child + 1]][pos[heap[child + 1]]], list[heap[child]][pos[heap[child]]])) {
+                child++;
+            }
+            if (!after(list[heap[child]][pos[heap[child]]], list[c][pos[c]])) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = c;
+    }
+
+    /** Time order: played later, or at the same second but appended later. */
+    private boolean after(int a, int b) {
+        long ta = playedAt[a], tb = playedAt[b];
+        return ta != tb ? ta > tb : a > b;
+    }
+
+    /** First position in a time-ordered record list played at or after uts. */
+    private int firstAtOrAfter(int[] records, int n, long uts) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (playedAt[records[mid]] < uts) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // -----------------------------
+    // Indexing
+    // -----------------------------
+
+    /**
+     * Indexes what was appended to the store since the last call. Called by {@link #search};
+     * call it after appending (and once up front, off the FX thread) to keep the work off
+     * the query path.
+     */
+    public synchronized void catchUp() {
+        int before = count;
+        seen = store.scanAppended(seen, (idx, ts, track, artist, album, image) -> {
+            int r = (int) idx;
+            ensureRecords(r + 1);
+            playedAt[r] = ts;
+            names[r * 3] = track;
+            names[r * 3 + 1] = artist;
+            names[r * 3 + 2] = album;
+            indexName(track);
+            indexName(artist);
+            indexName(album);
+            count = r + 1;
+            return true;
+        });
+        if (count == before) return;
+
+        int[] added = new int[count - before];
+        for (int i = 0; i < added.length; i++) added[i] = before + i;
+        sortByTime(added);
+
+        byTime = mergeByTime(byTime, before, added, added.length, count);
+
+        // the new records per name, in time order, then one merge per posting list
+        Map<Integer, TermIndex.Ids> perName = new HashMap<>();
+        for (int r : added) {
+            int at = r * 3;
+            for (int f = 0; f < 3; f++) {
+                int id = names[at + f];
+                // a record naming one string twice (artist = album) is posted once
+                if ((f >= 1 && names[at] == id) || (f == 2 && names[at + 1] == id)) continue;
+                perName.computeIfAbsent(id, k -> new TermIndex.Ids()).add(r);
+            }
+        }
+        for (Map.Entry<Integer, TermIndex.Ids> e : perName.entrySet()) {
+            int id = e.getKey();
+            TermIndex.Ids recs = e.getValue();
+            ensureNames(id + 1);
+            int size = postingSizes[id];
+            postings[id] = size == 0 ? recs.ids : mergeByTime(postings[id], size, recs.ids, recs.size, size + recs.size);
+            postingSizes[id] = size + recs.size;
+        }
+    }
+
+    private void indexName(int id) {
+        if (!terms.contains(id)) terms.add(id, strings.get(id));
+    }
+
+    /** a[0, na) and b[0, nb), both in time order, as one array of at least total entries. */
+    private int[] mergeByTime(int[] a, int na, int[] b, int nb, int total) {
+        if (na == 0 || after(b[0], a[na - 1])) {
+            // all newer: the usual case, new scrobbles
+            int[] out = a.length >= total ? a : Arrays.copyOf(a, Math.max(total, a.length * 3 / 2));
+            System.arraycopy(b, 0, out, na, nb);
+            return out;
+        }
+        int[] out = new int[Math.max(total, a.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < na && j < nb) out[k++] = after(a[i], b[j]) ? b[j++] : a[i++];
+        while (i < na) out[k++] = a[i++];
+        while (j < nb) out[k++] = b[j++];
+        return out;
+    }
+
+    private void sortByTime(int[] records) {
+        // (playedAt << 27 | index) sorts by time without a comparator; store indexes are below 2^27
+        long[] keys = new long[records.length];
+        for (int i = 0; i < records.length; i++) keys[i] = (playedAt[records[i]] << 27) | records[i];
+        Arrays.sort(keys);
+        for (int i = 0; i < records.length; i++) records[i] = (int) (keys[i] & ((1 << 27) - 1));
+    }
+
+    private void ensureRecords(int n) {
+        if (n <= playedAt.length) return;
+        int cap = Math.max(n, playedAt.length * 2);
+        playedAt = Arrays.copyOf(playedAt, cap);
+        names = Arrays.copyOf(names, cap * 3);
+    }
+
+    private void ensureNames(int n) {
+        if (n <= postings.length) return;
+        int cap = Math.max(n, postings.length * 2);
+        postings = Arrays.copyOf(postings, cap);
+        postingSizes = Arrays.copyOf(postingSizes, cap);
+    }
+}
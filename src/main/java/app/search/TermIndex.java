@@ -0,0 +1,123 @@
+package app.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Which dictionary strings (artist, album and track names) contain a search term.
+ *
+ * Names are folded (lower case, accents and punctuation dropped) and split into words. Every
+ * word posts its id under its 1- and 2-character prefixes and under each of its trigrams. A
+ * term of one or two characters matches the words it starts, straight from the prefix
+ * postings. A longer term matches anywhere inside a word: the candidates are the ids under
+ * its rarest trigram, each checked against the folded name. Not thread-safe; the owner locks.
+ */
+final class TermIndex {
+
+    /** Growable list of ids. */
+    static final class Ids {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    private static final Ids NONE = new Ids();
+
+    // folded name by dictionary id; null = not indexed
+    private String[] folded = new String[1024];
+    private final Map<Long, Ids> grams = new HashMap<>();
+
+    boolean contains(int id) {
+        return id < folded.length && folded[id] != null;
+    }
+
+    void add(int id, String name) {
+        if (id >= folded.length) folded = Arrays.copyOf(folded, Math.max(id + 1, folded.length * 2));
+        String f = fold(name);
+        folded[id] = f;
+        for (String word : words(f)) {
+            post(prefixGram(word, 1), id);
+            if (word.length() >= 2) post(prefixGram(word, 2), id);
+            for (int i = 0; i + 3 <= word.length(); i++) post(trigram(word, i), id);
+        }
+    }
+
+    private void post(long gram, int id) {
+        Ids ids = grams.computeIfAbsent(gram, g -> new Ids());
+        // a gram that appears twice in one name is posted once
+        if (ids.size == 0 || ids.ids[ids.size - 1] != id) ids.add(id);
+    }
+
+    /**
+     * Ids of the names the (folded, single-word) term matches, also set in the bitset.
+     * @return how many there are
+     */
+    int match(String term, BitSet out, Ids outIds) {
+        if (term.length() <= 2) {
+            Ids ids = grams.getOrDefault(prefixGram(term, term.length()), NONE);
+            for (int i = 0; i < ids.size; i++) {
+                out.set(ids.ids[i]);
+                outIds.add(ids.ids[i]);
+            }
+            return ids.size;
+        }
+
+        Ids rarest = null;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            Ids ids = grams.get(trigram(term, i));
+            if (ids == null) return 0;
+            if (rarest == null || ids.size < rarest.size) rarest = ids;
+        }
+        int found = 0;
+        for (int i = 0; i < rarest.size; i++) {
+            int id = rarest.ids[i];
+            if (!folded[id].contains(term)) continue;
+            out.set(id);
+            outIds.add(id);
+            found++;
+        }
+        return found;
+    }
+
+    // -----------------------------
+    // Folding
+    // -----------------------------
+
+    /** Lower case, without accents; anything but letters and digits becomes a space. */
+    static String fold(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String d = Normalizer.normalize(s, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(d.length());
+        for (int i = 0; i < d.length(); i++) {
+            char c = d.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            sb.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ');
+        }
+        return sb.toString();
+    }
+
+    /** The words of a folded string. */
+    static String[] words(String folded) {
+        String t = folded.strip();
+        return t.isEmpty() ? new String[0] : t.split(" +");
+    }
+
+    // chars are 16 bits: three fit below bit 48; prefixes are told apart by bits 48 and up
+    private static long trigram(String s, int at) {
+        return ((long) s.charAt(at) << 32) | ((long) s.charAt(at + 1) << 16) | s.charAt(at + 2);
+    }
+
+    private static long prefixGram(String word, int length) {
+        long gram = (long) (1 + length) << 48;
+        if (length >= 1) gram |= (long) word.charAt(0) << 16;
+        if (length >= 2) gram |= word.charAt(1);
+        return gram;
+    }
+}
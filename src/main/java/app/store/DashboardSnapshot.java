@@ -0,0 +1,181 @@
+package app.store;
+
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+import app.models.TopArtistRow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * What the dashboard last showed (recent scrobbles, top artists with their resolved icon
+ * URLs), kept so the next start can show it on the first frame, before any request is
+ * answered.
+ *
+ * The file is small and binary: a header, each distinct string once, then the rows as
+ * indexes into those strings, then a CRC32 of everything before it. It's replaced
+ * atomically; a file that is missing, of another version or damaged reads as null.
+ */
+public final class DashboardSnapshot {
+
+    private static final int MAGIC = 0x5344534E; // "SDSN"
+    private static final int VERSION = 1;
+    // far more than a dashboard holds; a bigger count means a damaged file
+    private static final int MAX_COUNT = 1 << 20;
+
+    public final String username;
+    public final long savedAtMillis;
+    /** Newest first, without a now-playing row. */
+    public final List<RecentTrackRow> recent;
+    /** Image URLs are the icons the table showed, not necessarily the API's. */
+    public final List<TopArtistRow> topArtists;
+
+    public DashboardSnapshot(String username, long savedAtMillis,
+                             List<RecentTrackRow> recent, List<TopArtistRow> topArtists) {
+        this.username = username;
+        this.savedAtMillis = savedAtMillis;
+        this.recent = List.copyOf(recent);
+        this.topArtists = List.copyOf(topArtists);
+    }
+
+    // -----------------------------
+    // Write
+    // -----------------------------
+
+    public void write(Path file) throws IOException {
+        // the string table: every distinct string once, in first-use order
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        int[] recentIds = new int[recent.size() * 4];
+        for (int i = 0; i < recent.size(); i++) {
+            RecentTrackRow r = recent.get(i);
+            recentIds[i * 4] = idOf(r.getTrack(), ids, strings);
+            recentIds[i * 4 + 1] = idOf(r.getArtist(), ids, strings);
+            recentIds[i * 4 + 2] = idOf(r.getAlbum(), ids, strings);
+            recentIds[i * 4 + 3] = idOf(r.getImageUrl(), ids, strings);
+        }
+        int[] artistIds = new int[topArtists.size() * 2];
+        for (int i = 0; i < topArtists.size(); i++) {
+            TopArtistRow a = topArtists.get(i);
+            artistIds[i * 2] = idOf(a.getArtist(), ids, strings);
+            artistIds[i * 2 + 1] = idOf(a.getImageUrl(), ids, strings);
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            CheckedOutputStream checked = new CheckedOutputStream(raw, new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(savedAtMillis);
+            out.writeUTF(username == null ? "" : username);
+
+            out.writeInt(strings.size());
+            for (String s : strings) out.writeUTF(s);
+
+            out.writeInt(recent.size());
+            for (int i = 0; i < recent.size(); i++) {
+                for (int f = 0; f < 4; f++) out.writeInt(recentIds[i * 4 + f]);
+                out.writeLong(recent.get(i).getPlayedAtEpochSecond());
+            }
+
+            out.writeInt(topArtists.size());
+            for (int i = 0; i < topArtists.size(); i++) {
+                out.writeInt(artistIds[i * 2]);
+                out.writeInt(artistIds[i * 2 + 1]);
+                out.writeInt(topArtists.get(i).getPlaycount());
+            }
+
+            out.flush();
+            // not part of the checksum
+            new DataOutputStream(raw).writeLong(checked.getChecksum().getValue());
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int idOf(String s, Map<String, Integer> ids, List<String> strings) {
+        String key = s == null ? "" : s;
+        return ids.computeIfAbsent(key, k -> {
+            strings.add(k);
+            return strings.size() - 1;
+        });
+    }
+
+    // -----------------------------
+    // Read
+    // -----------------------------
+
+    /** @return the snapshot, or null if there is none (or none this version can use, or it's damaged) */
+    public static DashboardSnapshot read(Path file) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file))) {
+            CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            long savedAt = in.readLong();
+            String username = in.readUTF();
+
+            int k = count(in);
+            if (k < 0) return null;
+            StringPool pool = new StringPool();
+            int[] ids = new int[k];
+            for (int i = 0; i < ids.length; i++) ids[i] = pool.intern(in.readUTF());
+
+            int n = count(in);
+            if (n < 0) return null;
+            List<RecentTrackRow> recent = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int track = ids[in.readInt()];
+                int artist = ids[in.readInt()];
+                int album = ids[in.readInt()];
+                int image = ids[in.readInt()];
+                recent.add(new RecentTrackRow(pool, track, artist, album, image, false, in.readLong()));
+            }
+
+            int m = count(in);
+            if (m < 0) return null;
+            List<TopArtistRow> topArtists = new ArrayList<>(m);
+            for (int i = 0; i < m; i++) {
+                String artist = pool.get(ids[in.readInt()]);
+                String image = pool.get(ids[in.readInt()]);
+                topArtists.add(new TopArtistRow(pool, artist, in.readInt(), image));
+            }
+
+            pool.freeze();
+
+            long expected = checked.getChecksum().getValue();
+            if (new DataInputStream(raw).readLong() != expected) return null;
+            return new DashboardSnapshot(username, savedAt, recent, topArtists);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException | UTFDataFormatException | ArrayIndexOutOfBoundsException e) {
+            // damaged before the checksum could tell
+            return null;
+        }
+    }
+
+    /** -1 if the count can't be right. */
+    private static int count(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        return n <= MAX_COUNT ? n : -1;
+    }
+}
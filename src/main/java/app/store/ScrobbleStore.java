@@ -0,0 +1,318 @@
+package app.store;
+
+import app.models.RecentTrackRow;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Local append-only scrobble log.
+ *
+ * scrobbles.dat is memory-mapped: a 32-byte header followed by fixed 24-byte records
+ * (playedAt epoch second, then track / artist / album / image ids from strings.dat).
+ * A sparse index keeps min/max playedAt per block of {@value #BLOCK} records, so range
+ * scans skip whole blocks even when the backfill appended history out of order.
+ * Only the dictionary and the block index are on the heap.
+ */
+public class ScrobbleStore implements AutoCloseable {
+
+    public static final int RECORD_BYTES = 24;
+    static final int BLOCK = 256;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int MAGIC = 0x53445331; // "SDS1"
+    private static final int VERSION = 1;
+    private static final int OFF_COUNT = 8;
+    private static final long INITIAL_CAPACITY = 64 * 1024;
+
+    // a 2 GB mapping holds < 2^27 records
+    private static final int INDEX_BITS = 27;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    /** Visits one record; return false to stop the scan. */
+    public interface RecordVisitor {
+        boolean visit(long index, long playedAt, int track, int artist, int album, int image);
+    }
+
+    private final FileChannel channel;
+    private final StringDictionary strings;
+
+    private volatile MappedByteBuffer map;
+    private long capacity;       // records that fit in the current mapping
+    private volatile long count;
+
+    // sparse index; entries for a block are written before count covers it
+    private volatile long[] blockMin = new long[64];
+    private volatile long[] blockMax = new long[64];
+    private volatile long newestPlayedAt;
+    private volatile long oldestPlayedAt = Long.MAX_VALUE;
+
+    private ScrobbleStore(FileChannel channel, StringDictionary strings) {
+        this.channel = channel;
+        this.strings = strings;
+    }
+
+    public static ScrobbleStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        StringDictionary strings = StringDictionary.open(dir.resolve("strings.dat"));
+        FileChannel ch = FileChannel.open(dir.resolve("scrobbles.dat"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ScrobbleStore store = new ScrobbleStore(ch, strings);
+        store.init();
+        return store;
+    }
+
+    private void init() throws IOException {
+        long fileSize = channel.size();
+        long storedCount = 0;
+        if (fileSize >= HEADER_BYTES) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a scrobble store (or unsupported version)");
+            }
+            storedCount = header.getLong(OFF_COUNT);
+        }
+
+        // trust the file length over the header if a crash left them disagreeing
+        long fitting = Math.max(0, (fileSize - HEADER_BYTES) / RECORD_BYTES);
+        long recovered = Math.min(storedCount, fitting);
+
+        remap(Math.max(INITIAL_CAPACITY, recovered * 2));
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+
+        for (long i = 0; i < recovered; i++) {
+            long ts = map.getLong(offset(i));
+            indexRecord(i, ts);
+        }
+        map.putLong(OFF_COUNT, recovered);
+        count = recovered;
+    }
+
+    // -----------------------------
+    // Writes
+    // -----------------------------
+
+    /**
+     * Appends a scrobble. Now-playing rows, rows without a timestamp and scrobbles
+     * already in the store (same playedAt + track, case aside: {@link RecentTrackRow#dedupTitle})
+     * are skipped.
+     * @return true if a record was written
+     */
+    public synchronized boolean append(RecentTrackRow row) throws IOException {
+        if (row == null || row.isNowPlaying() || !row.hasPlayedAt()) return false;
+        long ts = row.getPlayedAtEpochSecond();
+        // newer than everything stored can't be a duplicate; skip the lookup
+        if (ts <= newestPlayedAt && contains(ts, row.getTrack())) return false;
+
+        int track, artist, album, image;
+        if (row.strings() == strings) {
+            // read from this store: its ids already are ours
+            track = row.getTrackId();
+            artist = row.getArtistId();
+            album = row.getAlbumId();
+            image = row.getImageUrlId();
+        } else {
+            track = strings.intern(row.getTrack());
+            artist = strings.intern(row.getArtist());
+            album = strings.intern(row.getAlbum());
+            image = strings.intern(row.getImageUrl());
+        }
+
+        long i = count;
+        if (i >= capacity) remap(capacity * 2);
+
+        int off = offset(i);
+        MappedByteBuffer m = map;
+        m.putLong(off, ts);
+        m.putInt(off + 8, track);
+        m.putInt(off + 12, artist);
+        m.putInt(off + 16, album);
+        m.putInt(off + 20, image);
+
+        indexRecord(i, ts);
+        m.putLong(OFF_COUNT, i + 1);
+        count = i + 1;
+        return true;
+    }
+
+    /** @return number of records written */
+    public synchronized int appendAll(Collection<RecentTrackRow> rows) throws IOException {
+        int added = 0;
+        for (RecentTrackRow r : rows) {
+            if (append(r)) added++;
+        }
+        return added;
+    }
+
+    /** Forces records and dictionary to disk. */
+    public synchronized void flush() throws IOException {
+        map.force();
+        strings.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+        strings.close();
+    }
+
+    // -----------------------------
+    // Reads
+    // -----------------------------
+    public long size() {
+        return count;
+    }
+
+    /** Newest playedAt in the store (epoch seconds), 0 if empty. */
+    public long newestPlayedAt() {
+        return newestPlayedAt;
+    }
+
+    /** Oldest playedAt in the store (epoch seconds), Long.MAX_VALUE if empty. */
+    public long oldestPlayedAt() {
+        return oldestPlayedAt;
+    }
+
+    public StringDictionary strings() {
+        return strings;
+    }
+
+    /** A scrobble at that second with that title, case aside. */
+    public boolean contains(long playedAt, String track) {
+        int trackId = strings.idOf(track);
+        String title = RecentTrackRow.dedupTitle(track);
+        boolean[] found = {false};
+        scan(playedAt, playedAt + 1, (idx, ts, t, ar, al, im) -> {
+            // the exact title without a lookup; another case of it by comparison
+            if (t == trackId || RecentTrackRow.dedupTitle(strings.get(t)).equals(title)) {
+                found[0] = true;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Visits records with fromUts &lt;= playedAt &lt; toUts in append order.
+     * Blocks whose min/max don't overlap the range are skipped without touching the file.
+     */
+    public void scan(long fromUts, long toUts, RecordVisitor visitor) {
+        long n = count;
+        MappedByteBuffer m = map;
+        long[] mins = blockMin;
+        long[] maxs = blockMax;
+
+        long blocks = (n + BLOCK - 1) / BLOCK;
+        for (int b = 0; b < blocks; b++) {
+            if (maxs[b] < fromUts || mins[b] >= toUts) continue;
+            long start = (long) b * BLOCK;
+            long end = Math.min(n, start + BLOCK);
+            for (long i = start; i < end; i++) {
+                int off = offset(i);
+                long ts = m.getLong(off);
+                if (ts < fromUts || ts >= toUts) continue;
+                if (!visitor.visit(i, ts, m.getInt(off + 8), m.getInt(off + 12), m.getInt(off + 16), m.getInt(off + 20))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits records fromIndex, fromIndex + 1, ... in append order, whatever their playedAt.
+     * Lets a reader that remembers {@link #size()} pick up exactly what was appended since.
+     * @return the index after the last record visited
+     */
+    public long scanAppended(long fromIndex, RecordVisitor visitor) {
+        long n = count;
+        MappedByteBuffer m = map;
+        for (long i = Math.max(0, fromIndex); i < n; i++) {
+            int off = offset(i);
+            if (!visitor.visit(i, m.getLong(off), m.getInt(off + 8), m.getInt(off + 12), m.getInt(off + 16), m.getInt(off + 20))) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Rows in [fromUts, toUts), newest first, at most limit of them (limit &lt;= 0 = all). */
+    public List<RecentTrackRow> range(long fromUts, long toUts, int limit) {
+        // (playedAt << INDEX_BITS | index) sorts by time without boxing
+        long[][] keys = {new long[64]};
+        int[] n = {0};
+        scan(fromUts, toUts, (idx, ts, t, ar, al, im) -> {
+            if (n[0] == keys[0].length) keys[0] = Arrays.copyOf(keys[0], n[0] * 2);
+            keys[0][n[0]++] = (ts << INDEX_BITS) | idx;
+            return true;
+        });
+        long[] sorted = keys[0];
+        Arrays.sort(sorted, 0, n[0]);
+
+        int max = limit > 0 ? Math.min(limit, n[0]) : n[0];
+        List<RecentTrackRow> out = new ArrayList<>(max);
+        for (int i = n[0] - 1; i >= n[0] - max; i--) {
+            out.add(get(sorted[i] & INDEX_MASK));
+        }
+        return out;
+    }
+
+    /** Materializes record i (append order); the row refers to the dictionary, no strings are copied. */
+    public RecentTrackRow get(long index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("record " + index);
+        MappedByteBuffer m = map;
+        int off = offset(index);
+        return new RecentTrackRow(strings,
+                m.getInt(off + 8), m.getInt(off + 12), m.getInt(off + 16), m.getInt(off + 20),
+                false, m.getLong(off));
+    }
+
+    // -----------------------------
+    // Internals
+    // -----------------------------
+    private static int offset(long index) {
+        return (int) (HEADER_BYTES + index * RECORD_BYTES);
+    }
+
+    private void remap(long newCapacity) throws IOException {
+        long bytes = HEADER_BYTES + newCapacity * RECORD_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            // a single mapping tops out at 2 GB (~89M scrobbles)
+            throw new IOException("Scrobble store is full");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        capacity = newCapacity;
+    }
+
+    private void indexRecord(long index, long ts) {
+        int b = (int) (index / BLOCK);
+        long[] mins = blockMin;
+        long[] maxs = blockMax;
+        if (b >= mins.length) {
+            mins = Arrays.copyOf(mins, mins.length * 2);
+            maxs = Arrays.copyOf(maxs, maxs.length * 2);
+        }
+        if (index % BLOCK == 0) {
+            mins[b] = ts;
+            maxs[b] = ts;
+        } else {
+            if (ts < mins[b]) mins[b] = ts;
+            if (ts > maxs[b]) maxs[b] = ts;
+        }
+        blockMin = mins;
+        blockMax = maxs;
+        if (ts > newestPlayedAt) newestPlayedAt = ts;
+        if (ts < oldestPlayedAt) oldestPlayedAt = ts;
+    }
+}
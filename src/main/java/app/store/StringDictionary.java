@@ -0,0 +1,134 @@
+package app.store;
+
+import app.models.RowStrings;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only string &lt;-&gt; int dictionary backed by a file of length-prefixed UTF-8 entries.
+ * Ids are dense (0, 1, 2, ...) and never change, so they can be stored in records and used
+ * as array indexes. Only distinct strings live on the heap.
+ */
+public class StringDictionary implements RowStrings, AutoCloseable {
+
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    // readers go through this without locking; entries are written before they are published
+    private volatile String[] byId = new String[1024];
+    private volatile int size;
+
+    private StringDictionary(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public static StringDictionary open(Path file) throws IOException {
+        StringDictionary dict = new StringDictionary(FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        dict.load(file);
+        return dict;
+    }
+
+    /** Memory-only dictionary (nothing written to disk). */
+    public static StringDictionary inMemory() {
+        return new StringDictionary(null);
+    }
+
+    /**
+     * Reads the entries back; a torn or corrupt tail (a length that is negative or runs past
+     * the end of the file) is where the dictionary ends, and is cut off.
+     */
+    private void load(Path file) throws IOException {
+        long fileSize = channel.size();
+        long validBytes = 0;
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file));
+             DataInputStream in = new DataInputStream(raw)) {
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (len < 0 || len > fileSize - validBytes - 4) break;   // not a length we wrote
+                byte[] bytes = new byte[len];
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException eof) {
+                    break; // torn write at the tail; dropped below
+                }
+                add(new String(bytes, StandardCharsets.UTF_8));
+                validBytes += 4 + len;
+            }
+        }
+        channel.truncate(validBytes);
+        channel.position(validBytes);
+    }
+
+    /** Id for the string, adding it if it's new. Null is stored as "". */
+    public synchronized int intern(String s) throws IOException {
+        String key = s == null ? "" : s;
+        Integer id = ids.get(key);
+        if (id != null) return id;
+
+        if (channel != null) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(4 + bytes.length);
+            buf.putInt(bytes.length).put(bytes).flip();
+            while (buf.hasRemaining()) channel.write(buf);
+        }
+        return add(key);
+    }
+
+    /** Id for the string, or -1 if it was never interned. */
+    public synchronized int idOf(String s) {
+        Integer id = ids.get(s == null ? "" : s);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public String get(int id) {
+        // size first: the array published before it is at least that long
+        if (id < 0 || id >= size) return "";
+        return byId[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+
+    private int add(String s) {
+        int id = size;
+        String[] arr = byId;
+        if (id == arr.length) {
+            arr = Arrays.copyOf(arr, arr.length * 2);
+        }
+        arr[id] = s;
+        ids.put(s, id);
+        byId = arr;
+        size = id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,110 @@
+package app.sync;
+
+import app.models.RecentTrackRow;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When one dashboard polls next, and whether a poll is a limit=1 probe or a full sync.
+ *
+ * While something is playing the probe runs every base interval, so track changes show up
+ * quickly; once the track's length is known, a full sync is also due when it should have
+ * ended (that is when its scrobble lands). A full sync otherwise only follows a probe that
+ * saw a different track or a scrobble newer than the store's. With nothing playing, every
+ * quiet probe doubles the wait, up to the idle maximum, and the first sign of playback
+ * resets it. An idle dashboard settles at one tiny request per idle maximum instead of a
+ * full refresh every base interval.
+ *
+ * Pure bookkeeping: no timers and no I/O. Not thread-safe; the dashboard calls it on the FX thread.
+ */
+public final class AdaptivePoller {
+
+    public static final long DEFAULT_IDLE_MAX_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // Last.fm lists the scrobble a little after the track ends
+    private static final long SCROBBLE_GRACE_MILLIS = 15_000;
+    private static final long MIN_DELAY_MILLIS = 5_000;
+
+    /** What a poll found out: run a full sync now or not, and when to poll next. */
+    public record Step(boolean fullSync, long delayMillis) { }
+
+    private final long idleMaxMillis;
+    private long baseMillis;
+
+    private String playingKey;
+    private long predictedEndMillis;   // 0 = length unknown or already synced for
+    private int idleRounds;
+    private int failures;
+
+    public AdaptivePoller(long baseMillis, long idleMaxMillis) {
+        this.baseMillis = Math.max(MIN_DELAY_MILLIS, baseMillis);
+        this.idleMaxMillis = Math.max(this.baseMillis, idleMaxMillis);
+    }
+
+    public long getBaseMillis() {
+        return baseMillis;
+    }
+
+    /** Probe interval while playing, and where the idle backoff starts. */
+    public void setBaseMillis(long baseMillis) {
+        this.baseMillis = Math.max(MIN_DELAY_MILLIS, Math.min(idleMaxMillis, baseMillis));
+    }
+
+    /** Whether this row is a track the poller hasn't seen yet, so its length is worth looking up. */
+    public boolean isNewTrack(RecentTrackRow nowPlaying) {
+        return nowPlaying != null && !key(nowPlaying).equals(playingKey);
+    }
+
+    /**
+     * True once, when the playing track's predicted end (plus a grace period) has passed:
+     * the next poll should be a full sync rather than a probe.
+     */
+    public boolean claimPredictedSync(long nowMillis) {
+        if (predictedEndMillis == 0 || nowMillis < predictedEndMillis + SCROBBLE_GRACE_MILLIS) return false;
+        predictedEndMillis = 0;
+        return true;
+    }
+
+    /**
+     * Takes in what a probe or sync saw.
+     * @param newScrobbles   whether there were scrobbles newer than the ones already stored
+     * @param durationMillis length of the playing track, 0 if unknown; only read for a new track
+     */
+    public Step observe(RecentTrackRow nowPlaying, boolean newScrobbles, long durationMillis, long nowMillis) {
+        failures = 0;
+        String key = nowPlaying == null ? null : key(nowPlaying);
+        boolean trackChanged = !Objects.equals(key, playingKey);
+        if (trackChanged) {
+            playingKey = key;
+            // First seen now; it may have started up to one poll earlier, so the estimate errs late
+            predictedEndMillis = key != null && durationMillis > 0 ? nowMillis + durationMillis : 0;
+        }
+        if (key != null || newScrobbles) idleRounds = 0;
+        else idleRounds++;
+        return new Step(trackChanged || newScrobbles, nextDelay(nowMillis));
+    }
+
+    /** After a failed poll: back off like an idle dashboard would. */
+    public long afterFailure() {
+        failures++;
+        return backoff(failures);
+    }
+
+    private long nextDelay(long nowMillis) {
+        if (playingKey == null) return backoff(idleRounds);
+        long delay = baseMillis;
+        if (predictedEndMillis > 0) delay = Math.min(delay, predictedEndMillis + SCROBBLE_GRACE_MILLIS - nowMillis);
+        return Math.max(MIN_DELAY_MILLIS, delay);
+    }
+
+    /** base, 2 x base, 4 x base, ... up to the idle maximum */
+    private long backoff(int rounds) {
+        int shift = Math.min(Math.max(0, rounds - 1), 20);
+        return Math.min(idleMaxMillis, baseMillis << shift);
+    }
+
+    private static String key(RecentTrackRow row) {
+        return row.getArtist() + '\n' + row.getTrack();
+    }
+}
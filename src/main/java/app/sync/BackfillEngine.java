@@ -0,0 +1,287 @@
+package app.sync;
+
+import app.lastfm.LastFmClient;
+import app.lastfm.RequestGovernor;
+import app.models.RecentTrackRow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full-history download of user.getrecenttracks.
+ *
+ * The window is pinned with "to" = start time of the first run, so page numbers stay stable
+ * while new scrobbles arrive and an interrupted run can pick up the pages it hasn't finished.
+ * Pages are fetched by a bounded set of workers at BACKFILL priority, so the client's
+ * {@link RequestGovernor} does the rate limiting and retries; rows go to the sink as they are
+ * parsed. A page that still fails is left for the next run, and an open circuit breaker stops
+ * the run. Delivery is at-least-once: a page that failed half way is sent again on retry or
+ * resume, so sinks should ignore scrobbles they already have.
+ */
+public class BackfillEngine {
+
+    public static final int DEFAULT_PAGE_SIZE = 200;   // API maximum
+    private static final long CHECKPOINT_EVERY_MS = 2_000;
+
+    /** Receives rows from worker threads; calls are serialized by the engine. */
+    public interface Sink {
+        void accept(RecentTrackRow row);
+
+        /** Called once all rows of a page were delivered. */
+        default void pageDone(int page) { }
+    }
+
+    public interface ProgressListener {
+        void onProgress(Progress p);
+    }
+
+    public static final class Progress {
+        public final int pagesDone;
+        public final int totalPages;
+        public final long rows;
+        public final double pagesPerSecond;
+        public final double rowsPerSecond;
+        public final int failedPages;
+
+        Progress(int pagesDone, int totalPages, long rows, double pagesPerSecond, double rowsPerSecond, int failedPages) {
+            this.pagesDone = pagesDone;
+            this.totalPages = totalPages;
+            this.rows = rows;
+            this.pagesPerSecond = pagesPerSecond;
+            this.rowsPerSecond = rowsPerSecond;
+            this.failedPages = failedPages;
+        }
+
+        public boolean isComplete() {
+            return pagesDone >= totalPages && failedPages == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d pages, %d rows, %.1f pages/s, %.0f rows/s%s",
+                    pagesDone, totalPages, rows, pagesPerSecond, rowsPerSecond,
+                    failedPages > 0 ? ", " + failedPages + " failed" : "");
+        }
+    }
+
+    private final LastFmClient client;
+    private final Path checkpointFile;
+    private final int maxInFlight;
+    private final int pageSize;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final Object sinkLock = new Object();
+
+    // checkpoint state (guarded by this)
+    private long toUts;
+    private int totalPages;
+    private BitSet done = new BitSet();
+    private long lastCheckpointAt;
+
+    /**
+     * @param checkpointFile where progress is kept between runs (null = no resume)
+     * @param maxInFlight    upper bound on concurrent requests
+     */
+    public BackfillEngine(LastFmClient client, Path checkpointFile, int maxInFlight, int pageSize) {
+        // bulk work: only uses rate-limit tokens the dashboard leaves over
+        this.client = client.withPriority(RequestGovernor.Priority.BACKFILL);
+        this.checkpointFile = checkpointFile;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.pageSize = pageSize > 0 ? Math.min(pageSize, DEFAULT_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Runs (or resumes) the backfill until every page is done or was tried and failed
+     * (after the governor's own retries), the run is cancelled, or the breaker opened.
+     */
+    public Progress run(Sink sink, ProgressListener listener) throws IOException, InterruptedException {
+        cancelled.set(false);
+        loadCheckpoint();
+
+        long startedAt = System.nanoTime();
+        AtomicLong pagesThisRun = new AtomicLong();
+        AtomicLong rowsThisRun = new AtomicLong();
+        List<Integer> failed = new ArrayList<>();
+
+        // Page 1 first, synchronously: it tells us how many pages there are
+        if (totalPages == 0) {
+            synchronized (this) {
+                toUts = Instant.now().getEpochSecond();
+            }
+            int pages = fetchPage(1, sink, rowsThisRun);
+            synchronized (this) {
+                totalPages = Math.max(1, pages);
+                done.set(1);
+            }
+            pagesThisRun.incrementAndGet();
+            saveCheckpoint(true);
+        }
+
+        ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+        synchronized (this) {
+            for (int p = 1; p <= totalPages; p++) {
+                if (!done.get(p)) pending.add(p);
+            }
+        }
+
+        // maxInFlight workers, each on its own virtual thread
+        ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < maxInFlight; i++) {
+                futures.add(workers.submit(() -> {
+                    Integer page;
+                    while (!cancelled.get() && (page = pending.poll()) != null) {
+                        if (fetchOrGiveUp(page, sink, rowsThisRun)) {
+                            synchronized (this) {
+                                done.set(page);
+                            }
+                            pagesThisRun.incrementAndGet();
+                            saveCheckpoint(false);
+                        } else {
+                            synchronized (failed) {
+                                failed.add(page);
+                            }
+                        }
+                        if (listener != null) {
+                            listener.onProgress(progress(startedAt, pagesThisRun.get(), rowsThisRun.get(), failed));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Backfill worker failed", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+            saveCheckpoint(true);
+        }
+
+        Progress last = progress(startedAt, pagesThisRun.get(), rowsThisRun.get(), failed);
+        if (last.isComplete() && checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+        if (listener != null) listener.onProgress(last);
+        return last;
+    }
+
+    /** One page, retried by the governor if need be; false if it failed for this run. */
+    private boolean fetchOrGiveUp(int page, Sink sink, AtomicLong rows) throws InterruptedException {
+        try {
+            fetchPage(page, sink, rows);
+            return true;
+        } catch (RequestGovernor.CircuitOpenException e) {
+            // Last.fm is down: the rest of the pages would fail the same way; leave them to resume
+            cancelled.set(true);
+            System.err.println("Backfill paused: " + e.getMessage());
+            return false;
+        } catch (IOException e) {
+            System.err.println("Backfill page " + page + " failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Fetches one page into the sink; returns the total page count reported by Last.fm. */
+    private int fetchPage(int page, Sink sink, AtomicLong rows) throws IOException, InterruptedException {
+        long to;
+        synchronized (this) {
+            to = toUts;
+        }
+        LastFmClient.PagedResult<RecentTrackRow> res = client.streamRecentTracks(pageSize, page, 0, to, row -> {
+            // now-playing is not part of the history
+            if (row.isNowPlaying()) return;
+            synchronized (sinkLock) {
+                sink.accept(row);
+            }
+            rows.incrementAndGet();
+        });
+        synchronized (sinkLock) {
+            sink.pageDone(page);
+        }
+        return res.totalPages;
+    }
+
+    private synchronized Progress progress(long startedAt, long pages, long rows, List<Integer> failed) {
+        double secs = Math.max(1e-3, (System.nanoTime() - startedAt) / 1e9);
+        int failedCount;
+        synchronized (failed) {
+            failedCount = failed.size();
+        }
+        return new Progress(done.cardinality(), totalPages, rows, pages / secs, rows / secs, failedCount);
+    }
+
+    // -----------------------------
+    // Checkpoint
+    // -----------------------------
+    private synchronized void loadCheckpoint() throws IOException {
+        toUts = 0;
+        totalPages = 0;
+        done = new BitSet();
+        if (checkpointFile == null || !Files.isRegularFile(checkpointFile)) return;
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(checkpointFile)) {
+            props.load(in);
+        }
+        // Different page size means different page numbers; start over.
+        if (!String.valueOf(pageSize).equals(props.getProperty("page_size"))) return;
+
+        toUts = Long.parseLong(props.getProperty("to", "0"));
+        totalPages = Integer.parseInt(props.getProperty("total_pages", "0"));
+        done = BitSet.valueOf(Base64.getDecoder().decode(props.getProperty("done", "")));
+        if (toUts <= 0) totalPages = 0;
+    }
+
+    private synchronized void saveCheckpoint(boolean force) {
+        if (checkpointFile == null) return;
+        long now = System.currentTimeMillis();
+        if (!force && now - lastCheckpointAt < CHECKPOINT_EVERY_MS) return;
+        lastCheckpointAt = now;
+
+        Properties props = new Properties();
+        props.setProperty("page_size", String.valueOf(pageSize));
+        props.setProperty("to", String.valueOf(toUts));
+        props.setProperty("total_pages", String.valueOf(totalPages));
+        props.setProperty("done", Base64.getEncoder().encodeToString(done.toByteArray()));
+
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "ScrobbleDash backfill progress");
+            }
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Backfill checkpoint write failed: " + e.getMessage());
+        }
+    }
+}
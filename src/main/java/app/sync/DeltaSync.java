@@ -0,0 +1,213 @@
+package app.sync;
+
+import app.concurrent.Futures;
+import app.lastfm.LastFmClient;
+import app.models.RecentTrackRow;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Incremental recent-tracks sync.
+ *
+ * Keeps a high-water mark (newest playedAt seen, epoch seconds) and only asks Last.fm for
+ * scrobbles after it. Each round starts with a limit=1 probe, which answers two questions
+ * at once: what is playing right now, and is there anything newer than the mark at all.
+ * Only if there is does the "from" query run, so an idle refresh is one tiny request.
+ *
+ * The query is pinned with "to" just past the probe's newest scrobble, so its page numbers
+ * don't shift while new scrobbles arrive. A gap of more than {@value #MAX_DELTA_PAGES} pages
+ * is closed over several rounds, oldest pages first: the mark only ever moves over a range
+ * that was fetched completely, so nothing between the old mark and the new one is skipped.
+ * Rounds run one after another, whoever starts them: a round reads the mark only once the
+ * one before it has moved it, so two callers never both fetch (and append) the same delta.
+ */
+public class DeltaSync {
+
+    private static final int DELTA_PAGE_SIZE = 200;
+    // pages one round fetches; a longer gap takes more rounds
+    private static final int MAX_DELTA_PAGES = 10;
+
+    public static final class Result {
+        /** New scrobbles, newest first. */
+        public final List<RecentTrackRow> newScrobbles;
+        /** Currently playing track, or null. */
+        public final RecentTrackRow nowPlaying;
+        /**
+         * True if more than {@value #MAX_DELTA_PAGES} pages were new: this round returned the
+         * oldest of them, and syncing again right away picks up where it left off.
+         */
+        public final boolean hasMore;
+
+        Result(List<RecentTrackRow> newScrobbles, RecentTrackRow nowPlaying, boolean hasMore) {
+            this.newScrobbles = newScrobbles;
+            this.nowPlaying = nowPlaying;
+            this.hasMore = hasMore;
+        }
+    }
+
+    private final LastFmClient client;
+    private final int initialLimit;
+
+    private volatile long highWaterMark;
+    // the round in flight, or the last one; the next waits for it (guarded by this)
+    private CompletableFuture<?> lastRound = CompletableFuture.completedFuture(null);
+
+    /** @param initialLimit how many rows the first sync (no mark yet) fetches */
+    public DeltaSync(LastFmClient client, int initialLimit) {
+        this.client = client;
+        this.initialLimit = initialLimit > 0 ? initialLimit : 50;
+    }
+
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** Seeds the mark, e.g. from the local store; never moves it backwards. */
+    public void advanceHighWaterMark(long uts) {
+        if (uts > highWaterMark) highWaterMark = uts;
+    }
+
+    public Result sync() throws IOException, InterruptedException {
+        return Futures.await(syncAsync());
+    }
+
+    /**
+     * Non-blocking {@link #sync}. Once the first delta page says how many there are,
+     * the remaining pages of the round are requested together rather than one after another.
+     */
+    public CompletableFuture<Result> syncAsync() {
+        return afterLastRound(() -> highWaterMark <= 0 ? initialSyncAsync() : probeAsync().thenCompose(this::roundAfter));
+    }
+
+    /**
+     * The limit=1 request a round starts with: the now-playing row (if any) plus the newest
+     * scrobble. Pollers can send it on its own and only go on with {@link #syncAfter} when
+     * it shows something new.
+     */
+    public CompletableFuture<LastFmClient.PagedResult<RecentTrackRow>> probeAsync() {
+        return client.getRecentTracksAsync(1, 1);
+    }
+
+    /**
+     * The rest of a round, from a probe sent by {@link #probeAsync}. A probe that is older than
+     * a round finished since is fine: only what is newer than the mark by then is fetched.
+     */
+    public CompletableFuture<Result> syncAfter(LastFmClient.PagedResult<RecentTrackRow> probe) {
+        return afterLastRound(() -> roundAfter(probe));
+    }
+
+    /** Starts a round once the previous one is over, however that ended. */
+    private synchronized CompletableFuture<Result> afterLastRound(Supplier<CompletableFuture<Result>> round) {
+        CompletableFuture<Result> next = lastRound.handle((v, err) -> null).thenCompose(v -> round.get());
+        lastRound = next;
+        return next;
+    }
+
+    private CompletableFuture<Result> roundAfter(LastFmClient.PagedResult<RecentTrackRow> probe) {
+        long mark = highWaterMark;
+        if (mark <= 0) return initialSyncAsync();
+
+        RecentTrackRow playing = nowPlayingOf(probe.items);
+        long newest = newestPlayedAt(probe.items);
+        if (newest <= mark) {
+            return CompletableFuture.completedFuture(new Result(List.of(), playing, false));
+        }
+        return fetchDelta(mark, newest + 1).thenApply(delta -> {
+            List<RecentTrackRow> fresh = new ArrayList<>();
+            for (var res : delta.pages()) {
+                for (RecentTrackRow r : res.items) {
+                    if (r.isNowPlaying()) continue;
+                    if (!r.hasPlayedAt() || r.getPlayedAtEpochSecond() <= mark) continue;
+                    fresh.add(r);
+                }
+            }
+            if (delta.complete()) {
+                advanceTo(fresh);
+                return new Result(fresh, playing, false);
+            }
+            // Only the oldest pages: the mark goes to just below their newest second, which a
+            // page boundary may have split; that second comes again, whole, next round
+            long upTo = newestPlayedAt(fresh);
+            List<RecentTrackRow> below = new ArrayList<>(fresh.size());
+            for (RecentTrackRow r : fresh) {
+                if (r.getPlayedAtEpochSecond() < upTo) below.add(r);
+            }
+            if (below.isEmpty()) {
+                // a whole round in one second; can't split it, take it as it is
+                advanceHighWaterMark(upTo);
+                return new Result(fresh, playing, true);
+            }
+            advanceHighWaterMark(upTo - 1);
+            return new Result(below, playing, true);
+        });
+    }
+
+    /** The now-playing row among these, or null. */
+    public static RecentTrackRow nowPlayingOf(List<RecentTrackRow> rows) {
+        for (RecentTrackRow r : rows) {
+            if (r.isNowPlaying()) return r;
+        }
+        return null;
+    }
+
+    /** Newest scrobble time among these (epoch seconds), 0 if there is none. */
+    public static long newestPlayedAt(List<RecentTrackRow> rows) {
+        long newest = 0;
+        for (RecentTrackRow r : rows) {
+            if (!r.isNowPlaying() && r.hasPlayedAt()) newest = Math.max(newest, r.getPlayedAtEpochSecond());
+        }
+        return newest;
+    }
+
+    private CompletableFuture<Result> initialSyncAsync() {
+        return client.getRecentTracksAsync(initialLimit, 1).thenApply(res -> initialSync(res.items));
+    }
+
+    /** Pages of one round, newest first; complete if they are all the pages after the mark. */
+    private record Delta(List<LastFmClient.PagedResult<RecentTrackRow>> pages, boolean complete) { }
+
+    /**
+     * Scrobbles in (mark, toUts): all pages if there are at most {@value #MAX_DELTA_PAGES},
+     * otherwise the oldest {@value #MAX_DELTA_PAGES}.
+     */
+    private CompletableFuture<Delta> fetchDelta(long mark, long toUts) {
+        long from = mark + 1;
+        return client.getRecentTracksAsync(DELTA_PAGE_SIZE, 1, from, toUts).thenCompose(first -> {
+            int total = first.totalPages;
+            boolean complete = total <= MAX_DELTA_PAGES;
+            // page 1 is the newest; in a partial round it's dropped and fetched again at the end
+            int firstPage = complete ? 2 : total - MAX_DELTA_PAGES + 1;
+            List<CompletableFuture<LastFmClient.PagedResult<RecentTrackRow>>> rest = new ArrayList<>();
+            for (int page = firstPage; page <= total; page++) {
+                rest.add(client.getRecentTracksAsync(DELTA_PAGE_SIZE, page, from, toUts));
+            }
+            return CompletableFuture.allOf(rest.toArray(CompletableFuture[]::new)).thenApply(v -> {
+                List<LastFmClient.PagedResult<RecentTrackRow>> pages = new ArrayList<>(rest.size() + 1);
+                if (complete) pages.add(first);
+                for (var f : rest) pages.add(f.join());
+                return new Delta(pages, complete);
+            });
+        });
+    }
+
+    private Result initialSync(List<RecentTrackRow> rows) {
+        RecentTrackRow nowPlaying = null;
+        List<RecentTrackRow> scrobbles = new ArrayList<>(rows.size());
+        for (RecentTrackRow r : rows) {
+            if (r.isNowPlaying()) nowPlaying = r;
+            else scrobbles.add(r);
+        }
+        advanceTo(scrobbles);
+        return new Result(scrobbles, nowPlaying, false);
+    }
+
+    private void advanceTo(List<RecentTrackRow> rows) {
+        for (RecentTrackRow r : rows) {
+            if (r.hasPlayedAt()) advanceHighWaterMark(r.getPlayedAtEpochSecond());
+        }
+    }
+}
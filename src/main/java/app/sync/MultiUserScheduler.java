@@ -0,0 +1,338 @@
+package app.sync;
+
+import app.concurrent.Futures;
+import app.concurrent.TimingWheel;
+import app.lastfm.LastFmClient;
+import app.lastfm.RequestGovernor;
+import app.metrics.Histogram;
+import app.metrics.Metrics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps many accounts' recent tracks current from one process.
+ *
+ * Every user gets a {@link DeltaSync} over a {@link LastFmClient#forUser} view of one client,
+ * so they share its HttpClient, cache and rate limit. Polls are timeouts on a
+ * {@link TimingWheel}, first ones spread by a hash of the name so a thousand users added at
+ * once don't poll at once. Each poll is one async chain (no thread waits on the network);
+ * the wheel thread plus two callback threads are all the scheduler itself owns.
+ *
+ * Intervals adapt per user: back to the minimum whenever something new was scrobbled or is
+ * playing, 1.5x longer after every idle poll, up to the maximum. Together the polls may use
+ * {@link #BUDGET_SHARE} of the API key's request rate (at {@link RequestGovernor.Priority#PREFETCH},
+ * so the rest stays free for the UI); when the users' intervals would ask for more, all of
+ * them are stretched by the same factor, so busy users still poll more often than idle ones.
+ *
+ * A failing user only delays itself: transient errors back off exponentially, and errors
+ * that won't go away by retrying (unknown or private user) park the user for
+ * {@link #SUSPEND_MILLIS}. An open breaker is nobody's fault; polls wait for it to close.
+ */
+public class MultiUserScheduler implements AutoCloseable {
+
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofMinutes(10);
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    /** Share of the key's sustained rate that polling may use. */
+    static final double BUDGET_SHARE = 0.5;
+    static final long SUSPEND_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final int INITIAL_LIMIT = 50;
+    private static final int DELTA_PAGE_SIZE = 200;
+    private static final double IDLE_GROWTH = 1.5;
+    private static final long DEFER_MILLIS = 1_000;
+    private static final long WHEEL_TICK_MILLIS = 100;
+    private static final int WHEEL_SLOTS = 1024;        // one turn ~ 100 s
+
+    private static final Metrics METRICS = Metrics.global();
+    private static final Histogram POLLS = METRICS.timer("poller.sync");
+
+    /** Called on a callback thread, one call per user at a time. */
+    public interface Listener {
+        void onSync(String user, DeltaSync.Result result);
+
+        /** @param suspended whether the user is parked rather than retried soon */
+        default void onFailure(String user, Throwable error, boolean suspended) { }
+    }
+
+    /** Where one user stands, for status pages and logs. */
+    public record UserStatus(String user, long intervalMillis, long highWaterMark,
+                             int failures, boolean suspended, long lastSyncMillis) { }
+
+    private static final class UserSync {
+        final String user;
+        final DeltaSync sync;
+
+        // Guarded by the UserSync; written only by its own poll chain (one poll per user at a time)
+        long intervalMillis;
+        int failures;
+        boolean suspended;
+        volatile long lastSyncMillis;
+        volatile TimingWheel.Timeout next;
+        volatile boolean removed;
+
+        UserSync(String user, DeltaSync sync, long intervalMillis) {
+            this.user = user;
+            this.sync = sync;
+            this.intervalMillis = intervalMillis;
+        }
+    }
+
+    private final LastFmClient client;
+    private final RequestGovernor governor;
+    private final Listener listener;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+
+    private final Map<String, UserSync> users = new ConcurrentHashMap<>();
+    private final Semaphore inFlight;
+    private final AtomicInteger running = new AtomicInteger();
+    private final ExecutorService callbacks;
+    private final TimingWheel wheel;
+
+    // Requests per second the users' own intervals ask for, and the average cost of a poll (guarded by this)
+    private double demand;
+    private double requestsPerPoll = 1.0;
+
+    private volatile boolean closed;
+
+    public MultiUserScheduler(LastFmClient client, Listener listener) {
+        this(client, listener, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param client      any view of the shared client; its user is not polled unless added
+     * @param maxInFlight polls waiting on Last.fm at once; the rest wait a second and retry
+     */
+    public MultiUserScheduler(LastFmClient client, Listener listener,
+                              Duration minInterval, Duration maxInterval, int maxInFlight) {
+        if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("need 0 < minInterval <= maxInterval");
+        }
+        this.client = client.withPriority(RequestGovernor.Priority.PREFETCH);
+        this.governor = client.getGovernor();
+        this.listener = listener;
+        this.minIntervalMillis = minInterval.toMillis();
+        this.maxIntervalMillis = maxInterval.toMillis();
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+
+        AtomicInteger threadNo = new AtomicInteger();
+        this.callbacks = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "scrobbledash-poller-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.wheel = new TimingWheel(WHEEL_TICK_MILLIS, WHEEL_SLOTS, callbacks, "scrobbledash-poll-wheel");
+
+        METRICS.gauge("poller.users", users::size);
+        METRICS.gauge("poller.in_flight", running::get);
+    }
+
+    // -----------------------------
+    // Users
+    // -----------------------------
+
+    /** Starts polling a user (no-op if already there). */
+    public void addUser(String user) {
+        addUser(user, 0);
+    }
+
+    /**
+     * @param highWaterMark newest scrobble already stored for this user (epoch seconds), or 0
+     *                      to start with a first page of {@value #INITIAL_LIMIT}
+     */
+    public void addUser(String user, long highWaterMark) {
+        if (closed) throw new IllegalStateException("scheduler closed");
+        DeltaSync sync = new DeltaSync(client.forUser(user), INITIAL_LIMIT);
+        sync.advanceHighWaterMark(highWaterMark);
+        UserSync u = new UserSync(user, sync, minIntervalMillis);
+        if (users.putIfAbsent(user, u) != null) return;
+        retune(0, u.intervalMillis);
+
+        // Spread first polls over whichever is longer: the minimum interval, or the time
+        // the budget needs to get round everyone once
+        long spread = Math.max(minIntervalMillis, (long) (users.size() * requestsPerPoll() * 1000 / budget()));
+        schedule(u, Math.floorMod(user.hashCode() * 0x9E3779B9L, spread));
+    }
+
+    public void removeUser(String user) {
+        UserSync u = users.remove(user);
+        if (u == null) return;
+        u.removed = true;
+        TimingWheel.Timeout t = u.next;
+        if (t != null) t.cancel();
+        synchronized (u) {
+            retune(u.intervalMillis, 0);
+        }
+    }
+
+    public List<UserStatus> status() {
+        List<UserStatus> out = new ArrayList<>(users.size());
+        for (UserSync u : users.values()) {
+            synchronized (u) {
+                out.add(new UserStatus(u.user, u.intervalMillis, u.sync.getHighWaterMark(),
+                        u.failures, u.suspended, u.lastSyncMillis));
+            }
+        }
+        return out;
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    // -----------------------------
+    // Polling
+    // -----------------------------
+
+    private void schedule(UserSync u, long delayMillis) {
+        if (closed || u.removed) return;
+        u.next = wheel.schedule(() -> poll(u), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(UserSync u) {
+        if (closed || u.removed) return;
+        if (governor.isOpen()) {
+            schedule(u, jitter(governor.getRetryInMillis() + minIntervalMillis / 2));
+            return;
+        }
+        if (!inFlight.tryAcquire()) {
+            METRICS.counter("poller.deferred").increment();
+            schedule(u, jitter(DEFER_MILLIS));
+            return;
+        }
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<DeltaSync.Result> f;
+        try {
+            f = u.sync.syncAsync();
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        f.whenCompleteAsync((res, err) -> {
+            running.decrementAndGet();
+            inFlight.release();
+            POLLS.recordSince(start);
+            METRICS.counter("poller.polls").increment();
+            if (err == null) succeeded(u, res);
+            else failed(u, Futures.unwrap(err));
+        }, callbacks);
+    }
+
+    private void succeeded(UserSync u, DeltaSync.Result res) {
+        boolean active = !res.newScrobbles.isEmpty() || res.nowPlaying != null;
+        long interval;
+        synchronized (u) {
+            u.failures = 0;
+            u.suspended = false;
+            u.lastSyncMillis = System.currentTimeMillis();
+            long old = u.intervalMillis;
+            interval = active ? minIntervalMillis : Math.min(maxIntervalMillis, (long) (old * IDLE_GROWTH));
+            u.intervalMillis = interval;
+            if (!u.removed) retune(old, interval);
+        }
+        notePollCost(res);
+
+        try {
+            listener.onSync(u.user, res);
+        } catch (RuntimeException e) {
+            System.err.println("Sync listener failed for " + u.user + ": " + e);
+        }
+        // the rest of a long gap right away; the governor still paces the requests
+        schedule(u, res.hasMore ? jitter(DEFER_MILLIS) : jitter((long) (interval * stretch())));
+    }
+
+    private void failed(UserSync u, Throwable error) {
+        METRICS.counter("poller.failures").increment();
+        if (error instanceof RequestGovernor.CircuitOpenException open) {
+            // the key is failing, not this user
+            schedule(u, jitter(open.getRetryInMillis() + minIntervalMillis / 2));
+            return;
+        }
+
+        boolean permanent = error instanceof IOException e && !LastFmClient.isTransient(e);
+        long delay;
+        int failures;
+        synchronized (u) {
+            failures = ++u.failures;
+            u.suspended = permanent;
+            delay = permanent ? SUSPEND_MILLIS
+                    : Math.min(maxIntervalMillis, minIntervalMillis << Math.min(failures, 16));
+        }
+        if (permanent) METRICS.counter("poller.suspended").increment();
+        // one line per failure streak, not one per poll
+        if (failures == 1) {
+            System.err.println("Sync failed for " + u.user + (permanent ? " (suspended): " : ": ") + error.getMessage());
+        }
+
+        try {
+            listener.onFailure(u.user, error, permanent);
+        } catch (RuntimeException e) {
+            System.err.println("Sync listener failed for " + u.user + ": " + e);
+        }
+        schedule(u, jitter(delay));
+    }
+
+    // -----------------------------
+    // Budget
+    // -----------------------------
+
+    /** Requests per second polling may use. */
+    private double budget() {
+        return governor.getRatePerSecond() * BUDGET_SHARE;
+    }
+
+    private synchronized double requestsPerPoll() {
+        return requestsPerPoll;
+    }
+
+    /** How much every interval is stretched so the users together stay within the budget. */
+    private synchronized double stretch() {
+        return Math.max(1.0, demand * requestsPerPoll / budget());
+    }
+
+    /** One user's interval changed from old to now (0 = not counted). */
+    private synchronized void retune(long oldMillis, long nowMillis) {
+        if (oldMillis > 0) demand -= 1000.0 / oldMillis;
+        if (nowMillis > 0) demand += 1000.0 / nowMillis;
+        if (demand < 0) demand = 0;
+    }
+
+    /** Probe, plus the delta pages if there was anything new; averaged over recent polls. */
+    private synchronized void notePollCost(DeltaSync.Result res) {
+        int n = res.newScrobbles.size();
+        int requests = n == 0 ? 1 : 2 + (n - 1) / DELTA_PAGE_SIZE;
+        requestsPerPoll += (requests - requestsPerPoll) * 0.05;
+    }
+
+    private static long jitter(long millis) {
+        long spread = Math.max(1, millis / 10);
+        return Math.max(1, millis + ThreadLocalRandom.current().nextLong(-spread, spread + 1));
+    }
+
+    /** Stops polling; requests already sent finish, but nothing more is delivered. */
+    @Override
+    public void close() {
+        closed = true;
+        wheel.close();
+        callbacks.shutdownNow();
+        try {
+            callbacks.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package app.ui;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared, size-bounded cache of decoded images for table cells and the now-playing bar.
+ *
+ * Images are decoded at the size they are bound at (a 300x300 cover bound at 48x48 costs
+ * 48x48 pixels), keyed by URL + size, and shared by every view bound at that size, so views
+ * showing the same cover should bind it at the same size and scale it with their fit size.
+ * Views hold a reference while they display an image; unreferenced entries are evicted
+ * least-recently-used first once the byte budget is exceeded, and an unreferenced image
+ * that is still downloading (its row scrolled away) is cancelled.
+ * FX thread only.
+ */
+public class ImageCache {
+
+    private static final String VIEW_KEY = ImageCache.class.getName();
+
+    private static final class Entry {
+        final String key;
+        final Image image;
+        final long bytes;
+        int refs;
+
+        Entry(String key, Image image, long bytes) {
+            this.key = key;
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(128, 0.75f, true);
+    private long totalBytes;
+
+    private long hits;
+    private long misses;
+
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Shows the URL in the view, decoded at width x height, and releases whatever the
+     * view showed before. A null/blank URL just clears the view.
+     */
+    public void bind(ImageView view, String url, double width, double height) {
+        Entry previous = (Entry) view.getProperties().get(VIEW_KEY);
+        String key = (url == null || url.isBlank()) ? null : key(url, width, height);
+        if (key != null && previous != null && key.equals(previous.key)) return;
+
+        if (previous != null) release(previous);
+
+        if (key == null) {
+            view.getProperties().remove(VIEW_KEY);
+            view.setImage(null);
+            return;
+        }
+        Entry e = acquire(key, url, width, height);
+        view.getProperties().put(VIEW_KEY, e);
+        view.setImage(e.image);
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getBytes() { return totalBytes; }
+
+    /** The view holds the entry it got, not the key: a failed one is replaced under the same key. */
+    private Entry acquire(String key, String url, double width, double height) {
+        Entry e = entries.get(key);
+        if (e != null && e.image.isError()) {
+            // views still showing it keep their reference; release() counts it down
+            drop(e);
+            e = null;
+        }
+        if (e == null) {
+            misses++;
+            Image img = new Image(url, width, height, true, true, true);
+            e = new Entry(key, img, (long) Math.ceil(width) * (long) Math.ceil(height) * 4);
+            entries.put(key, e);
+            totalBytes += e.bytes;
+        } else {
+            hits++;
+        }
+        e.refs++;
+        evict();
+        return e;
+    }
+
+    private void release(Entry e) {
+        if (--e.refs > 0) return;
+        if (entries.get(e.key) != e) return;   // already evicted or replaced
+
+        // nobody shows it and it isn't there yet: stop the download
+        if (e.image.getProgress() < 1.0 && !e.image.isError()) {
+            e.image.cancel();
+            drop(e);
+            return;
+        }
+        evict();
+    }
+
+    private void evict() {
+        if (totalBytes <= maxBytes) return;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (e.refs > 0) continue;
+            it.remove();
+            totalBytes -= e.bytes;
+        }
+    }
+
+    private void drop(Entry e) {
+        if (entries.remove(e.key, e)) totalBytes -= e.bytes;
+    }
+
+    private static String key(String url, double width, double height) {
+        return (int) Math.ceil(width) + "x" + (int) Math.ceil(height) + "@" + url;
+    }
+}
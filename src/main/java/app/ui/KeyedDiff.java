@@ -0,0 +1,137 @@
+package app.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * The edit script that turns one keyed list into another with the fewest row changes:
+ * rows whose key is in both lists and whose relative order is unchanged stay put (and are
+ * replaced in place if their content changed); everything else is removed or inserted.
+ * Pure and thread-safe, so it runs off the FX thread; {@link PatchedList} applies the result.
+ *
+ * Keys should be unique; a repeated key in the target is treated as a new row.
+ */
+public final class KeyedDiff<T> {
+
+    /** One step, with indices into the list as it is after the previous steps. */
+    public sealed interface Op<T> permits Remove, Insert, Replace { }
+
+    public record Remove<T>(int index, int count) implements Op<T> { }
+
+    public record Insert<T>(int index, List<T> items) implements Op<T> { }
+
+    public record Replace<T>(int index, T item) implements Op<T> { }
+
+    private final List<Op<T>> ops;
+    private final int removed;
+    private final int inserted;
+    private final int replaced;
+
+    private KeyedDiff(List<Op<T>> ops) {
+        this.ops = List.copyOf(ops);
+        int r = 0, i = 0, s = 0;
+        for (Op<T> op : ops) {
+            switch (op) {
+                case Remove<T> rm -> r += rm.count();
+                case Insert<T> in -> i += in.items().size();
+                case Replace<T> rp -> s++;
+            }
+        }
+        this.removed = r;
+        this.inserted = i;
+        this.replaced = s;
+    }
+
+    public List<Op<T>> ops() { return ops; }
+    public boolean isEmpty() { return ops.isEmpty(); }
+    public int removed() { return removed; }
+    public int inserted() { return inserted; }
+    public int replaced() { return replaced; }
+
+    /**
+     * @param sameContent whether two rows with the same key look the same; if not, the old
+     *                    one is replaced in place (keeps selection and scroll position)
+     */
+    public static <T, K> KeyedDiff<T> compute(List<T> from, List<T> to,
+                                              Function<? super T, ? extends K> key,
+                                              BiPredicate<? super T, ? super T> sameContent) {
+        int n = from.size();
+        int m = to.size();
+
+        // Common head and tail first: the usual refresh only touches the ends
+        int head = 0;
+        while (head < n && head < m && key.apply(from.get(head)).equals(key.apply(to.get(head)))) head++;
+        int tail = 0;
+        while (tail < n - head && tail < m - head
+                && key.apply(from.get(n - 1 - tail)).equals(key.apply(to.get(m - 1 - tail)))) tail++;
+
+        // Middle: for each target row, where it was (or -1); keep the longest run whose old
+        // positions increase, since those rows need not move
+        Map<K, Integer> oldIndex = new HashMap<>();
+        for (int i = head; i < n - tail; i++) oldIndex.putIfAbsent(key.apply(from.get(i)), i);
+        int[] source = new int[m - head - tail];
+        for (int j = 0; j < source.length; j++) {
+            Integer i = oldIndex.remove(key.apply(to.get(head + j)));
+            source[j] = i == null ? -1 : i;
+        }
+        boolean[] keptNew = longestIncreasing(source);
+        boolean[] keptOld = new boolean[n];
+        Arrays.fill(keptOld, 0, head, true);
+        Arrays.fill(keptOld, n - tail, n, true);
+        for (int j = 0; j < source.length; j++) {
+            if (keptNew[j]) keptOld[source[j]] = true;
+        }
+
+        List<Op<T>> ops = new ArrayList<>();
+
+        // Removals back to front, so earlier indices stay valid; what's left is the kept rows in target order
+        for (int i = n - 1; i >= 0; ) {
+            if (keptOld[i]) { i--; continue; }
+            int end = i;
+            while (i >= 0 && !keptOld[i]) i--;
+            ops.add(new Remove<>(i + 1, end - i));
+        }
+
+        // Then walk the target front to back: kept rows may need a replace, the rest are inserted
+        for (int j = 0; j < m; ) {
+            boolean kept = j < head || j >= m - tail || keptNew[j - head];
+            if (kept) {
+                T now = to.get(j);
+                T was = from.get(j < head ? j : j >= m - tail ? n - (m - j) : source[j - head]);
+                if (now != was && !sameContent.test(was, now)) ops.add(new Replace<>(j, now));
+                j++;
+                continue;
+            }
+            int start = j;
+            while (j < m && !(j < head || j >= m - tail || keptNew[j - head])) j++;
+            ops.add(new Insert<>(start, List.copyOf(to.subList(start, j))));
+        }
+        return new KeyedDiff<>(ops);
+    }
+
+    /** Marks one longest strictly increasing subsequence of the non-negative entries. O(n log n). */
+    private static boolean[] longestIncreasing(int[] a) {
+        int[] tailIdx = new int[a.length];   // tailIdx[k]: index of the smallest tail of a run of length k+1
+        int[] prev = new int[a.length];
+        int len = 0;
+        for (int j = 0; j < a.length; j++) {
+            if (a[j] < 0) continue;
+            int lo = 0, hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[tailIdx[mid]] < a[j]) lo = mid + 1; else hi = mid;
+            }
+            prev[j] = lo > 0 ? tailIdx[lo - 1] : -1;
+            tailIdx[lo] = j;
+            if (lo == len) len++;
+        }
+        boolean[] kept = new boolean[a.length];
+        for (int j = len > 0 ? tailIdx[len - 1] : -1; j >= 0; j = prev[j]) kept[j] = true;
+        return kept;
+    }
+}
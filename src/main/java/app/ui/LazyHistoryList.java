@@ -0,0 +1,330 @@
+package app.ui;
+
+import app.jfr.TableUpdateEvent;
+import app.metrics.Counter;
+import app.metrics.Histogram;
+import app.metrics.Metrics;
+import app.models.RecentTrackRow;
+import app.store.ScrobbleStore;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * The Recent Tracks table's items: the whole local history, newest first (with the
+ * now-playing row on top), without holding it.
+ *
+ * The only per-scrobble state is one long per row: (playedAt, record index) sorted, which
+ * maps a table row to its store record. Rows are materialized a page at a time, when a cell
+ * asks for one, and at most {@value #MAX_PAGES} pages are kept; the pages next to the one
+ * being looked at are materialized ahead on a background thread. Rows refer to the store's
+ * dictionary, so a page costs its row objects and nothing else: the heap used for rows stays
+ * the same however long the history gets or however far the table is scrolled.
+ *
+ * Pages are counted from the oldest key, so new scrobbles on top leave every page but the
+ * newest (partial) one where it was; only history merged in between drops the pages. When
+ * rows near the end get asked for, the owner is told (see {@link #setOnNearEnd}) so it can
+ * fetch older history into the store, which {@link #sync} then picks up.
+ *
+ * Read-only (sorting is not supported) and FX-thread only, like any table's items.
+ */
+public final class LazyHistoryList extends ObservableListBase<RecentTrackRow> {
+
+    private static final int PAGE_ROWS = 128;
+    private static final int MAX_PAGES = 32;
+    private static final int PREFETCH_PAGES = 2;
+    // rows from the end at which older history is asked for
+    private static final int NEAR_END_ROWS = 2 * PAGE_ROWS;
+
+    // ScrobbleStore holds fewer than 2^27 records, so a record index fits below the time
+    private static final int INDEX_BITS = 27;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private static final Metrics METRICS = Metrics.global();
+    private static final Histogram PAGE_TIME = METRICS.timer("fx.history.page");
+    private static final Counter PAGE_MISSES = METRICS.counter("history.page_misses");
+    private static final Counter PREFETCHED = METRICS.counter("history.pages_prefetched");
+
+    private final ScrobbleStore store;
+    private final Executor background;
+    private final Executor fx;
+
+    // (playedAt << INDEX_BITS | record index), ascending: row i below the now-playing row is
+    // keys[count - 1 - i], on page (count - 1 - i) / PAGE_ROWS. Only ever appended to in place; a merge makes a new array, so
+    // a background prefetch can keep reading the one it started with.
+    private long[] keys = new long[0];
+    private int count;
+    private long indexed;          // store records [0, indexed) are in keys
+    private boolean loaded;
+    private int version;           // bumped whenever keys move; prefetches of an older version are dropped
+
+    private RecentTrackRow nowPlaying;
+
+    private final Map<Integer, RecentTrackRow[]> pages = new LinkedHashMap<>(MAX_PAGES * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, RecentTrackRow[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> prefetching = new HashSet<>();
+
+    private Runnable onNearEnd;
+    private int nearEndAskedAt = -1;
+
+    public LazyHistoryList(ScrobbleStore store, Executor background) {
+        this(store, background, Platform::runLater);
+    }
+
+    /** @param fx runs what has to happen on the list's thread (benchmarks pass their own) */
+    LazyHistoryList(ScrobbleStore store, Executor background, Executor fx) {
+        this.store = store;
+        this.background = background;
+        this.fx = fx;
+    }
+
+    /**
+     * Called (on a later pulse, at most once per history length) when the table shows rows
+     * near the end; the place to start fetching older scrobbles.
+     */
+    public void setOnNearEnd(Runnable onNearEnd) {
+        this.onNearEnd = onNearEnd;
+    }
+
+    /** Scrobbles shown (the now-playing row is not counted). */
+    public int historySize() {
+        return count;
+    }
+
+    // -----------------------------
+    // List
+    // -----------------------------
+
+    @Override
+    public int size() {
+        return head() + count;
+    }
+
+    @Override
+    public RecentTrackRow get(int index) {
+        int head = head();
+        if (index < head) {
+            if (index < 0) throw new IndexOutOfBoundsException(index);
+            return nowPlaying;
+        }
+        int row = index - head;
+        if (row >= count) throw new IndexOutOfBoundsException(index);
+
+        int pos = count - 1 - row;
+        int page = pos / PAGE_ROWS;
+        RecentTrackRow[] rows = pages.get(page);
+        if (rows == null) {
+            long start = System.nanoTime();
+            rows = materialize(keys, count, page);
+            pages.put(page, rows);
+            PAGE_MISSES.increment();
+            PAGE_TIME.recordSince(start);
+        }
+        prefetchAround(page);
+        if (row >= count - NEAR_END_ROWS) askForOlder();
+        return rows[pos - page * PAGE_ROWS];
+    }
+
+    private int head() {
+        return nowPlaying != null ? 1 : 0;
+    }
+
+    // -----------------------------
+    // Changes
+    // -----------------------------
+
+    /** Indexes the store off the FX thread, then shows it; completes, on the FX thread, once shown. */
+    public CompletableFuture<Void> load() {
+        return CompletableFuture.supplyAsync(() -> {
+            long n = store.size();
+            long[] k = new long[(int) n];
+            if (n > 0) {
+                store.scanAppended(0, (idx, ts, track, artist, album, image) -> {
+                    k[(int) idx] = (ts << INDEX_BITS) | idx;
+                    return idx + 1 < n;
+                });
+            }
+            Arrays.sort(k);
+            return k;
+        }, background).thenAcceptAsync(this::install, fx);
+    }
+
+    private void install(long[] k) {
+        TableUpdateEvent event = new TableUpdateEvent();
+        event.begin();
+        int head = head();
+        beginChange();
+        keys = k;
+        count = k.length;
+        indexed = k.length;
+        loaded = true;
+        moved();
+        if (count > 0) nextAdd(head, head + count);
+        endChange();
+        commit(event, "restore", count);
+
+        // whatever was appended while indexing
+        sync();
+    }
+
+    /**
+     * Shows the records appended to the store since the last call: usually a few new
+     * scrobbles, which go on top; older ones (a fetched page of history) are merged in.
+     */
+    public void sync() {
+        if (!loaded) return;
+        long[][] fresh = {new long[16]};
+        int[] n = {0};
+        indexed = store.scanAppended(indexed, (idx, ts, track, artist, album, image) -> {
+            if (n[0] == fresh[0].length) fresh[0] = Arrays.copyOf(fresh[0], n[0] * 2);
+            fresh[0][n[0]++] = (ts << INDEX_BITS) | idx;
+            return true;
+        });
+        if (n[0] == 0) return;
+        long[] add = fresh[0];
+        Arrays.sort(add, 0, n[0]);
+
+        TableUpdateEvent event = new TableUpdateEvent();
+        event.begin();
+        int head = head();
+        beginChange();
+        if (count == 0 || add[0] > keys[count - 1]) {
+            // all newer than anything shown: new rows on top; only the newest page changes
+            if (count + n[0] > keys.length) keys = Arrays.copyOf(keys, Math.max(16, (count + n[0]) * 3 / 2));
+            System.arraycopy(add, 0, keys, count, n[0]);
+            if (count % PAGE_ROWS != 0) pages.remove(count / PAGE_ROWS);
+            count += n[0];
+            nextAdd(head, head + n[0]);
+        } else {
+            mergeIn(add, n[0], head);
+            moved();
+        }
+        endChange();
+        commit(event, "merge", n[0]);
+    }
+
+    /** Merges sorted new keys into a new array, reporting each run of new rows as one add. */
+    private void mergeIn(long[] add, int n, int head) {
+        int total = count + n;
+        long[] merged = new long[Math.max(16, total * 5 / 4)];
+        boolean[] isNew = new boolean[total];
+        int i = 0, j = 0;
+        for (int out = 0; out < total; out++) {
+            if (j < n && (i >= count || add[j] < keys[i])) {
+                merged[out] = add[j++];
+                isNew[out] = true;
+            } else {
+                merged[out] = keys[i++];
+            }
+        }
+        keys = merged;
+        count = total;
+
+        // Rows go newest first, so walk the merged keys from the end
+        for (int row = 0; row < total; ) {
+            if (!isNew[total - 1 - row]) {
+                row++;
+                continue;
+            }
+            int start = row;
+            while (row < total && isNew[total - 1 - row]) row++;
+            nextAdd(head + start, head + row);
+        }
+    }
+
+    /** Shows this as the top row (null for none). The same track again is not a change. */
+    public void setNowPlaying(RecentTrackRow row) {
+        RecentTrackRow old = nowPlaying;
+        if (old == null && row == null) return;
+        if (old != null && row != null
+                && old.getTrack().equals(row.getTrack()) && old.getArtist().equals(row.getArtist())) {
+            nowPlaying = row;
+            return;
+        }
+        beginChange();
+        nowPlaying = row;
+        if (old == null) nextAdd(0, 1);
+        else if (row == null) nextRemove(0, old);
+        else nextSet(0, old);
+        endChange();
+    }
+
+    private void moved() {
+        version++;
+        pages.clear();
+        prefetching.clear();
+        nearEndAskedAt = -1;
+    }
+
+    private void commit(TableUpdateEvent event, String operation, int added) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.table = "tracks";
+        event.operation = operation;
+        event.added = added;
+        event.size = size();
+        event.commit();
+    }
+
+    // -----------------------------
+    // Pages
+    // -----------------------------
+
+    /** Keys [page * PAGE_ROWS, ...) of the first n, oldest first. */
+    private RecentTrackRow[] materialize(long[] k, int n, int page) {
+        int from = page * PAGE_ROWS;
+        int to = Math.min(n, from + PAGE_ROWS);
+        RecentTrackRow[] rows = new RecentTrackRow[Math.max(0, to - from)];
+        for (int i = from; i < to; i++) {
+            rows[i - from] = store.get(k[i] & INDEX_MASK);
+        }
+        return rows;
+    }
+
+    /**
+     * The older pages below this one (scrolling down is the usual direction) and the newer
+     * one above. A prefetch of the newest page that finishes after rows were added on top is
+     * short, and dropped.
+     */
+    private void prefetchAround(int page) {
+        int newestPage = (count - 1) / PAGE_ROWS;
+        for (int p = page - PREFETCH_PAGES; p <= page + 1; p++) {
+            if (p < 0 || p > newestPage || p == page || pages.containsKey(p) || !prefetching.add(p)) continue;
+            long[] k = keys;
+            int n = count;
+            int v = version;
+            int target = p;
+            CompletableFuture.supplyAsync(() -> materialize(k, n, target), background)
+                    .whenComplete((rows, err) -> fx.execute(() -> {
+                        if (v != version) return;
+                        prefetching.remove(target);
+                        if (rows != null && rows.length == pageRows(target) && !pages.containsKey(target)) {
+                            pages.put(target, rows);
+                            PREFETCHED.increment();
+                        }
+                    }));
+        }
+    }
+
+    private int pageRows(int page) {
+        return Math.min(PAGE_ROWS, count - page * PAGE_ROWS);
+    }
+
+    private void askForOlder() {
+        if (onNearEnd == null || nearEndAskedAt == count) return;
+        nearEndAskedAt = count;
+        // not from inside get(): the table is laying out cells
+        fx.execute(onNearEnd);
+    }
+}
@@ -0,0 +1,102 @@
+package app.ui;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Table items that take a {@link KeyedDiff} as one list change instead of one per row.
+ * Bulk add/remove also go straight to the backing ArrayList (the base class would shift
+ * it once per element). FX thread only, like any table's items.
+ */
+public final class PatchedList<T> extends ModifiableObservableListBase<T> {
+
+    private final ArrayList<T> rows = new ArrayList<>();
+
+    @Override
+    public T get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    protected void doAdd(int index, T element) {
+        rows.add(index, element);
+    }
+
+    @Override
+    protected T doSet(int index, T element) {
+        return rows.set(index, element);
+    }
+
+    @Override
+    protected T doRemove(int index) {
+        return rows.remove(index);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        return addAll(rows.size(), c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> c) {
+        if (index < 0 || index > rows.size()) throw new IndexOutOfBoundsException(index);
+        if (c.isEmpty()) return false;
+        beginChange();
+        try {
+            rows.addAll(index, c);
+            nextAdd(index, index + c.size());
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex >= toIndex) return;
+        beginChange();
+        try {
+            List<T> gone = rows.subList(fromIndex, toIndex);
+            nextRemove(fromIndex, new ArrayList<>(gone));
+            gone.clear();
+        } finally {
+            endChange();
+        }
+    }
+
+    /** Applies all ops, in order, as a single change. */
+    public void apply(List<KeyedDiff.Op<T>> ops) {
+        apply(ops, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Applies ops from index {@code from} on, as a single change, until they run out or
+     * System.nanoTime() passes the deadline (at least one op is always applied).
+     * @return the index of the first op not applied
+     */
+    public int apply(List<KeyedDiff.Op<T>> ops, int from, long deadlineNanos) {
+        int i = from;
+        if (i >= ops.size()) return i;
+        beginChange();
+        try {
+            do {
+                switch (ops.get(i++)) {
+                    case KeyedDiff.Remove<T> rm -> removeRange(rm.index(), rm.index() + rm.count());
+                    case KeyedDiff.Insert<T> in -> addAll(in.index(), in.items());
+                    case KeyedDiff.Replace<T> rp -> set(rp.index(), rp.item());
+                }
+            } while (i < ops.size() && System.nanoTime() < deadlineNanos);
+        } finally {
+            endChange();
+        }
+        return i;
+    }
+}
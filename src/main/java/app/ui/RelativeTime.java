@@ -0,0 +1,34 @@
+package app.ui;
+
+import java.time.Instant;
+
+/** "42s ago" / "5m ago" / "3h ago" / "2d ago" labels for the When column. */
+public final class RelativeTime {
+
+    private RelativeTime() { }
+
+    public static String format(Instant playedAt) {
+        return format(playedAt, Instant.now().getEpochSecond());
+    }
+
+    /** @param nowEpochSecond the clock to measure against */
+    public static String format(Instant playedAt, long nowEpochSecond) {
+        if (playedAt == null) return "—";
+        long s = nowEpochSecond - playedAt.getEpochSecond();
+        if (s < 60) return s + "s ago";
+        if (s < 3600) return (s / 60) + "m ago";
+        if (s < 86400) return (s / 3600) + "h ago";
+        return (s / 86400) + "d ago";
+    }
+
+    /**
+     * The first epoch second after nowEpochSecond at which {@link #format} gives a different
+     * label: next second under a minute, next whole minute under an hour, and so on.
+     */
+    public static long nextChange(Instant playedAt, long nowEpochSecond) {
+        long at = playedAt.getEpochSecond();
+        long s = Math.max(0, nowEpochSecond - at);
+        long unit = s < 60 ? 1 : s < 3600 ? 60 : s < 86400 ? 3600 : 86400;
+        return at + (s / unit + 1) * unit;
+    }
+}
@@ -0,0 +1,106 @@
+package app.ui;
+
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.util.Duration;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps "5m ago" labels current without repainting whole tables. Each watched instant
+ * gets a string property that changes only when its label does; one timer sleeps until
+ * the soonest of those changes. A row seconds old ticks every second, one an hour old
+ * once an hour, so an idle dashboard wakes up about once a minute at most.
+ *
+ * FX thread only.
+ */
+public final class RelativeTimeClock {
+
+    /** One watched instant; {@link #release()} it when the cell shows something else. */
+    public final class Watch {
+        private final Instant playedAt;
+        private final ReadOnlyStringWrapper text = new ReadOnlyStringWrapper();
+        private long due;
+
+        private Watch(Instant playedAt) {
+            this.playedAt = playedAt;
+        }
+
+        public Instant getPlayedAt() {
+            return playedAt;
+        }
+
+        public ReadOnlyStringProperty textProperty() {
+            return text.getReadOnlyProperty();
+        }
+
+        public void release() {
+            if (watches.remove(this)) reschedule();
+        }
+
+        private void update(long now) {
+            text.set(RelativeTime.format(playedAt, now));
+            due = RelativeTime.nextChange(playedAt, now);
+        }
+    }
+
+    // a release() is O(watches), but only visible cells hold one
+    private final PriorityQueue<Watch> watches = new PriorityQueue<>(Comparator.comparingLong((Watch w) -> w.due));
+    private final PauseTransition timer = new PauseTransition();
+    private long scheduledFor = Long.MAX_VALUE;
+    private boolean stopped;
+
+    public RelativeTimeClock() {
+        timer.setOnFinished(e -> tick());
+    }
+
+    public Watch watch(Instant playedAt) {
+        Watch w = new Watch(playedAt);
+        w.update(Instant.now().getEpochSecond());
+        watches.add(w);
+        if (w.due < scheduledFor) reschedule();
+        return w;
+    }
+
+    /** Number of live watches (about the number of visible When cells). */
+    public int size() {
+        return watches.size();
+    }
+
+    public void stop() {
+        stopped = true;
+        timer.stop();
+    }
+
+    private void tick() {
+        scheduledFor = Long.MAX_VALUE;
+        long now = Instant.now().getEpochSecond();
+        while (!watches.isEmpty() && watches.peek().due <= now) {
+            Watch w = watches.poll();
+            w.update(now);
+            watches.add(w);
+        }
+        reschedule();
+    }
+
+    private void reschedule() {
+        if (stopped) return;
+        Watch next = watches.peek();
+        if (next == null) {
+            timer.stop();
+            scheduledFor = Long.MAX_VALUE;
+            return;
+        }
+        if (next.due == scheduledFor) return;
+
+        scheduledFor = next.due;
+        // aim just past the boundary so the label has changed when we look
+        long delayMs = Math.max(0, next.due * 1000 - System.currentTimeMillis()) + 20;
+        timer.stop();
+        timer.setDuration(Duration.millis(delayMs));
+        timer.playFromStart();
+    }
+}
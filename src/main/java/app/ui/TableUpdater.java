@@ -0,0 +1,199 @@
+package app.ui;
+
+import app.jfr.TableUpdateEvent;
+import app.metrics.Metrics;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Brings a table's {@link PatchedList} to a target row list: the {@link KeyedDiff} is computed
+ * on a background thread, then applied on the FX thread a few milliseconds per pulse, one list
+ * change per pulse. Rows that didn't change stay the same objects at the same place, so
+ * selection, focus and scroll position survive a refresh.
+ *
+ * Targets submitted while one is in progress are coalesced: only the newest is applied.
+ * If the list is changed by someone else meanwhile (e.g. a snapshot restored into it), the
+ * diff is redone. Tables that let the user sort should show a SortedList over the items, so
+ * the sort lives in the view and the next patch doesn't undo it.
+ * {@link #submit} is FX-thread only.
+ */
+public final class TableUpdater<T> {
+
+    /** FX time per pulse; the rest of the ~16 ms frame is left for layout and rendering. */
+    private static final long FRAME_BUDGET_NANOS = 4_000_000;
+    /** Bigger inserts and removes are split so one op can't blow the budget. */
+    private static final int MAX_ROWS_PER_OP = 256;
+
+    private final String table;
+    private final PatchedList<T> items;
+    private final Function<? super T, ?> key;
+    private final BiPredicate<? super T, ? super T> sameContent;
+    private final Executor background;
+
+    private List<T> pendingTarget;
+    private String pendingOperation;
+    private boolean busy;
+    private boolean applying;
+    private boolean changedElsewhere;
+
+    // The diff being applied
+    private List<KeyedDiff.Op<T>> ops = List.of();
+    private int next;
+    private String operation;
+    private List<T> target;
+
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            applyChunk();
+        }
+    };
+
+    public TableUpdater(String table, PatchedList<T> items, Function<? super T, ?> key,
+                        BiPredicate<? super T, ? super T> sameContent, Executor background) {
+        this.table = table;
+        this.items = items;
+        this.key = key;
+        this.sameContent = sameContent;
+        this.background = background;
+        items.addListener((ListChangeListener<T>) c -> {
+            if (!applying) changedElsewhere = true;
+        });
+    }
+
+    /** @param operation what caused the update (merge, page, replace...), for JFR */
+    public void submit(String operation, List<T> target) {
+        pendingOperation = operation;
+        pendingTarget = target;
+        if (!busy) diffNext();
+    }
+
+    public boolean isBusy() {
+        return busy;
+    }
+
+    private void diffNext() {
+        List<T> to = pendingTarget;
+        String op = pendingOperation;
+        pendingTarget = null;
+        pendingOperation = null;
+        if (to == null) {
+            busy = false;
+            return;
+        }
+        busy = true;
+        changedElsewhere = false;
+
+        List<T> from = new ArrayList<>(items);
+        CompletableFuture.supplyAsync(() -> KeyedDiff.compute(from, to, key, sameContent), background)
+                .whenComplete((diff, err) -> Platform.runLater(() -> {
+                    if (err != null) {
+                        // shouldn't happen; don't leave the table stale
+                        System.err.println("Diff for " + table + " failed, replacing rows: " + err);
+                        applying = true;
+                        items.setAll(to);
+                        applying = false;
+                        diffNext();
+                    } else if (changedElsewhere || pendingTarget != null) {
+                        // stale base or already superseded; diff again against what's there now
+                        if (pendingTarget == null) submitAgain(op, to);
+                        diffNext();
+                    } else {
+                        start(op, to, diff);
+                    }
+                }));
+    }
+
+    private void submitAgain(String op, List<T> to) {
+        pendingOperation = op;
+        pendingTarget = to;
+    }
+
+    private void start(String op, List<T> to, KeyedDiff<T> diff) {
+        if (diff.isEmpty()) {
+            diffNext();
+            return;
+        }
+        operation = op;
+        target = to;
+        ops = split(diff.ops());
+        next = 0;
+        applyChunk();
+        if (next < ops.size()) pulse.start();
+    }
+
+    private void applyChunk() {
+        if (changedElsewhere) {
+            // someone reordered the rows under us; the remaining ops are meaningless now
+            pulse.stop();
+            if (pendingTarget == null) submitAgain(operation, target);
+            ops = List.of();
+            diffNext();
+            return;
+        }
+
+        TableUpdateEvent event = new TableUpdateEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int from = next;
+        applying = true;
+        try {
+            next = items.apply(ops, from, start + FRAME_BUDGET_NANOS);
+        } finally {
+            applying = false;
+        }
+        Metrics.global().timer("fx.patch." + table).recordSince(start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.table = table;
+            event.operation = operation;
+            for (int i = from; i < next; i++) {
+                switch (ops.get(i)) {
+                    case KeyedDiff.Remove<T> rm -> event.removed += rm.count();
+                    case KeyedDiff.Insert<T> in -> event.added += in.items().size();
+                    case KeyedDiff.Replace<T> rp -> { }
+                }
+            }
+            event.size = items.size();
+            event.commit();
+        }
+
+        if (next >= ops.size()) {
+            pulse.stop();
+            ops = List.of();
+            target = null;
+            diffNext();
+        }
+    }
+
+    /** Cuts big inserts/removes into pieces of at most MAX_ROWS_PER_OP rows, same effect. */
+    private static <T> List<KeyedDiff.Op<T>> split(List<KeyedDiff.Op<T>> ops) {
+        List<KeyedDiff.Op<T>> out = new ArrayList<>(ops.size());
+        for (KeyedDiff.Op<T> op : ops) {
+            switch (op) {
+                case KeyedDiff.Remove<T> rm -> {
+                    for (int left = rm.count(); left > 0; left -= MAX_ROWS_PER_OP) {
+                        out.add(new KeyedDiff.Remove<>(rm.index(), Math.min(left, MAX_ROWS_PER_OP)));
+                    }
+                }
+                case KeyedDiff.Insert<T> in -> {
+                    List<T> rows = in.items();
+                    for (int at = 0; at < rows.size(); at += MAX_ROWS_PER_OP) {
+                        int end = Math.min(rows.size(), at + MAX_ROWS_PER_OP);
+                        out.add(new KeyedDiff.Insert<>(in.index() + at, rows.subList(at, end)));
+                    }
+                }
+                case KeyedDiff.Replace<T> rp -> out.add(rp);
+            }
+        }
+        return out;
+    }
+}
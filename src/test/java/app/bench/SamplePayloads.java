@@ -0,0 +1,101 @@
+package app.bench;
+
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark inputs shaped like real user.getrecenttracks (extended=1) responses:
+ * same fields, nesting and image arrays as a captured page, with varied names so
+ * string handling isn't flattered by identical values. Seeded, so runs are comparable.
+ */
+public final class SamplePayloads {
+
+    public static final long NEWEST_UTS = 1_700_000_000L;
+
+    private static final String[] SIZES = {"small", "medium", "large", "extralarge"};
+
+    private SamplePayloads() { }
+
+    /** A full response with the given number of scrobbles, plus a now-playing row first. */
+    public static byte[] recentTracks(int tracks) {
+        Random rnd = new Random(42);
+        StringBuilder sb = new StringBuilder(tracks * 1400 + 512);
+        sb.append("{\"recenttracks\":{\"track\":[");
+        for (int i = 0; i <= tracks; i++) {
+            if (i > 0) sb.append(',');
+            appendTrack(sb, rnd, i, i == 0);
+        }
+        sb.append("],\"@attr\":{\"user\":\"benchuser\",\"totalPages\":\"")
+                .append(Math.max(1, 120_000 / Math.max(1, tracks)))
+                .append("\",\"page\":\"1\",\"perPage\":\"").append(tracks)
+                .append("\",\"total\":\"120000\"}}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Just an "image" array value, as it appears on tracks, albums and artists. */
+    public static byte[] imageArray(boolean lastBlank) {
+        StringBuilder sb = new StringBuilder(512);
+        appendImages(sb, "c6f59c1e5e7240a4c0d427abd71f3dbb");
+        if (lastBlank) {
+            // artist images are often blank in the biggest sizes
+            int at = sb.lastIndexOf("https://");
+            int end = sb.indexOf("\"", at);
+            sb.delete(at, end);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Parsed rows, newest first, one minute apart, ending at {@link #NEWEST_UTS}. */
+    public static List<RecentTrackRow> rows(int count) {
+        List<RecentTrackRow> out = new ArrayList<>(count);
+        StringPool pool = new StringPool();
+        for (int i = 0; i < count; i++) {
+            long uts = NEWEST_UTS - 60L * i;
+            out.add(new RecentTrackRow(pool, "Track " + (i % 7919), "Artist " + (i % 613), "Album " + (i % 1999),
+                    false, uts, "https://lastfm.freetls.fastly.net/i/u/300x300/" + (i % 1999) + ".jpg"));
+        }
+        return out;
+    }
+
+    private static void appendTrack(StringBuilder sb, Random rnd, int i, boolean nowPlaying) {
+        String hash = Long.toHexString(rnd.nextLong()) + Long.toHexString(rnd.nextLong());
+        String artist = "Artist " + rnd.nextInt(600) + (rnd.nextBoolean() ? " & The Band" : "");
+        sb.append("{\"artist\":{\"url\":\"https://www.last.fm/music/").append(artist.replace(' ', '+'))
+                .append("\",\"name\":\"").append(artist).append("\",\"image\":");
+        appendImages(sb, "2a96cbd8b46e442fc41c2b86b821562f");
+        sb.append(",\"mbid\":\"\"},\"mbid\":\"").append(i % 3 == 0 ? "" : hash)
+                .append("\",\"name\":\"Track ").append(rnd.nextInt(8000)).append(" (Remastered \\u00e9dition)")
+                .append("\",\"image\":");
+        appendImages(sb, hash);
+        sb.append(",\"streamable\":\"0\",\"album\":{\"mbid\":\"\",\"#text\":\"Album ").append(rnd.nextInt(2000))
+                .append("\"},\"url\":\"https://www.last.fm/music/x/_/track-").append(i).append("\",");
+        if (nowPlaying) {
+            sb.append("\"@attr\":{\"nowplaying\":\"true\"},");
+        } else {
+            long uts = NEWEST_UTS - 180L * i;
+            sb.append("\"date\":{\"uts\":\"").append(uts).append("\",\"#text\":\"14 Nov 2023, 22:13\"},");
+        }
+        sb.append("\"loved\":\"0\"}");
+    }
+
+    private static void appendImages(StringBuilder sb, String hash) {
+        sb.append('[');
+        for (int s = 0; s < SIZES.length; s++) {
+            if (s > 0) sb.append(',');
+            String px = switch (s) {
+                case 0 -> "34s";
+                case 1 -> "64s";
+                case 2 -> "174s";
+                default -> "300x300";
+            };
+            sb.append("{\"size\":\"").append(SIZES[s]).append("\",\"#text\":\"https://lastfm.freetls.fastly.net/i/u/")
+                    .append(px).append('/').append(hash).append(".png\"}");
+        }
+        sb.append(']');
+    }
+}
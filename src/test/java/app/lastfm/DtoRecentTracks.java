@@ -0,0 +1,127 @@
+package app.lastfm;
+
+import app.models.RecentTrackRow;
+import app.models.StringPool;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * user.getrecenttracks the way LastFmClient read it before {@link LastFmStreamParser}: the
+ * body as one String, a Gson DTO tree, then rows. What the streaming parser is held to, in
+ * LastFmStreamParserTest and RecentTracksParseBenchmark.
+ */
+final class DtoRecentTracks {
+
+    private DtoRecentTracks() { }
+
+    static LastFmClient.PagedResult<RecentTrackRow> parse(Gson gson, byte[] body, int page, int limit) {
+        RecentTracksResponse parsed = gson.fromJson(new String(body, StandardCharsets.UTF_8), RecentTracksResponse.class);
+        if (parsed == null || parsed.recenttracks == null || parsed.recenttracks.track == null) {
+            return new LastFmClient.PagedResult<>(List.of(), page, 1, limit, 0);
+        }
+        PageAttr attr = parsed.recenttracks.attr;
+        int totalPages = safeInt(attr != null ? attr.totalPages : null, 1);
+        int perPage = safeInt(attr != null ? attr.perPage : null, limit);
+        int total = safeInt(attr != null ? attr.total : null, 0);
+        int currentPage = safeInt(attr != null ? attr.page : null, page);
+
+        List<RecentTrackRow> rows = new ArrayList<>();
+        StringPool pool = new StringPool();
+        for (Track t : parsed.recenttracks.track) {
+            String artist = t.artist == null ? ""
+                    : t.artist.name != null && !t.artist.name.isBlank() ? t.artist.name
+                    : Objects.toString(t.artist.text, "");
+            String album = t.album != null ? Objects.toString(t.album.text, "") : "";
+            boolean nowPlaying = t.attr != null && "true".equalsIgnoreCase(t.attr.nowplaying);
+
+            long playedAt = RecentTrackRow.NO_TIME;
+            if (!nowPlaying && t.date != null && t.date.uts != null && !t.date.uts.isBlank()) {
+                try {
+                    playedAt = Long.parseLong(t.date.uts);
+                } catch (NumberFormatException ignored) { }
+            }
+            rows.add(new RecentTrackRow(pool, Objects.toString(t.name, ""), artist, album, nowPlaying, playedAt,
+                    bestImageUrl(t.image)));
+        }
+        return new LastFmClient.PagedResult<>(rows, currentPage, totalPages, perPage, total);
+    }
+
+    private static String bestImageUrl(List<ImageInfo> images) {
+        if (images == null) return "";
+        for (int i = images.size() - 1; i >= 0; i--) {
+            ImageInfo it = images.get(i);
+            if (it != null && it.text != null && !it.text.isBlank()) return it.text;
+        }
+        return "";
+    }
+
+    private static int safeInt(String s, int def) {
+        if (s == null) return def;
+        try { return Integer.parseInt(s.trim()); }
+        catch (Exception e) { return def; }
+    }
+
+    private static class RecentTracksResponse {
+        RecentTracks recenttracks;
+    }
+
+    private static class RecentTracks {
+        List<Track> track;
+
+        @SerializedName("@attr")
+        PageAttr attr;
+    }
+
+    private static class Track {
+        String name;
+        Artist artist;
+        Album album;
+        DateInfo date;
+        List<ImageInfo> image;
+
+        @SerializedName("@attr")
+        NowAttr attr;
+    }
+
+    private static class Artist {
+        @SerializedName("#text")
+        String text;
+        String name;
+        String mbid;
+        String url;
+    }
+
+    private static class Album {
+        @SerializedName("#text")
+        String text;
+    }
+
+    private static class DateInfo {
+        String uts;
+
+        @SerializedName("#text")
+        String text;
+    }
+
+    private static class NowAttr {
+        String nowplaying;
+    }
+
+    private static class PageAttr {
+        String page;
+        String perPage;
+        String totalPages;
+        String total;
+    }
+
+    private static class ImageInfo {
+        @SerializedName("#text")
+        String text;
+        String size;
+    }
+}
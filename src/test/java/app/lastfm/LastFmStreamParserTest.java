@@ -0,0 +1,148 @@
+package app.lastfm;
+
+import app.bench.SamplePayloads;
+import app.metrics.Metrics;
+import app.models.RecentTrackRow;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The streaming user.getrecenttracks reader against the DTO path it replaced
+ * ({@link DtoRecentTracks}): the same rows and paging numbers for every body the DTO path
+ * could read, and less allocated per page.
+ */
+class LastFmStreamParserTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void fullPageSameAsDto() throws IOException {
+        assertSameAsDto(SamplePayloads.recentTracks(200), 1, 200);
+    }
+
+    @Test
+    void missingFieldsSameAsDto() throws IOException {
+        // no paging block; tracks without a date, album, images, name or artist; the plain
+        // (extended=0) artist form; a blank largest image; an unparseable time
+        String body = """
+                {"recenttracks":{"track":[
+                  {"name":"No date","artist":{"#text":"Plain Artist"},"album":{"#text":"A"}},
+                  {"name":"No album","artist":{"name":"Named"},"date":{"uts":"1700000000"}},
+                  {"artist":{"name":"","#text":"Text Only"},"date":{"uts":"1699999940"}},
+                  {"name":"No artist","date":{"uts":"1699999880"},
+                   "image":[{"size":"small","#text":"https://img/s.png"},{"size":"large","#text":""}]},
+                  {"name":"Bad time","artist":{"name":"X"},"date":{"uts":"soon"},"image":[]},
+                  {}
+                ]}}
+                """;
+        assertSameAsDto(bytes(body), 3, 50);
+    }
+
+    @Test
+    void nowPlayingSameAsDto() throws IOException {
+        // the now-playing row carries no time, even when a date comes with it
+        String body = """
+                {"recenttracks":{"track":[
+                  {"name":"Playing","artist":{"name":"A"},"@attr":{"nowplaying":"true"},
+                   "date":{"uts":"1700000100"}},
+                  {"name":"Not playing","artist":{"name":"A"},"@attr":{"nowplaying":"false"},
+                   "date":{"uts":"1700000000"}},
+                  {"name":"Other attr","artist":{"name":"A"},"@attr":{"rank":"1"},"date":{"uts":"1699999900"}}
+                ],"@attr":{"user":"u","page":"2","perPage":"3","totalPages":"7","total":"21"}}}
+                """;
+        List<RecentTrackRow> rows = assertSameAsDto(bytes(body), 2, 3);
+        assertTrue(rows.get(0).isNowPlaying());
+        assertEquals(RecentTrackRow.NO_TIME, rows.get(0).getPlayedAtEpochSecond());
+    }
+
+    @Test
+    void emptyPageSameAsDto() throws IOException {
+        assertSameAsDto(bytes("""
+                {"recenttracks":{"track":[],"@attr":{"page":"1","perPage":"50","totalPages":"0","total":"0"}}}
+                """), 1, 50);
+    }
+
+    @Test
+    void errorBodyThrowsWhereDtoGaveNoRows() {
+        byte[] body = bytes("{\"error\":6,\"message\":\"User not found\",\"links\":[]}");
+        // the DTO path read an error as an empty page; the stream says what it was
+        assertTrue(DtoRecentTracks.parse(gson, body, 1, 50).items.isEmpty());
+        LastFmApiException e = assertThrows(LastFmApiException.class,
+                () -> LastFmStreamParser.readRecentTracks(reader(body), 1, 50, row -> { }));
+        assertEquals(6, e.getCode());
+        assertTrue(e.getMessage().contains("User not found"), e.getMessage());
+    }
+
+    @Test
+    void allocatesLessPerPageThanDto() throws IOException {
+        assumeTrue(Metrics.threadAllocatedBytes() >= 0, "thread allocation counter not supported");
+        byte[] body = SamplePayloads.recentTracks(200);
+        int rounds = 100;
+
+        long stream = 0;
+        long dto = 0;
+        for (int pass = 0; pass < 2; pass++) {   // the first pass is warm-up
+            long before = Metrics.threadAllocatedBytes();
+            for (int i = 0; i < rounds; i++) {
+                List<RecentTrackRow> rows = new ArrayList<>(201);
+                LastFmStreamParser.readRecentTracks(reader(body), 1, 200, rows::add);
+            }
+            long mid = Metrics.threadAllocatedBytes();
+            for (int i = 0; i < rounds; i++) DtoRecentTracks.parse(gson, body, 1, 200);
+            long after = Metrics.threadAllocatedBytes();
+            stream = (mid - before) / rounds;
+            dto = (after - mid) / rounds;
+        }
+        // about 1.7x less at 200 tracks; fail well before the two meet
+        assertTrue(stream * 4 <= dto * 3,
+                "stream " + stream + " B per page, DTO " + dto + " B per page");
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private List<RecentTrackRow> assertSameAsDto(byte[] body, int page, int limit) throws IOException {
+        LastFmClient.PagedResult<RecentTrackRow> expected = DtoRecentTracks.parse(gson, body, page, limit);
+        List<RecentTrackRow> rows = new ArrayList<>();
+        LastFmStreamParser.PageInfo info = LastFmStreamParser.readRecentTracks(reader(body), page, limit, rows::add);
+
+        assertEquals(expected.page, info.page, "page");
+        assertEquals(expected.totalPages, info.totalPages, "totalPages");
+        assertEquals(expected.perPage, info.perPage, "perPage");
+        assertEquals(expected.total, info.total, "total");
+        assertEquals(expected.items.size(), rows.size(), "rows");
+        for (int i = 0; i < rows.size(); i++) {
+            RecentTrackRow a = rows.get(i);
+            RecentTrackRow b = expected.items.get(i);
+            assertEquals(b.getTrack(), a.getTrack(), "track of row " + i);
+            assertEquals(b.getArtist(), a.getArtist(), "artist of row " + i);
+            assertEquals(b.getAlbum(), a.getAlbum(), "album of row " + i);
+            assertEquals(b.getImageUrl(), a.getImageUrl(), "image of row " + i);
+            assertEquals(b.isNowPlaying(), a.isNowPlaying(), "now playing of row " + i);
+            assertEquals(b.getPlayedAtEpochSecond(), a.getPlayedAtEpochSecond(), "time of row " + i);
+        }
+        return rows;
+    }
+
+    private static JsonReader reader(byte[] body) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
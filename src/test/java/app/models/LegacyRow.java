@@ -0,0 +1,28 @@
+package app.models;
+
+import java.time.Instant;
+
+/**
+ * The row as it was before {@link RecentTrackRow} went compact: every field its own object.
+ * What RowFootprintTest and RowFootprintBenchmark measure the current layouts against.
+ */
+final class LegacyRow {
+    final String track;
+    final String artist;
+    final String album;
+    final String when;
+    final boolean nowPlaying;
+    final Instant playedAt;
+    final String imageUrl;
+
+    LegacyRow(String track, String artist, String album, String when, boolean nowPlaying,
+              Instant playedAt, String imageUrl) {
+        this.track = track;
+        this.artist = artist;
+        this.album = album;
+        this.when = when;
+        this.nowPlaying = nowPlaying;
+        this.playedAt = playedAt;
+        this.imageUrl = imageUrl;
+    }
+}
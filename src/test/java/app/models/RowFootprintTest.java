@@ -0,0 +1,158 @@
+package app.models;
+
+import app.store.ScrobbleStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap retained per row, measured after a full GC, in the two ways rows are made now against
+ * the old layout ({@link LegacyRow}), over a history shaped like RowFootprintBenchmark's:
+ * 613 artists, 1999 albums, 7919 titles, albums played through {@value #ALBUM_RUN} tracks at
+ * a time, fresh String copies per parsed row as JsonReader makes them.
+ *
+ * At 200k rows parsed rows take about 0.38 of the legacy footprint and stored rows
+ * about 0.17; the bounds leave room for GC noise but not for a layout going back.
+ */
+class RowFootprintTest {
+
+    /** Parsed rows (one {@link StringPool} per page) may take at most this of the legacy heap. */
+    private static final double PARSED_MAX = 0.5;
+    /** Rows read from a {@link ScrobbleStore}, its dictionary and index included. */
+    private static final double STORED_MAX = 0.25;
+
+    private static final int ROWS = 200_000;
+    private static final int PAGE_ROWS = 200;
+    private static final int ALBUM_RUN = 12;
+
+    private final char[][] tracks = names("Track ", 7919, " (Remastered)");
+    private final char[][] artists = names("Artist ", 613, "");
+    private final char[][] albums = names("Album ", 1999, "");
+    private final char[][] images = new char[albums.length][];
+
+    RowFootprintTest() {
+        for (int i = 0; i < images.length; i++) {
+            images[i] = String.format(Locale.ROOT, "https://lastfm.freetls.fastly.net/i/u/300x300/%032x.jpg",
+                    (long) i * 0x9E3779B97F4A7C15L).toCharArray();
+        }
+    }
+
+    @Test
+    void parsedRowsTakeAFractionOfLegacy() {
+        double legacy = legacyBytesPerRow();
+
+        long base = usedAfterGc();
+        RecentTrackRow[] rows = new RecentTrackRow[ROWS];
+        StringPool pool = null;
+        for (int i = 0; i < ROWS; i++) {
+            if (i % PAGE_ROWS == 0) {
+                if (pool != null) pool.freeze();
+                pool = new StringPool();
+            }
+            rows[i] = parsedRow(pool, i);
+        }
+        pool.freeze();
+        double parsed = (double) (usedAfterGc() - base) / ROWS;
+        Reference.reachabilityFence(rows);
+
+        assertTrue(parsed <= legacy * PARSED_MAX, String.format(Locale.ROOT,
+                "parsed %.1f B/row, legacy %.1f B/row: %.2f of legacy, at most %.2f allowed",
+                parsed, legacy, parsed / legacy, PARSED_MAX));
+    }
+
+    @Test
+    void storedRowsTakeAFractionOfLegacy() throws IOException {
+        double legacy = legacyBytesPerRow();
+
+        Path dir = Files.createTempDirectory("footprint-test");
+        try {
+            long base = usedAfterGc();
+            try (ScrobbleStore store = ScrobbleStore.open(dir)) {
+                // oldest first: every append is newer than the store, so no duplicate lookups
+                StringPool pool = new StringPool();
+                for (int i = ROWS - 1; i >= 0; i--) {
+                    if (i % PAGE_ROWS == 0) pool = new StringPool();
+                    store.append(parsedRow(pool, i));
+                }
+                RecentTrackRow[] rows = new RecentTrackRow[ROWS];
+                long n = store.size();
+                for (int i = 0; i < ROWS; i++) rows[i] = store.get(n - 1 - i);
+                double stored = (double) (usedAfterGc() - base) / ROWS;
+                Reference.reachabilityFence(rows);
+
+                assertTrue(stored <= legacy * STORED_MAX, String.format(Locale.ROOT,
+                        "stored %.1f B/row, legacy %.1f B/row: %.2f of legacy, at most %.2f allowed",
+                        stored, legacy, stored / legacy, STORED_MAX));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+    }
+
+    // -----------------------------
+    // Helpers
+    // -----------------------------
+
+    private double legacyBytesPerRow() {
+        long base = usedAfterGc();
+        LegacyRow[] rows = new LegacyRow[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            int album = album(i);
+            rows[i] = new LegacyRow(fresh(tracks[i % tracks.length]), fresh(artists[album % artists.length]),
+                    fresh(albums[album]), "—", false, Instant.ofEpochSecond(uts(i)), fresh(images[album]));
+        }
+        double perRow = (double) (usedAfterGc() - base) / ROWS;
+        Reference.reachabilityFence(rows);
+        return perRow;
+    }
+
+    private RecentTrackRow parsedRow(StringPool pool, int i) {
+        // fresh copies, like JsonReader.nextString()
+        int album = album(i);
+        return new RecentTrackRow(pool, fresh(tracks[i % tracks.length]), fresh(artists[album % artists.length]),
+                fresh(albums[album]), false, uts(i), fresh(images[album]));
+    }
+
+    private int album(int i) {
+        return (i / ALBUM_RUN) % albums.length;
+    }
+
+    private static long uts(int i) {
+        return 1_700_000_000L - 60L * i;
+    }
+
+    private static char[][] names(String prefix, int count, String suffix) {
+        char[][] out = new char[count][];
+        for (int i = 0; i < count; i++) out[i] = (prefix + i + suffix).toCharArray();
+        return out;
+    }
+
+    private static String fresh(char[] chars) {
+        return new String(chars, 0, chars.length);
+    }
+
+    private static long usedAfterGc() {
+        var memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds: until it stops shrinking
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+}